@@ -0,0 +1,85 @@
+package com.sastraxi.chisel.bench;
+
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.image.WorldChunk;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.math.HalfspacePolygon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * Brush.equals, and building solid meshes for a world's worth of brushes.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BrushBenchmark {
+
+	/**
+	 * Each solid built from its planes in two different orders; equal, but not vertex for
+	 * vertex or face for face.
+	 */
+	@State(Scope.Thread)
+	public static class Pairs {
+		@Param({ "6", "32" })
+		int planes;
+
+		final Brush[] a = new Brush[Workloads.VARIANTS], b = new Brush[Workloads.VARIANTS];
+		int next = 0;
+
+		@Setup
+		public void setUp() {
+			Array<Array<Plane>> inputs = Workloads.hulls(planes);
+			Random random = new Random(2);
+			for (int i = 0; i < Workloads.VARIANTS; ++i) {
+				a[i] = HalfspacePolygon.toConvex(inputs.get(i));
+				Array<Plane> shuffled = new Array<Plane>(inputs.get(i));
+				for (int j = shuffled.size - 1; j > 0; --j) {
+					shuffled.swap(j, random.nextInt(j + 1));
+				}
+				b[i] = HalfspacePolygon.toConvex(shuffled);
+			}
+		}
+	}
+
+	/**
+	 * VARIANTS brushes packed into a world chunk, as WorldBatch does on its workers.
+	 */
+	@State(Scope.Thread)
+	public static class World {
+		@Param({ "6", "32" })
+		int planes;
+
+		WorldChunk chunk;
+
+		@Setup
+		public void setUp() {
+			chunk = new WorldChunk();
+			for (Brush brush: Workloads.brushes(Workloads.hulls(planes))) {
+				chunk.add(brush);
+			}
+		}
+	}
+
+	@Benchmark
+	public boolean brushEquals(Pairs state) {
+		state.next = Workloads.next(state.next);
+		return state.a[state.next].equals(state.b[state.next]);
+	}
+
+	@Benchmark
+	public Object solidMeshChunk(World state) {
+		state.chunk.build();
+		return state.chunk.getVertices();
+	}
+
+}
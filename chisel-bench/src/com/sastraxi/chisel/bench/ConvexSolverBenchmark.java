@@ -0,0 +1,77 @@
+package com.sastraxi.chisel.bench;
+
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.math.ConvexSolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How toConvex scales across threads when each has a ConvexSolver of its own, as the workers
+ * in the pool do: throughput on the 32-plane hulls at 1, 2, 4 and 8 threads, summed over
+ * the threads. Only means anything on a machine with at least that many cores.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+public class ConvexSolverBenchmark {
+
+	/**
+	 * One per thread; the inputs are the same for every thread, but nothing is shared.
+	 */
+	@State(Scope.Thread)
+	public static class Worker {
+		@Param({ "32" })
+		int planes;
+
+		Array<Array<Plane>> inputs;
+		int next = 0;
+		final ConvexSolver solver = new ConvexSolver();
+
+		@Setup
+		public void setUp() {
+			inputs = Workloads.hulls(planes);
+		}
+
+		Brush run() {
+			next = Workloads.next(next);
+			return solver.toConvex(inputs.get(next));
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Brush threads1(Worker worker) {
+		return worker.run();
+	}
+
+	@Benchmark
+	@Threads(2)
+	public Brush threads2(Worker worker) {
+		return worker.run();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Brush threads4(Worker worker) {
+		return worker.run();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Brush threads8(Worker worker) {
+		return worker.run();
+	}
+
+}
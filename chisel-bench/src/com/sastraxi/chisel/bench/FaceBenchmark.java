@@ -0,0 +1,73 @@
+package com.sastraxi.chisel.bench;
+
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.math.Face;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * Face.isClosed and Face.equals, on loops of a few sizes.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class FaceBenchmark {
+
+	@Param({ "4", "16", "64" })
+	int arity;
+
+	/**
+	 * Edge lists are shuffled, as they are when they come out of plane intersection.
+	 */
+	final Array<Array<int[]>> edges = new Array<Array<int[]>>();
+
+	/**
+	 * A face against the same loop, started from a different vertex.
+	 */
+	final Face[] a = new Face[Workloads.VARIANTS], b = new Face[Workloads.VARIANTS];
+
+	int next = 0;
+
+	@Setup
+	public void setUp() {
+		int[][] loops = Workloads.loops(arity);
+		Random random = new Random(3);
+		for (int i = 0; i < Workloads.VARIANTS; ++i) {
+			int[] loop = loops[i];
+			Array<int[]> list = new Array<int[]>(arity);
+			int[] rotated = new int[arity];
+			for (int j = 0; j < arity; ++j) {
+				list.add(new int[] { loop[j], loop[(j+1) % arity] });
+				rotated[j] = loop[(j + i) % arity];
+			}
+			for (int j = list.size - 1; j > 0; --j) {
+				list.swap(j, random.nextInt(j + 1));
+			}
+			edges.add(list);
+			a[i] = new Face(loop);
+			b[i] = new Face(rotated);
+		}
+	}
+
+	@Benchmark
+	public boolean faceIsClosed() {
+		next = Workloads.next(next);
+		return Face.isClosed(edges.get(next));
+	}
+
+	@Benchmark
+	public boolean faceEquals() {
+		next = Workloads.next(next);
+		return a[next].equals(b[next]);
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.sastraxi.chisel.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the geometry benchmarks through JMH. Takes JMH's own options (e.g. a regex to pick
+ * benchmarks, -f 3, -p planes=32), but unless told otherwise writes JSON to
+ * jmh-result.json and profiles allocation, so every run can be compared with the last:
+ *
+ *   java -cp chisel-bench/lib/*:... com.sastraxi.chisel.bench.GeometryBenchmarks
+ *
+ * Allocation shows up as gc.alloc.rate.norm (bytes per operation) next to each score.
+ */
+public class GeometryBenchmarks {
+
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		CommandLineOptions given = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(given);
+		if (!given.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (given.getProfilers().isEmpty()) {
+			options.addProfiler(GCProfiler.class);
+		}
+		new Runner(options.build()).run();
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.sastraxi.chisel.bench;
+
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.math.ConvexSolver;
+import com.sastraxi.chisel.math.HalfspacePolygon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HalfspacePolygon.toConvex on boxes, n-gon prisms and random hulls. The hulls are also run
+ * through a ConvexSolver of the benchmark thread's own, as a worker in the pool would; see
+ * ConvexSolverBenchmark for how that scales across threads.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ToConvexBenchmark {
+
+	@State(Scope.Thread)
+	public static class Boxes {
+		Array<Array<Plane>> inputs;
+		int next = 0;
+
+		@Setup
+		public void setUp() {
+			inputs = Workloads.boxes();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Prisms {
+		@Param({ "4", "8", "16", "32", "64" })
+		int sides;
+
+		Array<Array<Plane>> inputs;
+		int next = 0;
+
+		@Setup
+		public void setUp() {
+			inputs = Workloads.prisms(sides);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Hulls {
+		@Param({ "6", "16", "32", "64", "128" })
+		int planes;
+
+		Array<Array<Plane>> inputs;
+		int next = 0;
+		final ConvexSolver solver = new ConvexSolver();
+
+		@Setup
+		public void setUp() {
+			inputs = Workloads.hulls(planes);
+		}
+	}
+
+	@Benchmark
+	public Brush box(Boxes state) {
+		state.next = Workloads.next(state.next);
+		return HalfspacePolygon.toConvex(state.inputs.get(state.next));
+	}
+
+	@Benchmark
+	public Brush prism(Prisms state) {
+		state.next = Workloads.next(state.next);
+		return HalfspacePolygon.toConvex(state.inputs.get(state.next));
+	}
+
+	@Benchmark
+	public Brush hull(Hulls state) {
+		state.next = Workloads.next(state.next);
+		return HalfspacePolygon.toConvex(state.inputs.get(state.next));
+	}
+
+	@Benchmark
+	public Brush hullSolver(Hulls state) {
+		state.next = Workloads.next(state.next);
+		return state.solver.toConvex(state.inputs.get(state.next));
+	}
+
+}
@@ -0,0 +1,124 @@
+package com.sastraxi.chisel.bench;
+
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.math.HalfspacePolygon;
+
+import java.util.Random;
+
+/**
+ * Generated (but always the same) inputs for the benchmarks. Each benchmark cycles through
+ * VARIANTS of them so that no single shape gets learned by the branch predictor.
+ */
+final class Workloads {
+
+	static final int VARIANTS = 64; // a power of two; see next()
+
+	private Workloads() {
+	}
+
+	/**
+	 * @return the index after i, wrapping around at VARIANTS.
+	 */
+	static int next(int i) {
+		return (i + 1) & (VARIANTS - 1);
+	}
+
+	/**
+	 * Axis-aligned boxes of random sizes.
+	 */
+	static Array<Array<Plane>> boxes() {
+		Random random = new Random(1);
+		Array<Array<Plane>> result = new Array<Array<Plane>>();
+		for (int i = 0; i < VARIANTS; ++i) {
+			Vector3 min = new Vector3(random.nextInt(4096) + 1, random.nextInt(4096) + 1, random.nextInt(4096) + 1);
+			Vector3 max = min.cpy().add(random.nextInt(256) + 8, random.nextInt(256) + 8, random.nextInt(256) + 8);
+			Array<Plane> planes = new Array<Plane>();
+			planes.add(new Plane(new Vector3( 1f, 0f, 0f), max));
+			planes.add(new Plane(new Vector3(-1f, 0f, 0f), min));
+			planes.add(new Plane(new Vector3(0f,  1f, 0f), max));
+			planes.add(new Plane(new Vector3(0f, -1f, 0f), min));
+			planes.add(new Plane(new Vector3(0f, 0f,  1f), max));
+			planes.add(new Plane(new Vector3(0f, 0f, -1f), min));
+			result.add(planes);
+		}
+		return result;
+	}
+
+	/**
+	 * n-gon prisms, each with a random rotation around the y axis.
+	 */
+	static Array<Array<Plane>> prisms(int sides) {
+		Random random = new Random(sides);
+		Array<Array<Plane>> result = new Array<Array<Plane>>();
+		for (int i = 0; i < VARIANTS; ++i) {
+			Array<Plane> planes = new Array<Plane>();
+			double offset = random.nextDouble() * Math.PI;
+			for (int s = 0; s < sides; ++s) {
+				double angle = offset + 2.0 * Math.PI * s / sides;
+				Vector3 normal = new Vector3((float) Math.cos(angle), 0f, (float) Math.sin(angle));
+				planes.add(new Plane(normal, normal.cpy().scl(64f)));
+			}
+			planes.add(new Plane(new Vector3(0f,  1f, 0f), new Vector3(0f,  32f, 0f)));
+			planes.add(new Plane(new Vector3(0f, -1f, 0f), new Vector3(0f, -32f, 0f)));
+			result.add(planes);
+		}
+		return result;
+	}
+
+	/**
+	 * Random convex polytopes: planes tangent to a sphere, with normals spread evenly over
+	 * all directions. Sets that wouldn't close up are thrown out and drawn again.
+	 */
+	static Array<Array<Plane>> hulls(int n) {
+		Random random = new Random(n);
+		Array<Array<Plane>> result = new Array<Array<Plane>>();
+		while (result.size < VARIANTS) {
+			Array<Plane> planes = new Array<Plane>();
+			for (int i = 0; i < n; ++i) {
+				Vector3 normal = new Vector3((float) random.nextGaussian(), (float) random.nextGaussian(),
+						(float) random.nextGaussian()).nor();
+				planes.add(new Plane(normal, normal.cpy().scl(128f)));
+			}
+			Brush brush = toConvexOrNull(planes);
+			if (brush != null && brush.getFaces().size == n) {
+				result.add(planes);
+			}
+		}
+		return result;
+	}
+
+	private static Brush toConvexOrNull(Array<Plane> planes) {
+		try {
+			return HalfspacePolygon.toConvex(planes);
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	static Array<Brush> brushes(Array<Array<Plane>> inputs) {
+		Array<Brush> brushes = new Array<Brush>(inputs.size);
+		for (Array<Plane> planes: inputs) {
+			brushes.add(HalfspacePolygon.toConvex(planes));
+		}
+		return brushes;
+	}
+
+	/**
+	 * Loops of consecutive vertex ids, each starting somewhere random.
+	 */
+	static int[][] loops(int arity) {
+		Random random = new Random(arity);
+		int[][] loops = new int[VARIANTS][arity];
+		for (int i = 0; i < VARIANTS; ++i) {
+			int start = random.nextInt(1000);
+			for (int j = 0; j < arity; ++j) {
+				loops[i][j] = start + j;
+			}
+		}
+		return loops;
+	}
+
+}
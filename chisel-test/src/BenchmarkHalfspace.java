@@ -0,0 +1,73 @@
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.math.HalfspacePolygon;
+
+import java.util.Random;
+
+/**
+ * Compares HalfspacePolygon.toConvex (plane clipping) against
+ * HalfspacePolygon.enumerateConvex (every plane triple) on n-gon prisms.
+ * Results are printed as tab-separated columns.
+ *
+ * Run with: java -cp ... BenchmarkHalfspace
+ */
+public class BenchmarkHalfspace {
+
+	private static final int WARMUP = 200;
+	private static final int ITERATIONS = 1000;
+
+	public static void main(String[] args) {
+		System.out.println("planes\tenumerate(us)\tclip(us)\tspeedup");
+		for (int sides = 4; sides <= 64; sides *= 2) {
+			Array<Plane> planes = prism(sides, new Random(sides));
+			double clip = time(planes, true);
+			try {
+				double enumerate = time(planes, false);
+				System.out.printf("%d\t%.1f\t%.1f\t%.1fx%n", planes.size, enumerate, clip, enumerate / clip);
+			} catch (Throwable e) {
+				// the enumeration path can fail (or trip an assertion) on large faces.
+				System.out.printf("%d\t-\t%.1f\t-%n", planes.size, clip);
+			}
+		}
+	}
+
+	/**
+	 * An n-gon prism with a random rotation around the y axis.
+	 */
+	static Array<Plane> prism(int sides, Random random) {
+		Array<Plane> planes = new Array<Plane>();
+		double offset = random.nextDouble() * Math.PI;
+		for (int i = 0; i < sides; ++i) {
+			double angle = offset + 2.0 * Math.PI * i / sides;
+			Vector3 normal = new Vector3((float) Math.cos(angle), 0f, (float) Math.sin(angle));
+			planes.add(new Plane(normal, normal.cpy().scl(64f)));
+		}
+		planes.add(new Plane(new Vector3(0f,  1f, 0f), new Vector3(0f,  32f, 0f)));
+		planes.add(new Plane(new Vector3(0f, -1f, 0f), new Vector3(0f, -32f, 0f)));
+		return planes;
+	}
+
+	/**
+	 * @return the mean time per call, in microseconds.
+	 */
+	private static double time(Array<Plane> planes, boolean clip) {
+		for (int i = 0; i < WARMUP; ++i) {
+			run(planes, clip);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; ++i) {
+			run(planes, clip);
+		}
+		return (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+	}
+
+	private static void run(Array<Plane> planes, boolean clip) {
+		if (clip) {
+			HalfspacePolygon.toConvex(planes);
+		} else {
+			HalfspacePolygon.enumerateConvex(planes);
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+import com.sastraxi.chisel.map.vmf.VmfReader;
+import com.sastraxi.chisel.map.vmf.VmfSnapshot;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Opens a generated map by reading the VMF, then by reading its snapshot.
+ * Results are printed as tab-separated columns.
+ *
+ * Run with: java -cp ... BenchmarkSnapshot [number of brushes, default 50000]
+ */
+public class BenchmarkSnapshot {
+
+	private static final int ITERATIONS = 5;
+
+	public static void main(String[] args) throws IOException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		File vmf = File.createTempFile("chisel-bench", ".vmf");
+		vmf.deleteOnExit();
+		VmfSnapshot.getFile(vmf).deleteOnExit();
+
+		Random random = new Random(1);
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(vmf), "ISO-8859-1"));
+		StringBuilder b = new StringBuilder("world\n{\n\t\"id\" \"1\"\n\t\"classname\" \"worldspawn\"\n");
+		for (int id = 2; id < n + 2; ++id) {
+			float x = random.nextInt(16384) - 8192, y = random.nextInt(16384) - 8192, z = random.nextInt(4096);
+			float size = 8 + random.nextInt(248);
+			TestVmfReader.solid(b, id, x, y, z, x + size, y + size, z + size);
+			out.append(b);
+			b.setLength(0);
+		}
+		out.write("}\n");
+		out.close();
+		VmfSnapshot.open(vmf);
+
+		System.out.println("brushes\tvmf MB\tsnapshot MB\tvmf(ms)\tsnapshot(ms)");
+		for (int it = 0; it < ITERATIONS; ++it) {
+			long start = System.nanoTime();
+			VmfReader.read(vmf);
+			double text = (System.nanoTime() - start) / 1e6;
+
+			start = System.nanoTime();
+			VmfSnapshot.read(vmf);
+			double snapshot = (System.nanoTime() - start) / 1e6;
+
+			System.out.printf("%d\t%.1f\t%.1f\t%.0f\t%.0f%n", n, vmf.length() / 1048576.0,
+					VmfSnapshot.getFile(vmf).length() / 1048576.0, text, snapshot);
+		}
+		VmfSnapshot.getFile(vmf).delete();
+		vmf.delete();
+	}
+
+}
@@ -0,0 +1,112 @@
+import com.badlogic.gdx.math.Vector3;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.Root;
+import com.sastraxi.chisel.map.vmf.MappedVmfTokenizer;
+import com.sastraxi.chisel.map.vmf.StreamVmfTokenizer;
+import com.sastraxi.chisel.map.vmf.VmfReader;
+import com.sastraxi.chisel.map.vmf.VmfTokenizer;
+import com.sastraxi.chisel.map.vmf.VmfWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.FileOutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Writes out a big generated map, then times tokenizing it (streamed vs. read whole into memory,
+ * pulling the numbers out of every plane as the reader would) and reading it in full,
+ * in MB/s; then saving it after moving one brush, both incrementally and from scratch, in ms.
+ * Results are printed as tab-separated columns.
+ *
+ * Run with: java -cp ... BenchmarkVmf [size in MB, default 100]
+ */
+public class BenchmarkVmf {
+
+	private static final int ITERATIONS = 3;
+
+	public static void main(String[] args) throws IOException {
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		File file = File.createTempFile("chisel-bench", ".vmf");
+		file.deleteOnExit();
+		generate(file, megabytes * 1024L * 1024L);
+		double size = file.length() / (1024.0 * 1024.0);
+
+		System.out.println("MB\tstream(MB/s)\tloaded(MB/s)\tread(MB/s)\tsave(ms)\tfull save(ms)");
+		for (int it = 0; it < ITERATIONS; ++it) {
+			long start = System.nanoTime();
+			Reader reader = new InputStreamReader(new FileInputStream(file), "ISO-8859-1");
+			try {
+				tokenize(new StreamVmfTokenizer(reader));
+			} finally {
+				reader.close();
+			}
+			double stream = (System.nanoTime() - start) / 1e9;
+
+			start = System.nanoTime();
+			tokenize(MappedVmfTokenizer.load(file));
+			double loaded = (System.nanoTime() - start) / 1e9;
+
+			start = System.nanoTime();
+			Root root = VmfReader.read(file);
+			double read = (System.nanoTime() - start) / 1e9;
+
+			Brush brush = root.getWorld().brushes.get(root.getWorld().brushes.size / 2);
+			for (Vector3 v: brush.getVertices()) {
+				v.add(0f, 16f, 0f);
+			}
+			root.getWorld().update(brush);
+			start = System.nanoTime();
+			VmfWriter.save(root, file);
+			double save = (System.nanoTime() - start) / 1e6;
+
+			root.setSource(null);
+			start = System.nanoTime();
+			VmfWriter.save(root, file);
+			double full = (System.nanoTime() - start) / 1e6;
+
+			System.out.printf("%.1f\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f%n", size, size / stream, size / loaded, size / read, save, full);
+		}
+		file.delete();
+	}
+
+	private static int tokenize(VmfTokenizer tokens) throws IOException {
+		float[] numbers = new float[9];
+		int n = 0;
+		boolean plane = false;
+		while (tokens.next() != VmfTokenizer.EOF) {
+			if (tokens.getType() == VmfTokenizer.STRING) {
+				if (plane) n += tokens.getNumbers(numbers);
+				plane = !plane && tokens.is("plane");
+			}
+		}
+		return n;
+	}
+
+	private static void generate(File file, long bytes) throws IOException {
+		Random random = new Random(1);
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1"));
+		try {
+			out.write("world\n{\n\t\"id\" \"1\"\n\t\"classname\" \"worldspawn\"\n");
+			StringBuilder b = new StringBuilder();
+			long written = 0;
+			for (int id = 2; written < bytes; ++id) {
+				b.setLength(0);
+				float x = random.nextInt(16384) - 8192, y = random.nextInt(16384) - 8192, z = random.nextInt(4096);
+				float size = 8 + random.nextInt(248);
+				TestVmfReader.solid(b, id, x, y, z, x + size, y + size, z + size);
+				out.append(b);
+				written += b.length();
+			}
+			out.write("}\n");
+		} finally {
+			out.close();
+		}
+	}
+
+}
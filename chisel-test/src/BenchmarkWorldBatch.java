@@ -0,0 +1,47 @@
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.image.WorldBatch;
+import com.sastraxi.chisel.map.Brush;
+
+import java.util.Random;
+
+/**
+ * Packs a grid of random cubes into world chunks, then times rebuilding everything
+ * against rebuilding after a single brush edit. Results are printed as tab-separated columns.
+ *
+ * Run with: java -cp ... BenchmarkWorldBatch
+ */
+public class BenchmarkWorldBatch {
+
+	private static final int ITERATIONS = 20;
+
+	public static void main(String[] args) {
+		System.out.println("brushes\tchunks\tfull(ms)\tedit(ms)");
+		for (int n = 1000; n <= 32000; n *= 2) {
+			Random random = new Random(n);
+			Array<Brush> brushes = new Array<Brush>(n);
+			for (int i = 0; i < n; ++i) {
+				brushes.add(Boxes.cube(random.nextFloat() * 8192f + 1f, random.nextFloat() * 1024f + 1f,
+						random.nextFloat() * 8192f + 1f, 8f + random.nextFloat() * 32f));
+			}
+
+			double full = 0.0, edit = 0.0;
+			int chunks = 0;
+			for (int it = 0; it < ITERATIONS; ++it) {
+				WorldBatch batch = new WorldBatch();
+				batch.addAll(brushes);
+				long start = System.nanoTime();
+				batch.build();
+				full += (System.nanoTime() - start) / 1e6;
+
+				Brush brush = brushes.get(random.nextInt(n));
+				start = System.nanoTime();
+				batch.update(brush);
+				batch.build();
+				edit += (System.nanoTime() - start) / 1e6;
+				chunks = batch.getChunks().size;
+			}
+			System.out.printf("%d\t%d\t%.2f\t%.3f%n", n, chunks, full / ITERATIONS, edit / ITERATIONS);
+		}
+	}
+
+}
@@ -0,0 +1,41 @@
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.math.HalfspacePolygon;
+
+/**
+ * Axis-aligned boxes for the tests to build brushes from. The planes always come in the same
+ * order (+y, -y, +x, -x, +z, -z), so tests that look at faces by index can rely on it.
+ */
+public class Boxes {
+
+	private Boxes() {
+	}
+
+	/**
+	 * An axis-aligned box, in terms of half-spaces.
+	 */
+	static Array<Plane> planes(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		Array<Plane> planes = new Array<Plane>();
+		planes.add(new Plane(new Vector3(0f,  1f, 0f), new Vector3(0f, maxY, 0f)));
+		planes.add(new Plane(new Vector3(0f, -1f, 0f), new Vector3(0f, minY, 0f)));
+		planes.add(new Plane(new Vector3( 1f, 0f, 0f), new Vector3(maxX, 0f, 0f)));
+		planes.add(new Plane(new Vector3(-1f, 0f, 0f), new Vector3(minX, 0f, 0f)));
+		planes.add(new Plane(new Vector3(0f, 0f,  1f), new Vector3(0f, 0f, maxZ)));
+		planes.add(new Plane(new Vector3(0f, 0f, -1f), new Vector3(0f, 0f, minZ)));
+		return planes;
+	}
+
+	static Brush box(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		return HalfspacePolygon.toConvex(planes(minX, minY, minZ, maxX, maxY, maxZ));
+	}
+
+	/**
+	 * A cube centred on (x, y, z).
+	 */
+	static Brush cube(float x, float y, float z, float half) {
+		return box(x - half, y - half, z - half, x + half, y + half, z + half);
+	}
+
+}
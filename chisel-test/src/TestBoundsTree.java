@@ -0,0 +1,95 @@
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.math.BoundsTree;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestBoundsTree {
+
+	private static final int N = 2000;
+
+	private BoundingBox randomBox(Random random) {
+		Vector3 min = new Vector3(random.nextFloat() * 1000f, random.nextFloat() * 1000f, random.nextFloat() * 1000f);
+		Vector3 size = new Vector3(1f + random.nextFloat() * 20f, 1f + random.nextFloat() * 20f, 1f + random.nextFloat() * 20f);
+		return new BoundingBox(min, min.cpy().add(size));
+	}
+
+	private int bruteForceCount(Array<BoundingBox> boxes, BoundingBox query) {
+		int n = 0;
+		for (BoundingBox box: boxes) {
+			if (box != null && box.intersects(query)) n++;
+		}
+		return n;
+	}
+
+	@Test
+	public void testQueryMatchesBruteForce() {
+		Random random = new Random(1);
+		BoundsTree<BoundingBox> tree = new BoundsTree<BoundingBox>();
+		Array<BoundingBox> boxes = new Array<BoundingBox>();
+		int[] proxies = new int[N];
+		for (int i = 0; i < N; ++i) {
+			BoundingBox box = randomBox(random);
+			boxes.add(box);
+			proxies[i] = tree.insert(box, box);
+		}
+
+		// move some, remove some.
+		for (int i = 0; i < N; i += 3) {
+			BoundingBox box = boxes.get(i);
+			box.set(randomBox(random));
+			tree.update(proxies[i], box);
+		}
+		for (int i = 1; i < N; i += 5) {
+			tree.remove(proxies[i]);
+			boxes.set(i, null);
+		}
+		assertThat(tree.size(), equalTo(N - N / 5));
+
+		// stays balanced
+		assertTrue(tree.getHeight() < 4 * (int) Math.ceil(Math.log(N) / Math.log(2)));
+
+		Array<BoundingBox> found = new Array<BoundingBox>();
+		for (int q = 0; q < 100; ++q) {
+			BoundingBox query = randomBox(random);
+			query.max.add(50f, 50f, 50f);
+			query.set(query.min, query.max);
+			found.clear();
+			tree.query(query, found);
+			assertThat(found.size, equalTo(bruteForceCount(boxes, query)));
+		}
+	}
+
+	@Test
+	public void testRaycastAndNearest() {
+		BoundsTree<BoundingBox> tree = new BoundsTree<BoundingBox>();
+		Array<BoundingBox> boxes = new Array<BoundingBox>();
+		for (int i = 0; i < 100; ++i) {
+			BoundingBox box = new BoundingBox(new Vector3(10f * i, 0f, 0f), new Vector3(10f * i + 5f, 5f, 5f));
+			boxes.add(box);
+			tree.insert(box, box);
+		}
+
+		BoundsTree.RayTest<BoundingBox> boxTest = new BoundsTree.RayTest<BoundingBox>() {
+			@Override
+			public float intersect(BoundingBox box, Ray ray) {
+				return box.min.x - ray.origin.x; // rays in this test go along +x
+			}
+		};
+		float[] hit = new float[1];
+		Ray ray = new Ray(new Vector3(306f, 2f, 2f), new Vector3(1f, 0f, 0f));
+		assertThat(tree.raycast(ray, boxTest, hit), equalTo(boxes.get(31)));
+		assertThat(hit[0], equalTo(4f));
+
+		assertThat(tree.nearest(new Vector3(501f, 20f, 2f)), equalTo(boxes.get(50)));
+		assertThat(tree.nearest(new Vector3(508f, 2f, 2f)), equalTo(boxes.get(51)));
+	}
+
+}
@@ -0,0 +1,87 @@
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.math.LocalMath;
+import org.junit.Test;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestBrushContainer {
+
+	@Test
+	public void testRemove() {
+		BrushContainer world = new BrushContainer();
+		Array<Brush> all = new Array<Brush>();
+		for (int i = 0; i < 100; ++i) {
+			Brush brush = Boxes.cube(10f * i, 0f, 0f, 2f);
+			all.add(brush);
+			world.add(brush);
+		}
+
+		// every third, from the middle out, so the gaps get filled from the end.
+		for (int i = 0; i < 100; i += 3) {
+			world.remove(all.get((i + 50) % 100));
+		}
+		world.remove(all.get(50)); // already gone
+		assertThat(world.brushes.size, equalTo(66));
+		for (int i = 0; i < 100; ++i) {
+			boolean kept = (i + 50) % 100 % 3 != 0;
+			assertThat(world.brushes.contains(all.get(i), true), equalTo(kept));
+		}
+
+		// the brushes that were moved into gaps can still be updated and found.
+		Array<Brush> found = new Array<Brush>();
+		for (Brush brush: world.brushes) {
+			world.update(brush);
+			found.clear();
+			world.getBrushes(brush.getBounds(), found);
+			assertTrue(found.contains(brush, true));
+		}
+		while (world.brushes.size > 0) {
+			world.remove(world.brushes.first());
+		}
+		assertThat(world.brushes.size, equalTo(0));
+		found.clear();
+		world.getBrushes(new BoundingBox().set(all.first().getBounds()).ext(all.peek().getBounds()), found);
+		assertThat(found.size, equalTo(0));
+		assertNull(world.getNearest(all.first().getBounds().getCenter()));
+	}
+
+	/**
+	 * Moving vertices and calling update() is all it takes for picking and normals to follow.
+	 */
+	@Test
+	public void testMovedBrush() {
+		BrushContainer world = new BrushContainer();
+		Brush brush = Boxes.cube(0f, 0f, 0f, 1f);
+		world.add(brush);
+
+		// off to the side, with the top tipped up along its +x edge.
+		for (Vector3 v: brush.getVertices()) {
+			v.x += 100f;
+			if (v.x > 100f && v.y > 0f) v.y += 1f;
+		}
+		world.update(brush);
+
+		float[] hit = new float[1];
+		Ray down = new Ray(new Vector3(100.9f, 10f, 0f), new Vector3(0f, -1f, 0f));
+		assertThat(world.pick(down, hit), sameInstance(brush));
+		assertTrue(Math.abs(hit[0] - (10f - 1.95f)) < 0.001f);
+		assertNull(world.pick(new Ray(new Vector3(0f, 10f, 0f), new Vector3(0f, -1f, 0f)), hit));
+
+		Plane top = brush.getFaces().get(0).getPlane();
+		assertTrue(top.normal.epsilonEquals(new Vector3(-1f, 2f, 0f).nor(), LocalMath.EPSILON));
+		Plane side = brush.getFaces().get(2).getPlane();
+		assertTrue(side.normal.epsilonEquals(new Vector3(1f, 0f, 0f), LocalMath.EPSILON));
+		assertTrue(Math.abs(side.d + 101f) < 0.001f);
+	}
+
+}
@@ -0,0 +1,113 @@
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.math.Face;
+import com.sastraxi.chisel.math.HalfspacePolygon;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+public class TestBrushFingerprint {
+
+	private static Array<Plane> hull(Random random, int n) {
+		Array<Plane> planes = new Array<Plane>();
+		for (int i = 0; i < n; ++i) {
+			Vector3 normal = new Vector3((float) random.nextGaussian(), (float) random.nextGaussian(),
+					(float) random.nextGaussian()).nor();
+			planes.add(new Plane(normal, normal.cpy().scl(128f)));
+		}
+		// keep it bounded
+		planes.addAll(Boxes.planes(-200f, -200f, -200f, 200f, 200f, 200f));
+		return planes;
+	}
+
+	/**
+	 * The same solid stored in a different order: vertices permuted, faces shuffled, and
+	 * each loop started from a different vertex.
+	 */
+	@Test
+	public void testOrderIndependent() {
+		Random random = new Random(6);
+		for (int t = 0; t < 20; ++t) {
+			Brush brush = HalfspacePolygon.toConvex(hull(random, 12));
+
+			int n = brush.getVertices().size;
+			int[] permutation = new int[n];
+			for (int i = 0; i < n; ++i) permutation[i] = i;
+			for (int i = n - 1; i > 0; --i) {
+				int j = random.nextInt(i + 1), x = permutation[i];
+				permutation[i] = permutation[j];
+				permutation[j] = x;
+			}
+			Array<Vector3> vertices = new Array<Vector3>(n);
+			for (int i = 0; i < n; ++i) vertices.add(null);
+			for (int i = 0; i < n; ++i) vertices.set(permutation[i], brush.getVertices().get(i).cpy());
+			Array<Face> faces = new Array<Face>();
+			for (Face face: brush.getFaces()) {
+				int[] loop = face.getLoop();
+				int start = random.nextInt(loop.length);
+				int[] moved = new int[loop.length];
+				for (int i = 0; i < loop.length; ++i) moved[i] = permutation[loop[(start + i) % loop.length]];
+				faces.add(new Face(moved));
+			}
+			faces.shuffle();
+			Brush other = new Brush(vertices, faces);
+
+			assertThat(other.getFingerprint(), equalTo(brush.getFingerprint()));
+			assertThat(other, equalTo(brush));
+			assertThat(other.hashCode(), equalTo(brush.hashCode()));
+		}
+	}
+
+	@Test
+	public void testDifferentShapes() {
+		Random random = new Random(7);
+		Brush a = HalfspacePolygon.toConvex(hull(random, 12));
+		Brush b = HalfspacePolygon.toConvex(hull(random, 12));
+		assertThat(a, not(equalTo(b)));
+		assertThat(a.getFingerprint().getHash(), not(equalTo(b.getFingerprint().getHash())));
+
+		// moving a vertex changes it, once the brush knows it moved.
+		Brush c = HalfspacePolygon.toConvex(hull(new Random(7), 12));
+		assertThat(c, equalTo(a));
+		c.getVertices().get(0).x += 1f;
+		c.updateBounds();
+		assertThat(c, not(equalTo(a)));
+	}
+
+	@Test
+	public void testCached() {
+		Brush brush = HalfspacePolygon.toConvex(hull(new Random(8), 8));
+		assertSame(brush.getFingerprint(), brush.getFingerprint());
+	}
+
+	@Test
+	public void testFindDuplicates() {
+		BrushContainer container = new BrushContainer();
+		Random random = new Random(9);
+		Array<Array<Plane>> shapes = new Array<Array<Plane>>();
+		for (int i = 0; i < 10; ++i) {
+			shapes.add(hull(random, 10));
+		}
+		for (int i = 0; i < 10; ++i) {
+			container.add(HalfspacePolygon.toConvex(shapes.get(i)));
+		}
+		Brush copy = HalfspacePolygon.toConvex(shapes.get(3));
+		Brush again = HalfspacePolygon.toConvex(shapes.get(3));
+		container.add(copy);
+		container.add(again);
+
+		Array<Brush> duplicates = new Array<Brush>();
+		assertThat(container.findDuplicates(duplicates), equalTo(2));
+		assertSame(copy, duplicates.get(0));
+		assertSame(again, duplicates.get(1));
+	}
+
+}
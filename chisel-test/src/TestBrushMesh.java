@@ -0,0 +1,198 @@
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.badlogic.gdx.utils.Pool;
+import com.sastraxi.chisel.image.MeshCache;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.state.Selection;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.Executor;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Without GL, meshes fall back to plain vertex arrays, so we can look inside them.
+ */
+public class TestBrushMesh {
+
+	private static final int FLOATS_PER_VERTEX = 8;
+
+	@BeforeClass
+	public static void setUp() {
+		GdxNativesLoader.load();
+	}
+
+	@After
+	public void tearDown() {
+		Brush.setViews(Brush.VIEW_SOLID);
+		Brush.setMeshCache(null);
+	}
+
+	private final Array<Renderable> renderables = new Array<Renderable>();
+	private final Pool<Renderable> pool = new Pool<Renderable>() {
+		@Override
+		protected Renderable newObject() {
+			return new Renderable();
+		}
+	};
+
+	private Array<Renderable> render(Brush brush) {
+		pool.freeAll(renderables);
+		renderables.clear();
+		brush.getRenderables(renderables, pool);
+		return renderables;
+	}
+
+	@Test
+	public void testViews() {
+		Brush cube = Boxes.cube(0f, 0f, 0f, 1f);
+		Brush.setViews(Brush.VIEW_SOLID | Brush.VIEW_LINES | Brush.VIEW_POINTS);
+		Array<Renderable> r = render(cube);
+		assertThat(r.size, equalTo(3));
+
+		// 6 quads; 12 edges, once each; 8 corners, once each.
+		assertThat(r.get(0).primitiveType, equalTo(GL10.GL_TRIANGLES));
+		assertThat(r.get(0).meshPartSize, equalTo(36));
+		assertThat(r.get(1).primitiveType, equalTo(GL10.GL_LINES));
+		assertThat(r.get(1).meshPartOffset, equalTo(36));
+		assertThat(r.get(1).meshPartSize, equalTo(24));
+		assertThat(r.get(2).primitiveType, equalTo(GL10.GL_POINTS));
+		assertThat(r.get(2).meshPartOffset, equalTo(60));
+		assertThat(r.get(2).meshPartSize, equalTo(8));
+
+		// all three share the one mesh, with 4 vertices per face.
+		assertSame(r.get(0).mesh, r.get(2).mesh);
+		assertThat(r.get(0).mesh.getNumVertices(), equalTo(24));
+		assertThat(r.get(0).mesh.getNumIndices(), equalTo(68));
+	}
+
+	@Test
+	public void testSelectionFlags() {
+		Brush cube = Boxes.cube(0f, 0f, 0f, 1f);
+		Mesh mesh = render(cube).get(0).mesh;
+
+		Selection selection = new Selection();
+		cube.setSelection(selection);
+		selection.selectFace(2);
+		selection.selectVertex(cube.getFaces().get(0).get(0));
+		assertSame(mesh, render(cube).get(0).mesh); // flags rewritten in place
+
+		FloatBuffer verts = mesh.getVerticesBuffer();
+		int faceFlags = 0, vertexFlags = 0;
+		for (int k = 0; k < mesh.getNumVertices(); ++k) {
+			if (verts.get(k * FLOATS_PER_VERTEX + 6) == 1f) faceFlags++;
+			if (verts.get(k * FLOATS_PER_VERTEX + 7) == 1f) vertexFlags++;
+		}
+		assertThat(faceFlags, equalTo(4)); // one quad
+		assertThat(vertexFlags, equalTo(3)); // a cube corner is on three faces
+
+		// moving vertices means new indices, and a new mesh.
+		cube.invalidateMesh();
+		assertNotSame(mesh, render(cube).get(0).mesh);
+	}
+
+	@Test
+	public void testClickPatchesInPlace() {
+		final Array<Runnable> jobs = new Array<Runnable>();
+		MeshCache cache = new MeshCache(new Executor() {
+			@Override
+			public void execute(Runnable job) {
+				jobs.add(job);
+			}
+		}, 8);
+		Brush.setMeshCache(cache);
+
+		Brush cube = Boxes.cube(0f, 0f, 0f, 1f);
+		Selection selection = new Selection();
+		cube.setSelection(selection);
+		render(cube);
+		jobs.removeIndex(0).run();
+		cache.update();
+		Mesh mesh = render(cube).get(0).mesh;
+
+		// one face: no job for the workers, and only its corners change.
+		selection.selectFace(4);
+		render(cube);
+		assertThat(jobs.size, equalTo(0));
+		assertThat(faceFlags(mesh), equalTo(new int[] { 0, 0, 0, 0, 4, 0 }));
+
+		selection.clearFace(4);
+		selection.selectFace(1);
+		render(cube);
+		assertThat(jobs.size, equalTo(0));
+		assertThat(faceFlags(mesh), equalTo(new int[] { 0, 4, 0, 0, 0, 0 }));
+
+		// many at once go through the workers.
+		selection.invertFaces(6);
+		render(cube);
+		assertThat(jobs.size, equalTo(1));
+		jobs.removeIndex(0).run();
+		cache.update();
+		assertSame(mesh, render(cube).get(0).mesh);
+		assertThat(faceFlags(mesh), equalTo(new int[] { 4, 0, 4, 4, 4, 4 }));
+	}
+
+	/**
+	 * The workers build from what the brush was like when the job was queued, even if it's
+	 * edited before they get to it.
+	 */
+	@Test
+	public void testBuildsFromCopy() {
+		final Array<Runnable> jobs = new Array<Runnable>();
+		MeshCache cache = new MeshCache(new Executor() {
+			@Override
+			public void execute(Runnable job) {
+				jobs.add(job);
+			}
+		}, 8);
+		Brush.setMeshCache(cache);
+
+		Brush cube = Boxes.cube(0f, 0f, 0f, 1f);
+		render(cube);
+		for (Vector3 v: cube.getVertices()) {
+			v.x += 10f;
+		}
+		cube.updateBounds();
+		jobs.removeIndex(0).run();
+		cache.update();
+		assertThat(largestX(render(cube).get(0).mesh), equalTo(1f));
+
+		cube.invalidateMesh();
+		render(cube);
+		jobs.removeIndex(0).run();
+		cache.update();
+		assertThat(largestX(render(cube).get(0).mesh), equalTo(11f));
+	}
+
+	private static float largestX(Mesh mesh) {
+		FloatBuffer verts = mesh.getVerticesBuffer();
+		float x = Float.NEGATIVE_INFINITY;
+		for (int k = 0; k < mesh.getNumVertices(); ++k) {
+			x = Math.max(x, verts.get(k * FLOATS_PER_VERTEX));
+		}
+		return x;
+	}
+
+	/**
+	 * @return for each face of a cube, how many of its corners are flagged as selected.
+	 */
+	private static int[] faceFlags(Mesh mesh) {
+		FloatBuffer verts = mesh.getVerticesBuffer();
+		int[] flags = new int[6];
+		for (int k = 0; k < mesh.getNumVertices(); ++k) {
+			if (verts.get(k * FLOATS_PER_VERTEX + 6) == 1f) flags[k / 4]++;
+		}
+		return flags;
+	}
+
+}
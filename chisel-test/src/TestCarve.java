@@ -0,0 +1,149 @@
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.math.Face;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+public class TestCarve {
+
+	final float SCALE = 5f; // absolute
+
+	@Test
+	public void testSplitCube() {
+		Brush cube = Boxes.box(-SCALE, -SCALE, -SCALE, SCALE, SCALE, SCALE);
+		Plane plane = new Plane(new Vector3(0f, 1f, 0f), new Vector3(0f, 1f, 0f));
+
+		Brush[] halves = cube.carve(plane, true, true);
+		Brush above = Boxes.box(-SCALE, 1f, -SCALE, SCALE, SCALE, SCALE);
+		Brush below = Boxes.box(-SCALE, -SCALE, -SCALE, SCALE, 1f, SCALE);
+		assertThat(halves[Brush.POSITIVE_SIDE], equalTo(above));
+		assertThat(halves[Brush.NEGATIVE_SIDE], equalTo(below));
+
+		// only ask for one side
+		halves = cube.carve(plane, false, true);
+		assertThat(halves[Brush.POSITIVE_SIDE], nullValue());
+		assertThat(halves[Brush.NEGATIVE_SIDE], equalTo(below));
+	}
+
+	/**
+	 * A plane through a whole face only glances the brush.
+	 */
+	@Test
+	public void testGlancingPlane() {
+		Brush cube = Boxes.box(-SCALE, -SCALE, -SCALE, SCALE, SCALE, SCALE);
+		Plane plane = new Plane(new Vector3(1f, 0f, 0f), new Vector3(SCALE, 0f, 0f));
+
+		Brush[] halves = cube.carve(plane, true, true);
+		assertThat(halves[Brush.POSITIVE_SIDE], nullValue());
+		assertThat(halves[Brush.NEGATIVE_SIDE], sameInstance(cube));
+	}
+
+	/**
+	 * Faces the plane doesn't cross keep their loops; the vertices are still the new brush's own.
+	 */
+	@Test
+	public void testSharesUncrossedFaces() {
+		Brush cube = Boxes.box(-SCALE, -SCALE, -SCALE, SCALE, SCALE, SCALE);
+		Plane plane = new Plane(new Vector3(0f, 1f, 0f), new Vector3(0f, 1f, 0f));
+		Brush above = cube.carve(plane, true, false)[Brush.POSITIVE_SIDE];
+
+		int[] top = null;
+		for (Face face: cube.getFaces()) {
+			if (face.getPlane().normal.y > 0.5f) top = face.getLoop();
+		}
+		int shared = 0;
+		for (Face face: above.getFaces()) {
+			if (face.getLoop() == top) shared++;
+		}
+		assertThat(shared, equalTo(1));
+		for (Vector3 v: above.getVertices()) {
+			assertFalse(cube.getVertices().contains(v, true));
+		}
+	}
+
+	/**
+	 * Vertex indices past what fits in 16 bits. Split edges used to be keyed on
+	 * (min << 16 | max), which for (0, 65541) and (1, 5) is the same.
+	 */
+	@Test
+	public void testManyVertices() {
+		Brush cube = Boxes.box(-SCALE, -SCALE, -SCALE, SCALE, SCALE, SCALE);
+		Array<Vector3> corners = cube.getVertices();
+
+		// two of the edges the plane will cross, i.e. the vertical ones.
+		int[] index = new int[corners.size];
+		Arrays.fill(index, -1);
+		int[] targets = { 0, 65536 + 5, 1, 5 };
+		int k = 0;
+		for (int i = 0; i < corners.size && k < targets.length; ++i) {
+			for (int j = i + 1; j < corners.size && k < targets.length; ++j) {
+				if (corners.get(i).x == corners.get(j).x && corners.get(i).z == corners.get(j).z) {
+					index[i] = targets[k++];
+					index[j] = targets[k++];
+				}
+			}
+		}
+		int next = 2;
+		for (int i = 0; i < corners.size; ++i) {
+			if (index[i] < 0) {
+				if (next == 5) next++;
+				index[i] = next++;
+			}
+		}
+
+		// the same cube, with copies of one corner filling the gaps.
+		Array<Vector3> vertices = new Array<Vector3>();
+		for (int i = 0; i <= 65536 + 5; ++i) {
+			vertices.add(corners.get(0).cpy());
+		}
+		for (int i = 0; i < corners.size; ++i) {
+			vertices.get(index[i]).set(corners.get(i));
+		}
+		Array<Face> faces = new Array<Face>();
+		for (Face face: cube.getFaces()) {
+			int[] loop = new int[face.arity()];
+			for (int i = 0; i < loop.length; ++i) {
+				loop[i] = index[face.get(i)];
+			}
+			faces.add(new Face(loop));
+		}
+		Brush spreadOut = new Brush(vertices, faces);
+
+		Plane plane = new Plane(new Vector3(0f, 1f, 0f), new Vector3(0f, 1f, 0f));
+		Brush[] halves = spreadOut.carve(plane, true, true);
+		Brush[] expected = cube.carve(plane, true, true);
+		assertThat(halves[Brush.POSITIVE_SIDE], equalTo(expected[Brush.POSITIVE_SIDE]));
+		assertThat(halves[Brush.NEGATIVE_SIDE], equalTo(expected[Brush.NEGATIVE_SIDE]));
+	}
+
+	@Test
+	public void testCarveContainer() {
+		BrushContainer container = new BrushContainer();
+		for (int i = 0; i < 200; ++i) {
+			float x = 2f * SCALE * (i - 100) + 1f;
+			container.add(Boxes.box(x, -SCALE, -SCALE, x + SCALE, SCALE, SCALE));
+		}
+
+		Plane plane = new Plane(new Vector3(0f, 0f, 1f), new Vector3(0f, 0f, 1f));
+		Brush[][] results = container.carve(plane, true, true);
+		assertThat(results.length, equalTo(container.brushes.size));
+		for (int i = 0; i < results.length; ++i) {
+			float x = 2f * SCALE * (i - 100) + 1f;
+			assertThat(results[i][Brush.POSITIVE_SIDE],
+					equalTo(Boxes.box(x, -SCALE, 1f, x + SCALE, SCALE, SCALE)));
+			assertThat(results[i][Brush.NEGATIVE_SIDE],
+					equalTo(Boxes.box(x, -SCALE, -SCALE, x + SCALE, SCALE, 1f)));
+		}
+	}
+
+}
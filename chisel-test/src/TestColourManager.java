@@ -0,0 +1,87 @@
+import com.badlogic.gdx.graphics.Color;
+import com.sastraxi.chisel.image.ColourManager;
+import com.sastraxi.chisel.map.Brush;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestColourManager {
+
+	@Test
+	public void testStableForId() {
+		Set<Color> used = new HashSet<Color>();
+		for (int id = 1; id <= 100; ++id) {
+			assertSame(ColourManager.forId(id), ColourManager.forId(id));
+			used.add(ColourManager.forId(id));
+		}
+		assertThat(used.size(), equalTo(3)); // every colour gets used
+	}
+
+	@Test
+	public void testBrushColour() {
+		Brush a = Boxes.cube(0f, 0f, 0f, 8f), b = Boxes.cube(0f, 0f, 0f, 8f);
+		a.setId(42);
+		assertSame(ColourManager.forId(42), a.getColour());
+
+		// as if the map had been loaded again.
+		b.getColour();
+		b.setId(42);
+		assertSame(a.getColour(), b.getColour());
+
+		assertNotNull(Boxes.cube(0f, 0f, 0f, 8f).getColour());
+	}
+
+	@Test
+	public void testManyThreads() throws InterruptedException {
+		Thread[] threads = new Thread[4];
+		final Color[][] colours = new Color[threads.length][10000];
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int t = 0; t < threads.length; ++t) {
+			final int index = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < colours[index].length; ++i) {
+						colours[index][i] = ColourManager.next();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread: threads) {
+			thread.join();
+		}
+
+		// 40000 consecutive turns of the cycle, however they were interleaved: every colour
+		// comes up the same number of times, give or take one. A lost update breaks this.
+		Map<Color, Integer> counts = new IdentityHashMap<Color, Integer>();
+		for (Color[] row: colours) {
+			for (Color c: row) {
+				assertNotNull(c);
+				Integer n = counts.get(c);
+				counts.put(c, n == null ? 1 : n + 1);
+			}
+		}
+		assertThat(counts.size(), equalTo(3));
+		for (int n: counts.values()) {
+			assertTrue(n == 40000 / 3 || n == 40000 / 3 + 1);
+		}
+	}
+
+}
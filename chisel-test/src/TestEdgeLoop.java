@@ -0,0 +1,73 @@
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.math.EdgeLoop;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+public class TestEdgeLoop {
+
+	private static Array<int[]> edges(int... ends) {
+		Array<int[]> edges = new Array<int[]>();
+		for (int i = 0; i < ends.length; i += 2) {
+			edges.add(new int[] { ends[i], ends[i+1] });
+		}
+		return edges;
+	}
+
+	@Test
+	public void testOrder() {
+		// shuffled, some backwards
+		EdgeLoop loop = EdgeLoop.order(edges(2, 7, 9, 4, 7, 9, 2, 4));
+		assertThat(loop.getStatus(), equalTo(EdgeLoop.Status.CLOSED));
+		assertThat(loop.getLoop(), equalTo(new int[] { 2, 7, 9, 4 }));
+		assertThat(EdgeLoop.reverse(loop.getLoop()), equalTo(new int[] { 2, 4, 9, 7 }));
+	}
+
+	@Test
+	public void testBroken() {
+		assertThat(EdgeLoop.order(edges()).getStatus(), equalTo(EdgeLoop.Status.EMPTY));
+		assertThat(EdgeLoop.order(edges(0, 1, 1, 0)).getStatus(), equalTo(EdgeLoop.Status.DEGENERATE));
+		assertThat(EdgeLoop.order(edges(0, 1, 1, 2, 2, 2)).getStatus(), equalTo(EdgeLoop.Status.DEGENERATE));
+		assertThat(EdgeLoop.order(edges(0, 1, 1, 2, 2, 0, 1, 0)).getStatus(), equalTo(EdgeLoop.Status.DEGENERATE));
+		assertThat(EdgeLoop.order(edges(0, 1, 1, 2, 2, 3)).getStatus(), equalTo(EdgeLoop.Status.OPEN));
+		assertThat(EdgeLoop.order(edges(0, 1, 1, 2, 2, 0, 0, 3)).getStatus(), equalTo(EdgeLoop.Status.BRANCHED));
+		assertThat(EdgeLoop.order(edges(0, 1, 1, 2, 2, 0, 3, 4, 4, 5, 5, 3)).getStatus(), equalTo(EdgeLoop.Status.SPLIT));
+		assertNull(EdgeLoop.order(edges(0, 1, 1, 2, 2, 3)).getLoop());
+	}
+
+	/**
+	 * High-arity faces (cylinders, arches) come in shuffled; the loop must come out whole.
+	 */
+	@Test
+	public void testLargeShuffled() {
+		Random random = new Random(4);
+		int n = 4096;
+		int[] ring = new int[n];
+		for (int i = 0; i < n; ++i) {
+			ring[i] = i * 3 + 1;
+		}
+		Array<int[]> edges = new Array<int[]>();
+		for (int i = 0; i < n; ++i) {
+			int s = ring[i], e = ring[(i+1) % n];
+			edges.add(random.nextBoolean() ? new int[] { s, e } : new int[] { e, s });
+		}
+		for (int i = edges.size - 1; i > 0; --i) {
+			edges.swap(i, random.nextInt(i + 1));
+		}
+
+		EdgeLoop loop = EdgeLoop.order(edges);
+		assertThat(loop.getStatus(), equalTo(EdgeLoop.Status.CLOSED));
+		int[] result = loop.getLoop();
+		assertThat(result.length, equalTo(n));
+		for (int i = 0; i < n; ++i) {
+			int s = result[i], e = result[(i+1) % n];
+			int distance = Math.abs((s - 1) / 3 - (e - 1) / 3);
+			assertThat(distance == 1 || distance == n - 1, equalTo(true));
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+import com.sastraxi.chisel.math.EdgeMap;
+import org.junit.Test;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestEdgeMap {
+
+	@Test
+	public void testEdges() {
+		EdgeMap edges = new EdgeMap(2);
+		assertTrue(edges.add(3, 1, 7));
+		assertFalse(edges.add(1, 3, 5)); // same edge, the other way round
+		assertTrue(edges.add(2, 0, 9));
+		assertThat(edges.size(), equalTo(2));
+		assertThat(edges.get(1, 3, -1), equalTo(7));
+		assertThat(edges.get(0, 1, -1), equalTo(-1));
+		assertTrue(edges.contains(0, 2));
+
+		// well past what a short (or a packed int) can hold.
+		assertTrue(edges.add(70000, 3, 1));
+		assertTrue(edges.add(70000 + 65536, 3, 2));
+		assertThat(edges.get(3, 70000, -1), equalTo(1));
+		assertThat(edges.get(3, 70000 + 65536, -1), equalTo(2));
+
+		edges.clear();
+		assertThat(edges.size(), equalTo(0));
+		assertFalse(edges.contains(1, 3));
+	}
+
+	/**
+	 * Every edge of a long strip, so the table grows a few times.
+	 */
+	@Test
+	public void testGrow() {
+		EdgeMap edges = new EdgeMap();
+		int n = 5000;
+		for (int i = 0; i < n; ++i) {
+			assertTrue(edges.add(i, i + 1, i));
+			assertTrue(edges.add(i, i + n, -i));
+		}
+		assertThat(edges.size(), equalTo(2 * n));
+		for (int i = 0; i < n; ++i) {
+			assertThat(edges.get(i + 1, i, 0), equalTo(i));
+			assertThat(edges.get(i + n, i, 0), equalTo(-i));
+			assertFalse(edges.contains(i, i + 2));
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.math.Face;
+import org.junit.Test;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestFace {
+
+	/**
+	 * Faces used to be limited to vertex indices <= 32.
+	 */
+	@Test
+	public void testLargeIndices() {
+		int[] loop = new int[100];
+		int[] rotated = new int[100];
+		for (int i = 0; i < loop.length; ++i) {
+			loop[i] = 1000 + i;
+			rotated[i] = 1000 + (i + 37) % loop.length;
+		}
+		Face face = new Face(loop);
+		assertTrue(face.isClosed());
+		assertTrue(face.isOrdered());
+		assertThat(new Face(rotated), equalTo(face));
+		assertThat(new Face(rotated).hashCode(), equalTo(face.hashCode()));
+
+		rotated[0] = 5;
+		assertThat(new Face(rotated), not(equalTo(face)));
+	}
+
+	@Test
+	public void testEdgesAdapter() {
+		Face face = new Face(new int[] { 3, 1, 2 });
+		Array<int[]> edges = face.getEdges();
+		assertThat(edges.size, equalTo(3));
+		assertThat(edges.get(2)[0], equalTo(2));
+		assertThat(edges.get(2)[1], equalTo(3));
+		assertThat(new Face(edges), equalTo(face));
+
+		// an unordered ring of edges is closed, but a loop visiting a vertex twice is not.
+		Array<int[]> shuffled = new Array<int[]>(edges);
+		shuffled.swap(0, 1);
+		assertTrue(Face.isClosed(shuffled));
+		assertFalse(new Face(shuffled).isOrdered());
+		assertFalse(new Face(new int[] { 0, 1, 2, 1 }).isClosed());
+	}
+
+	@Test
+	public void testPlane() {
+		Array<Vector3> vertices = new Array<Vector3>();
+		vertices.add(new Vector3(0f, 2f, 0f));
+		vertices.add(new Vector3(1f, 2f, 0f));
+		vertices.add(new Vector3(1f, 2f, -1f));
+		vertices.add(new Vector3(0f, 2f, -1f));
+
+		Face face = new Face(new int[] { 0, 1, 2, 3 });
+		face.updatePlane(vertices);
+		assertThat(face.getPlane().normal, equalTo(new Vector3(0f, 1f, 0f)));
+		assertThat(face.getPlane().d, equalTo(-2f));
+	}
+
+}
@@ -2,6 +2,7 @@ import com.badlogic.gdx.math.Plane;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
 import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.math.ConvexSolver;
 import com.sastraxi.chisel.math.Face;
 import com.sastraxi.chisel.math.HalfspacePolygon;
 import com.sastraxi.chisel.math.LocalMath;
@@ -167,5 +168,161 @@ public class TestHalfspace {
 
 	}
 
+	/**
+	 * The clipping path and the brute-force enumeration must agree.
+	 */
+	@Test
+	public void testPrismMatchesEnumeration() {
+
+		// an octagonal prism, capped top and bottom.
+		final int SIDES = 8;
+		Array<Plane> planes = new Array<Plane>();
+		for (int i = 0; i < SIDES; ++i) {
+			double angle = 2.0 * Math.PI * i / SIDES;
+			Vector3 normal = new Vector3((float) Math.cos(angle), 0f, (float) Math.sin(angle));
+			planes.add(new Plane(normal, normal.cpy().scl(SCALE)));
+		}
+		planes.add(new Plane(new Vector3(0f,  1f, 0f), new Vector3(0f,  SCALE, 0f)));
+		planes.add(new Plane(new Vector3(0f, -1f, 0f), new Vector3(0f, -SCALE, 0f)));
+
+		Brush expected = HalfspacePolygon.enumerateConvex(planes);
+		Brush brush = HalfspacePolygon.toConvex(planes);
+		assertThat(brush.getVertices().size, equalTo(2 * SIDES));
+		assertThat(brush.getFaces().size, equalTo(SIDES + 2));
+		assertThat(expected, equalTo(brush));
+
+	}
+
+	/**
+	 * A cone: every side meets at the apex, far from the origin. The apex must come out
+	 * as a single vertex shared by all of them.
+	 */
+	@Test
+	public void testConeApex() {
+
+		final int SIDES = 24;
+		Vector3 apex = new Vector3(1536f, 2048f, -3072f);
+		Array<Plane> planes = new Array<Plane>();
+		for (int i = 0; i < SIDES; ++i) {
+			double angle = 2.0 * Math.PI * i / SIDES;
+			Vector3 normal = new Vector3(Math.round(40.0 * Math.cos(angle)), 20f, Math.round(40.0 * Math.sin(angle)));
+			planes.add(LocalMath.safePlane(normal, apex));
+		}
+		planes.add(LocalMath.safePlane(new Vector3(0f, -1f, 0f), new Vector3(0f, apex.y - 128f, 0f)));
+
+		Brush brush = HalfspacePolygon.toConvex(planes);
+		assertThat(brush.getVertices().size, equalTo(SIDES + 1));
+		assertThat(brush.getFaces().size, equalTo(SIDES + 1));
+		int atApex = 0;
+		for (Vector3 v: brush.getVertices()) {
+			if (v.dst(apex) < 0.01f) atApex++;
+		}
+		assertThat(atApex, equalTo(1));
+		assertClosed(brush);
+
+	}
+
+	/**
+	 * Unit normals (as read from a VMF) can't all pass exactly through the same apex, so
+	 * the planes nearly meet there. However that's resolved, the result has to be a closed
+	 * solid.
+	 */
+	@Test
+	public void testNearlyDegenerateApex() {
+
+		java.util.Random random = new java.util.Random(5);
+		for (int t = 0; t < 100; ++t) {
+			int sides = 3 + random.nextInt(30);
+			Vector3 apex = new Vector3(random.nextInt(1000) - 500, random.nextInt(1000) - 500, random.nextInt(1000) - 500);
+			Array<Plane> planes = new Array<Plane>();
+			for (int i = 0; i < sides; ++i) {
+				double angle = 2.0 * Math.PI * i / sides;
+				Vector3 normal = new Vector3(Math.round(40.0 * Math.cos(angle)), 20 + random.nextInt(5),
+						Math.round(40.0 * Math.sin(angle))).nor();
+				planes.add(new Plane(normal, apex));
+			}
+			planes.add(new Plane(new Vector3(0f, -1f, 0f), new Vector3(0f, apex.y - 100f - random.nextInt(100), 0f)));
+			for (int j = planes.size - 1; j > 0; --j) {
+				planes.swap(j, random.nextInt(j + 1));
+			}
+			assertClosed(HalfspacePolygon.toConvex(planes));
+		}
+
+	}
+
+	/**
+	 * A solver that's already been through bigger brushes (or is running on another thread)
+	 * must give exactly what a fresh one does, vertex for vertex.
+	 */
+	@Test
+	public void testSolverReuse() throws Exception {
+
+		final Array<Array<Plane>> inputs = new Array<Array<Plane>>();
+		for (int sides = 64; sides >= 3; sides /= 2) {
+			Array<Plane> planes = new Array<Plane>();
+			for (int i = 0; i < sides; ++i) {
+				double angle = 2.0 * Math.PI * i / sides + 0.1;
+				Vector3 normal = new Vector3((float) Math.cos(angle), 0.2f, (float) Math.sin(angle)).nor();
+				planes.add(new Plane(normal, normal.cpy().scl(SCALE)));
+			}
+			planes.add(new Plane(new Vector3(0f, -1f, 0f), new Vector3(0f, -SCALE, 0f)));
+			inputs.add(planes);
+		}
+
+		final String[] expected = new String[inputs.size];
+		for (int i = 0; i < inputs.size; ++i) {
+			expected[i] = new ConvexSolver().toConvex(inputs.get(i)).toString();
+		}
+
+		ConvexSolver solver = new ConvexSolver();
+		for (int round = 0; round < 2; ++round) {
+			for (int i = 0; i < inputs.size; ++i) {
+				assertThat(solver.toConvex(inputs.get(i)).toString(), equalTo(expected[i]));
+			}
+		}
+
+		java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(4);
+		try {
+			java.util.List<java.util.concurrent.Future<Boolean>> results = new java.util.ArrayList<java.util.concurrent.Future<Boolean>>();
+			for (int t = 0; t < 16; ++t) {
+				final int first = t;
+				results.add(pool.submit(new java.util.concurrent.Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						for (int k = 0; k < 50; ++k) {
+							int i = (first + k) % expected.length;
+							if (!HalfspacePolygon.toConvex(inputs.get(i)).toString().equals(expected[i])) return false;
+						}
+						return true;
+					}
+				}));
+			}
+			for (java.util.concurrent.Future<Boolean> result: results) {
+				Assert.assertTrue(result.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+	}
+
+	/**
+	 * Every edge is walked once in each direction, and V - E + F = 2.
+	 */
+	private static void assertClosed(Brush brush) {
+		java.util.Set<Long> edges = new java.util.HashSet<Long>();
+		for (Face face: brush.getFaces()) {
+			int[] loop = face.getLoop();
+			Assert.assertTrue(loop.length >= 3);
+			for (int i = 0; i < loop.length; ++i) {
+				long edge = ((long) loop[i] << 32) | loop[(i+1) % loop.length];
+				Assert.assertTrue("edge walked twice in the same direction", edges.add(edge));
+			}
+		}
+		for (long edge: edges) {
+			Assert.assertTrue("edge with only one face", edges.contains((edge << 32) | (edge >>> 32)));
+		}
+		assertThat(brush.getVertices().size - edges.size() / 2 + brush.getFaces().size, equalTo(2));
+	}
 
 }
@@ -0,0 +1,193 @@
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.image.MeshCache;
+import com.sastraxi.chisel.tasks.Tasks;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestMeshCache {
+
+	/**
+	 * Holds on to jobs until told to run them.
+	 */
+	private static class ManualExecutor implements Executor {
+		final Array<Runnable> jobs = new Array<Runnable>();
+
+		@Override
+		public void execute(Runnable job) {
+			jobs.add(job);
+		}
+
+		void runAll() {
+			while (jobs.size > 0) {
+				jobs.removeIndex(0).run();
+			}
+		}
+	}
+
+	/**
+	 * Stands in for a mesh: "source" is the geometry, "drawn" is what's on the GPU.
+	 */
+	private static class FakeEntry implements MeshCache.Entry {
+		int source = 0;
+		int prepared, generated, drawn = -1;
+		int numPrepares = 0, numUploads = 0, numFailures = 0;
+		volatile Thread generatedOn;
+		boolean fail = false;
+
+		@Override
+		public void prepare() {
+			prepared = source;
+			numPrepares++;
+		}
+
+		@Override
+		public void generate() {
+			generatedOn = Thread.currentThread();
+			if (fail) throw new IllegalStateException("broken geometry");
+			generated = prepared;
+		}
+
+		@Override
+		public void upload() {
+			drawn = generated;
+			numUploads++;
+		}
+
+		@Override
+		public void failed(Throwable error) {
+			numFailures++;
+		}
+	}
+
+	@Test
+	public void testUploadsPerFrame() {
+		ManualExecutor executor = new ManualExecutor();
+		MeshCache cache = new MeshCache(executor, 4);
+		FakeEntry[] entries = new FakeEntry[10];
+		for (int i = 0; i < entries.length; ++i) {
+			entries[i] = new FakeEntry();
+			cache.invalidate(entries[i]);
+		}
+		assertThat(cache.getNumPending(), equalTo(10));
+		assertThat(cache.update(), equalTo(0)); // nothing's been built yet
+
+		executor.runAll();
+		assertThat(cache.update(), equalTo(4));
+		assertThat(cache.update(), equalTo(4));
+		assertThat(cache.update(), equalTo(2));
+		assertThat(cache.update(), equalTo(0));
+		assertThat(cache.getNumPending(), equalTo(0));
+
+		// oldest first
+		for (FakeEntry entry: entries) {
+			assertThat(entry.numUploads, equalTo(1));
+		}
+	}
+
+	@Test
+	public void testStaleUntilUploaded() {
+		ManualExecutor executor = new ManualExecutor();
+		MeshCache cache = new MeshCache(executor, 1);
+		FakeEntry entry = new FakeEntry();
+		cache.invalidate(entry);
+		executor.runAll();
+		cache.update();
+		assertThat(entry.drawn, equalTo(0));
+
+		entry.source = 1;
+		cache.invalidate(entry);
+		assertTrue(cache.isPending(entry));
+		cache.update();
+		assertThat(entry.drawn, equalTo(0)); // old mesh still there
+
+		executor.runAll();
+		cache.update();
+		assertThat(entry.drawn, equalTo(1));
+		assertFalse(cache.isPending(entry));
+	}
+
+	@Test
+	public void testChangedWhileBuilding() {
+		ManualExecutor executor = new ManualExecutor();
+		MeshCache cache = new MeshCache(executor, 8);
+		FakeEntry entry = new FakeEntry();
+		cache.invalidate(entry);
+
+		// edited (twice) before the first build is done
+		entry.source = 1;
+		cache.invalidate(entry);
+		entry.source = 2;
+		cache.invalidate(entry);
+		executor.runAll();
+
+		// the first result is thrown away, and one more build queued
+		assertThat(cache.update(), equalTo(0));
+		assertThat(entry.numPrepares, equalTo(2));
+		executor.runAll();
+		assertThat(cache.update(), equalTo(1));
+		assertThat(entry.drawn, equalTo(2));
+		assertThat(entry.numUploads, equalTo(1));
+	}
+
+	@Test
+	public void testFailedBuild() {
+		ManualExecutor executor = new ManualExecutor();
+		MeshCache cache = new MeshCache(executor, 8);
+		FakeEntry entry = new FakeEntry();
+		entry.fail = true;
+		cache.invalidate(entry);
+		executor.runAll();
+		assertThat(cache.update(), equalTo(0));
+		assertThat(cache.getNumPending(), equalTo(0));
+		assertThat(entry.drawn, equalTo(-1));
+		assertThat(entry.numFailures, equalTo(1));
+
+		// it's up to the entry to ask again.
+		entry.fail = false;
+		cache.invalidate(entry);
+		executor.runAll();
+		assertThat(cache.update(), equalTo(1));
+		assertThat(entry.drawn, equalTo(0));
+	}
+
+	@Test
+	public void testForget() {
+		ManualExecutor executor = new ManualExecutor();
+		MeshCache cache = new MeshCache(executor, 8);
+		FakeEntry entry = new FakeEntry();
+		cache.invalidate(entry);
+		cache.forget(entry);
+		assertThat(cache.getNumPending(), equalTo(0));
+		executor.runAll();
+		assertThat(cache.update(), equalTo(0));
+		assertThat(entry.numUploads, equalTo(0));
+	}
+
+	@Test
+	public void testBuildsOnWorkers() throws InterruptedException {
+		MeshCache cache = new MeshCache(Tasks.pool(), 100);
+		FakeEntry[] entries = new FakeEntry[50];
+		for (int i = 0; i < entries.length; ++i) {
+			entries[i] = new FakeEntry();
+			entries[i].source = i;
+			cache.invalidate(entries[i]);
+		}
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (cache.getNumPending() > 0 && System.currentTimeMillis() < deadline) {
+			cache.update();
+			Thread.sleep(1);
+		}
+		for (int i = 0; i < entries.length; ++i) {
+			assertThat(entries[i].drawn, equalTo(i));
+			assertFalse(entries[i].generatedOn == Thread.currentThread());
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+import com.sastraxi.chisel.math.PlanePairMap;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestPlanePairMap {
+
+	@Test
+	public void testPairs() {
+		PlanePairMap map = new PlanePairMap(2);
+		assertTrue(map.add(3, 1, 7));
+		assertTrue(map.add(1, 3, 5)); // same pair
+		assertFalse(map.add(3, 1, 7));
+		assertTrue(map.add(2, 0, 9));
+		assertThat(map.size(), equalTo(2));
+		assertThat(map.count(1, 3), equalTo(2));
+		assertThat(map.count(0, 1), equalTo(0));
+		assertThat(map.first(0, 1), equalTo(-1));
+
+		// in the order they were added
+		int e = map.first(3, 1);
+		assertThat(map.value(e), equalTo(7));
+		e = map.next(e);
+		assertThat(map.value(e), equalTo(5));
+		assertThat(map.next(e), equalTo(-1));
+
+		long[] keys = map.sortedKeys();
+		assertThat(keys.length, equalTo(2));
+		assertThat(PlanePairMap.high(keys[0]), equalTo(2));
+		assertThat(PlanePairMap.low(keys[0]), equalTo(0));
+		assertThat(PlanePairMap.high(keys[1]), equalTo(3));
+		assertThat(PlanePairMap.low(keys[1]), equalTo(1));
+
+		map.clear();
+		assertThat(map.size(), equalTo(0));
+		assertThat(map.count(1, 3), equalTo(0));
+	}
+
+	/**
+	 * Plenty of pairs, so the table grows a few times; every list has to survive that.
+	 */
+	@Test
+	public void testGrow() {
+		Random random = new Random(5);
+		int n = 200;
+		int[][] counts = new int[n][n];
+		PlanePairMap map = new PlanePairMap();
+		for (int t = 0; t < 20000; ++t) {
+			int a = random.nextInt(n), b = random.nextInt(n);
+			if (a == b) continue;
+			int value = counts[Math.max(a, b)][Math.min(a, b)];
+			if (map.add(a, b, value)) counts[Math.max(a, b)][Math.min(a, b)]++;
+		}
+		int pairs = 0;
+		for (int a = 0; a < n; ++a) {
+			for (int b = 0; b < a; ++b) {
+				if (counts[a][b] > 0) pairs++;
+				assertThat(map.count(b, a), equalTo(counts[a][b]));
+				int expected = 0;
+				for (int e = map.first(a, b); e >= 0; e = map.next(e)) {
+					assertThat(map.value(e), equalTo(expected++));
+				}
+				assertThat(expected, equalTo(counts[a][b]));
+			}
+		}
+		assertThat(map.size(), equalTo(pairs));
+	}
+
+}
@@ -0,0 +1,81 @@
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.math.LocalMath;
+import com.sastraxi.chisel.math.Predicates;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestPredicates {
+
+	@Test
+	public void testOrient() {
+		double[] p = new double[3 * Predicates.DOUBLES_PER_PLANE];
+		Predicates.set(p, 0, 1.0, 0.0, 0.0, 0.0);
+		Predicates.set(p, 1, 0.0, 1.0, 0.0, 0.0);
+		Predicates.set(p, 2, 0.0, 0.0, 1.0, 0.0);
+		assertThat(Predicates.orient(p, 0, 1, 2), equalTo(1));
+		assertThat(Predicates.orient(p, 1, 0, 2), equalTo(-1));
+
+		// all three contain the z axis; no single point.
+		Predicates.set(p, 2, 0.1f, 0.7f, 0.0, 5.0);
+		assertThat(Predicates.orient(p, 0, 1, 2), equalTo(0));
+	}
+
+	/**
+	 * Four planes through one point, with awkward coefficients; then the fourth moved off
+	 * it by the smallest amount a float can move.
+	 */
+	@Test
+	public void testSideAtDegenerateVertex() {
+		Vector3 point = new Vector3(3001f, -1999f, 1234f);
+		Array<Plane> planes = new Array<Plane>();
+		planes.add(LocalMath.safePlane(new Vector3(37f, 11f, -5f), point));
+		planes.add(LocalMath.safePlane(new Vector3(-3f, 41f, 17f), point));
+		planes.add(LocalMath.safePlane(new Vector3(13f, -7f, 29f), point));
+		planes.add(LocalMath.safePlane(new Vector3(19f, 23f, 31f), point));
+		double[] p = Predicates.pack(planes);
+		assertThat(Predicates.side(p, 3, 0, 1, 2), equalTo(0));
+		assertThat(Predicates.side(p, 0, 1, 2, 3), equalTo(0));
+
+		Plane q = planes.get(3);
+		Predicates.set(p, 3, q.normal.x, q.normal.y, q.normal.z, Math.nextUp(q.d));
+		assertThat(Predicates.side(p, 3, 0, 1, 2), equalTo(1));
+		Predicates.set(p, 3, q.normal.x, q.normal.y, q.normal.z, Math.nextAfter(q.d, Double.NEGATIVE_INFINITY));
+		assertThat(Predicates.side(p, 3, 0, 1, 2), equalTo(-1));
+	}
+
+	/**
+	 * The filter and the exact answer must agree on ordinary input, as must intersect()'s
+	 * point (within the error it claims).
+	 */
+	@Test
+	public void testAgainstIntersect() {
+		Random random = new Random(7);
+		double[] p = new double[4 * Predicates.DOUBLES_PER_PLANE];
+		double[] x = new double[3];
+		for (int t = 0; t < 10000; ++t) {
+			for (int i = 0; i < 4; ++i) {
+				Vector3 normal = new Vector3((float) random.nextGaussian(), (float) random.nextGaussian(),
+						(float) random.nextGaussian()).nor();
+				Predicates.set(p, i, normal.x, normal.y, normal.z, (float) (random.nextDouble() * 8192.0 - 4096.0));
+			}
+			double radius = Predicates.intersect(p, 0, 1, 2, x, 0);
+			if (radius == Double.POSITIVE_INFINITY) continue;
+			for (int i = 0; i < 3; ++i) {
+				double dist = p[4*i] * x[0] + p[4*i+1] * x[1] + p[4*i+2] * x[2] + p[4*i+3];
+				assertTrue(Math.abs(dist) <= 3.0 * radius + 1e-9);
+			}
+			double dist = p[12] * x[0] + p[13] * x[1] + p[14] * x[2] + p[15];
+			if (Math.abs(dist) > 3.0 * radius + 1e-9) {
+				assertThat(Predicates.side(p, 3, 0, 1, 2), equalTo(dist > 0.0 ? 1 : -1));
+			}
+		}
+	}
+
+}
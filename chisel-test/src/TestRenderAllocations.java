@@ -0,0 +1,130 @@
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.badlogic.gdx.utils.Pool;
+import com.sastraxi.chisel.image.WorldBatch;
+import com.sastraxi.chisel.map.BrushContainer;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Once warmed up, drawing a frame shouldn't allocate anything.
+ * Without GL, meshes fall back to plain vertex arrays, which is enough for this.
+ * Needs a JVM that can count allocations per thread (i.e. HotSpot).
+ *
+ * The JIT can allocate a few bytes on our thread while it swaps in compiled code, so
+ * we look for a run of frames with nothing allocated rather than insisting on the first.
+ */
+public class TestRenderAllocations {
+
+	private static final int WARMUP = 50;
+	private static final int FRAMES = 100;
+	private static final int ATTEMPTS = 10;
+
+	private static com.sun.management.ThreadMXBean threads;
+
+	@BeforeClass
+	public static void setUp() {
+		GdxNativesLoader.load();
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			threads = (com.sun.management.ThreadMXBean) bean;
+			threads.setThreadAllocatedMemoryEnabled(true);
+		}
+	}
+
+	private static long allocated() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private final Array<Renderable> renderables = new Array<Renderable>();
+	private final Pool<Renderable> pool = new Pool<Renderable>() {
+		@Override
+		protected Renderable newObject() {
+			return new Renderable();
+		}
+	};
+
+	private BrushContainer world() {
+		BrushContainer world = new BrushContainer();
+		for (int i = 0; i < 500; ++i) {
+			world.add(Boxes.cube(10f * (i % 25) + 1f, 1f, -10f * (i / 25) - 5f, 2f));
+		}
+		return world;
+	}
+
+	private PerspectiveCamera camera() {
+		PerspectiveCamera camera = new PerspectiveCamera(60f, 800f, 600f);
+		camera.position.set(100f, 20f, 50f);
+		camera.lookAt(100f, 0f, -100f);
+		camera.far = 150f;
+		camera.update();
+		return camera;
+	}
+
+	private void frame(BrushContainer world) {
+		world.getRenderables(renderables, pool);
+		pool.freeAll(renderables);
+		renderables.clear();
+	}
+
+	private void frame(WorldBatch batch, PerspectiveCamera camera) {
+		batch.cull(camera);
+		batch.getRenderables(renderables, pool);
+		pool.freeAll(renderables);
+		renderables.clear();
+	}
+
+	@Test
+	public void testBrushPath() {
+		Assume.assumeTrue(threads != null);
+		BrushContainer world = world();
+
+		for (int i = 0; i < WARMUP; ++i) {
+			frame(world);
+		}
+
+		long least = Long.MAX_VALUE;
+		for (int attempt = 0; attempt < ATTEMPTS && least > 0; ++attempt) {
+			long before = allocated();
+			for (int i = 0; i < FRAMES; ++i) {
+				frame(world);
+			}
+			least = Math.min(least, allocated() - before);
+		}
+		assertThat(least, equalTo(0L));
+	}
+
+	@Test
+	public void testWorldBatchPath() {
+		Assume.assumeTrue(threads != null);
+		WorldBatch batch = new WorldBatch(40f);
+		batch.addAll(world().brushes);
+		PerspectiveCamera camera = camera();
+
+		for (int i = 0; i < WARMUP; ++i) {
+			frame(batch, camera);
+		}
+		assertTrue(batch.getNumCulled() > 0);
+		assertTrue(batch.getNumCulledBrushes() > batch.getNumCulled());
+
+		long least = Long.MAX_VALUE;
+		for (int attempt = 0; attempt < ATTEMPTS && least > 0; ++attempt) {
+			long before = allocated();
+			for (int i = 0; i < FRAMES; ++i) {
+				frame(batch, camera);
+			}
+			least = Math.min(least, allocated() - before);
+		}
+		assertThat(least, equalTo(0L));
+	}
+
+}
@@ -0,0 +1,139 @@
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.state.Selection;
+import com.sastraxi.chisel.state.WorldSelection;
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestSelection {
+
+	private static class Recorder implements Selection.Listener {
+		final IntArray calls = new IntArray();
+		final IntArray indices = new IntArray();
+
+		@Override
+		public void selectionChanged(Selection selection, int parts, int index) {
+			calls.add(parts);
+			indices.add(index);
+		}
+	}
+
+	@Test
+	public void testSingle() {
+		Selection s = new Selection();
+		Recorder r = new Recorder();
+		s.setListener(r);
+
+		s.selectFace(3);
+		s.selectFace(3);
+		s.selectVertex(200); // past the small-integer cache, which Array<Integer> tripped on
+		s.selectVertex(200);
+		s.clearFace(4);
+		assertTrue(s.isFaceSelected(3));
+		assertFalse(s.isFaceSelected(4));
+		assertTrue(s.isVertexSelected(200));
+		assertThat(s.getNumSelectedVertices(), equalTo(1));
+
+		s.clearVertex(200);
+		assertThat(r.calls.toArray(), equalTo(new int[] { Selection.FACES, Selection.VERTICES, Selection.VERTICES }));
+		assertThat(r.indices.toArray(), equalTo(new int[] { 3, 200, 200 }));
+
+		s.reset();
+		assertTrue(s.isEmpty());
+		assertNull(s.getListener());
+	}
+
+	@Test
+	public void testBulk() {
+		Selection s = new Selection();
+		Recorder r = new Recorder();
+		s.setListener(r);
+
+		BitSet box = new BitSet();
+		for (int i = 0; i < 5000; i += 2) box.set(i);
+		s.selectVertices(box);
+		assertThat(s.getNumSelectedVertices(), equalTo(2500));
+
+		BitSet low = new BitSet();
+		low.set(0, 1000);
+		s.intersectVertices(low);
+		assertThat(s.getNumSelectedVertices(), equalTo(500));
+
+		s.invertVertices(100);
+		assertThat(s.getNumSelectedVertices(), equalTo(50));
+		assertTrue(s.isVertexSelected(1));
+		assertFalse(s.isVertexSelected(2));
+		assertFalse(s.isVertexSelected(998)); // past the end of the inversion
+
+		s.invertFaces(6);
+		assertThat(s.getNumSelectedFaces(), equalTo(6));
+		assertThat(r.calls.toArray(), equalTo(new int[] {
+				Selection.VERTICES, Selection.VERTICES, Selection.VERTICES, Selection.FACES }));
+
+		r.calls.clear();
+		s.clear();
+		s.clear();
+		assertThat(r.calls.toArray(), equalTo(new int[] { Selection.FACES | Selection.VERTICES }));
+		assertThat(r.indices.get(0), equalTo(Selection.MANY));
+	}
+
+	@Test
+	public void testWorld() {
+		// all the same shape
+		Brush a = Boxes.cube(0f, 0f, 0f, 8f), b = Boxes.cube(0f, 0f, 0f, 8f), c = Boxes.cube(0f, 0f, 0f, 8f);
+		WorldSelection world = new WorldSelection();
+		final int[] changes = { 0 };
+		world.setListener(new WorldSelection.Listener() {
+			@Override
+			public void selectionChanged(WorldSelection selection) {
+				changes[0]++;
+			}
+		});
+
+		Selection sa = world.select(a);
+		assertSame(sa, a.getSelection());
+		assertSame(sa, world.select(a));
+		assertTrue(world.isSelected(a));
+		assertFalse(world.isSelected(b));
+
+		world.selectAll(brushes(b, c));
+		assertThat(world.size(), equalTo(3));
+		assertThat(changes[0], equalTo(2));
+
+		world.intersect(brushes(c, a));
+		assertOrder(world, a, c);
+		assertFalse(b.hasSelection());
+
+		world.invert(brushes(a, b));
+		assertOrder(world, c, b);
+		assertFalse(a.hasSelection());
+		assertTrue(b.hasSelection());
+
+		world.deselect(c);
+		world.clear();
+		assertTrue(world.isEmpty());
+		assertFalse(b.hasSelection());
+		assertThat(changes[0], equalTo(6));
+	}
+
+	private static void assertOrder(WorldSelection world, Brush... expected) {
+		assertThat(world.size(), equalTo(expected.length));
+		for (int i = 0; i < expected.length; ++i) {
+			assertSame(expected[i], world.getBrushes().get(i));
+		}
+	}
+
+	private static Array<Brush> brushes(Brush... brushes) {
+		return new Array<Brush>(brushes);
+	}
+
+}
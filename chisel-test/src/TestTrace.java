@@ -0,0 +1,40 @@
+import com.sastraxi.chisel.math.HalfspacePolygon;
+import com.sastraxi.chisel.trace.RingBufferSink;
+import com.sastraxi.chisel.trace.Trace;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestTrace {
+
+	@After
+	public void tearDown() {
+		Trace.setSink(null);
+	}
+
+	@Test
+	public void testRingBuffer() {
+		RingBufferSink sink = new RingBufferSink(16);
+		Trace.setSink(sink);
+		HalfspacePolygon.enumerateConvex(Boxes.planes(-1f, -1f, -1f, 1f, 1f, 1f));
+
+		assertTrue(sink.getTotal() > 16);
+		assertThat(sink.size(), equalTo(16));
+		assertThat(sink.getMessages().size, equalTo(16));
+		assertTrue(sink.getMessages().peek().startsWith(Trace.CONVEX));
+	}
+
+	@Test
+	public void testDisabled() {
+		RingBufferSink sink = new RingBufferSink(16);
+		Trace.setSink(sink);
+		Trace.setSink(null);
+		HalfspacePolygon.enumerateConvex(Boxes.planes(-1f, -1f, -1f, 1f, 1f, 1f));
+
+		assertThat(sink.getTotal(), equalTo(0L));
+	}
+
+}
@@ -0,0 +1,100 @@
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.math.VertexWelder;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestVertexWelder {
+
+	@Test
+	public void testWeld() {
+		VertexWelder welder = new VertexWelder(0.01f);
+		assertThat(welder.add(1f, 2f, 3f), equalTo(0));
+		assertThat(welder.add(1.005f, 2f, 3f), equalTo(0));
+		assertThat(welder.add(1.02f, 2f, 3f), equalTo(1));
+		assertThat(welder.find(1.015f, 2f, 3f), equalTo(1)); // 0 is just out of reach
+		assertThat(welder.find(5f, 5f, 5f), equalTo(-1));
+		assertThat(welder.size(), equalTo(2));
+
+		// either side of a cell boundary, and of zero.
+		assertThat(welder.add(-0.001f, 0f, 0f), equalTo(2));
+		assertThat(welder.add(0.001f, 0f, 0f), equalTo(2));
+		assertThat(welder.add(0.0199f, 0.0199f, 0.0199f), equalTo(3));
+		assertThat(welder.add(0.0201f, 0.0201f, 0.0201f), equalTo(3));
+
+		welder.clear();
+		assertThat(welder.size(), equalTo(0));
+		assertThat(welder.find(1f, 2f, 3f), equalTo(-1));
+	}
+
+	/**
+	 * Must give exactly what a linear scan for the first point in range gives.
+	 */
+	@Test
+	public void testMatchesLinearScan() {
+		Random random = new Random(3);
+		float tolerance = 0.5f;
+		VertexWelder welder = new VertexWelder(tolerance);
+		Array<Vector3> points = new Array<Vector3>();
+		for (int t = 0; t < 5000; ++t) {
+			// clustered, so there's plenty of merging (and some chains of near-misses)
+			Vector3 p = new Vector3(random.nextInt(40) + (float) random.nextGaussian() * 0.3f,
+					random.nextInt(40) - 20 + (float) random.nextGaussian() * 0.3f,
+					(random.nextInt(40) - 20) * 1000f + (float) random.nextGaussian() * 0.3f);
+			int expected = -1;
+			for (int i = 0; i < points.size; ++i) {
+				if (points.get(i).dst2(p) < tolerance * tolerance) {
+					expected = i;
+					break;
+				}
+			}
+			if (expected < 0) {
+				expected = points.size;
+				points.add(p);
+			}
+			assertThat(welder.add(p), equalTo(expected));
+		}
+		assertThat(welder.size(), equalTo(points.size));
+		Vector3 v = new Vector3();
+		for (int i = 0; i < points.size; ++i) {
+			assertThat(welder.get(i, v), equalTo(points.get(i)));
+		}
+	}
+
+	/**
+	 * Two boxes with a hairline crack between them; welding closes it.
+	 */
+	@Test
+	public void testWeldContainer() {
+		BrushContainer container = new BrushContainer();
+		Brush left = Boxes.box(0f, 0f, 0f, 64f, 64f, 64f);
+		Brush right = Boxes.box(64.001f, 0f, 0f, 128f, 64f, 64f);
+		container.add(left);
+		container.add(right);
+		int revision = right.getRevision();
+
+		assertThat(container.weld(0.01f), equalTo(4));
+		assertThat(right.getRevision(), equalTo(revision + 1));
+		for (Vector3 v: right.getVertices()) {
+			assertTrue(v.x == 64f || v.x == 128f);
+		}
+		assertThat(right.getBounds().min.x, equalTo(64f));
+
+		// nothing more to do.
+		assertThat(container.weld(0.01f), equalTo(0));
+
+		// a brush's own vertices never merge.
+		BrushContainer tiny = new BrushContainer();
+		tiny.add(Boxes.box(0f, 0f, 0f, 0.5f, 0.5f, 0.5f));
+		assertThat(tiny.weld(1f), equalTo(0));
+		assertThat(tiny.brushes.get(0).getBounds().max.x, equalTo(0.5f));
+	}
+
+}
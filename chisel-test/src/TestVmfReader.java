@@ -0,0 +1,154 @@
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.Vector3;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.Root;
+import com.sastraxi.chisel.map.entities.BrushEntity;
+import com.sastraxi.chisel.map.entities.PointEntity;
+import com.sastraxi.chisel.map.vmf.VmfException;
+import com.sastraxi.chisel.map.vmf.VmfReader;
+import com.sastraxi.chisel.math.LocalMath;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestVmfReader {
+
+	private static String f(float x) {
+		return x == (int) x ? Integer.toString((int) x) : Float.toString(x);
+	}
+
+	private static String point(float x, float y, float z) {
+		return "(" + f(x) + " " + f(y) + " " + f(z) + ")";
+	}
+
+	private static void side(StringBuilder b, int id, String plane) {
+		b.append("\t\tside\n\t\t{\n");
+		b.append("\t\t\t\"id\" \"").append(id).append("\"\n");
+		b.append("\t\t\t\"plane\" \"").append(plane).append("\"\n");
+		b.append("\t\t\t\"material\" \"TOOLS/TOOLSNODRAW\"\n");
+		b.append("\t\t\t\"uaxis\" \"[1 0 0 0] 0.25\"\n");
+		b.append("\t\t}\n");
+	}
+
+	/**
+	 * An axis-aligned box, written the way Hammer writes them (in Hammer's z-up space).
+	 */
+	static void solid(StringBuilder b, int id, float x0, float y0, float z0, float x1, float y1, float z1) {
+		b.append("\tsolid\n\t{\n");
+		b.append("\t\t\"id\" \"").append(id).append("\"\n");
+		side(b, 1, point(x0, y1, z1) + " " + point(x1, y1, z1) + " " + point(x1, y0, z1));
+		side(b, 2, point(x0, y0, z0) + " " + point(x1, y0, z0) + " " + point(x1, y1, z0));
+		side(b, 3, point(x0, y1, z1) + " " + point(x0, y0, z1) + " " + point(x0, y0, z0));
+		side(b, 4, point(x1, y1, z0) + " " + point(x1, y0, z0) + " " + point(x1, y0, z1));
+		side(b, 5, point(x1, y1, z1) + " " + point(x0, y1, z1) + " " + point(x0, y1, z0));
+		side(b, 6, point(x1, y0, z0) + " " + point(x0, y0, z0) + " " + point(x0, y0, z1));
+		b.append("\t\teditor\n\t\t{\n\t\t\t\"color\" \"0 180 0\"\n\t\t}\n");
+		b.append("\t}\n");
+	}
+
+	private static final String HEADER =
+			"versioninfo\n{\n\t\"editorversion\" \"400\"\n\t\"mapversion\" \"1\"\n}\n" +
+			"visgroups\n{\n}\n" +
+			"// a comment\n";
+
+	@Test
+	public void testSmallMap() throws IOException {
+		StringBuilder b = new StringBuilder(HEADER);
+		b.append("world\n{\n\t\"id\" \"1\"\n\t\"classname\" \"worldspawn\"\n\t\"skyname\" \"sky_day01_01\"\n");
+		solid(b, 2, 8f, 16f, 32f, 72f, 80f, 96f);
+		b.append("\thidden\n\t{\n");
+		solid(b, 3, 108f, 16f, 32f, 172f, 80f, 96f);
+		b.append("\t}\n");
+		b.append("}\n");
+		b.append("entity\n{\n\t\"id\" \"10\"\n\t\"classname\" \"info_player_start\"\n\t\"origin\" \"1 2 3\"\n");
+		b.append("\teditor\n\t{\n\t\t\"visgroupshown\" \"1\"\n\t}\n}\n");
+		b.append("entity\n{\n\t\"id\" \"11\"\n\t\"classname\" \"func_detail\"\n");
+		solid(b, 12, 8f, 16f, 132f, 72f, 80f, 196f);
+		b.append("}\n");
+		b.append("cameras\n{\n\t\"activecamera\" \"-1\"\n}\n");
+
+		Root root = new VmfReader(new StringReader(b.toString())).read();
+		assertThat(root.getWorld().brushes.size, equalTo(2));
+		assertThat(root.getWorldProperties().get("skyname"), equalTo("sky_day01_01"));
+		assertThat(root.getWorldProperties().keys().toArray().get(1), equalTo("classname"));
+
+		// z-up to y-up: (x, y, z) -> (x, z, -y)
+		Brush first = root.getWorld().brushes.get(0);
+		assertThat(first.getId(), equalTo(2));
+		BoundingBox bounds = first.getBounds();
+		assertTrue(bounds.min.epsilonEquals(new Vector3(8f, 32f, -80f), LocalMath.EPSILON));
+		assertTrue(bounds.max.epsilonEquals(new Vector3(72f, 96f, -16f), LocalMath.EPSILON));
+		assertThat(first.getFaces().size, equalTo(6));
+		assertThat(root.getWorld().brushes.get(1).getId(), equalTo(3));
+
+		assertThat(root.getEntities().size, equalTo(2));
+		assertThat(root.getEntities().get(0), instanceOf(PointEntity.class));
+		assertThat(root.getEntities().get(0).getClassName(), equalTo("info_player_start"));
+		assertThat(root.getEntities().get(0).getId(), equalTo(10));
+		assertThat(root.getEntities().get(0).getProperties().get("origin"), equalTo("1 2 3"));
+		assertThat(root.getEntities().get(1), instanceOf(BrushEntity.class));
+		BrushEntity detail = (BrushEntity) root.getEntities().get(1);
+		assertThat(detail.getTiedBrushes().brushes.size, equalTo(1));
+		assertThat(detail.getTiedBrushes().brushes.get(0).getId(), equalTo(12));
+	}
+
+	/**
+	 * Bigger than the tokenizer's buffer, and enough solids to need several batches.
+	 */
+	@Test
+	public void testLargeMapInOrder() throws IOException {
+		int n = 1000;
+		StringBuilder b = new StringBuilder(HEADER);
+		b.append("world\n{\n\t\"id\" \"1\"\n\t\"classname\" \"worldspawn\"\n");
+		for (int i = 0; i < n; ++i) {
+			float x = 64f * (i % 40) + 1f, y = 64f * (i / 40) + 1f;
+			solid(b, 100 + i, x, y, 1f, x + 32f, y + 32f, 33.5f);
+		}
+		b.append("}\n");
+		assertTrue(b.length() > 1 << 16);
+
+		VmfReader reader = new VmfReader(new StringReader(b.toString()));
+		Root root = reader.read();
+		assertThat(reader.getNumSolids(), equalTo(n));
+		assertThat(reader.getNumFailed(), equalTo(0));
+		assertThat(root.getWorld().brushes.size, equalTo(n));
+		for (int i = 0; i < n; ++i) {
+			Brush brush = root.getWorld().brushes.get(i);
+			assertThat(brush.getId(), equalTo(100 + i));
+			assertThat(brush.getBounds().max.y, equalTo(33.5f));
+		}
+	}
+
+	@Test
+	public void testDegenerateSolidIsSkipped() throws IOException {
+		StringBuilder b = new StringBuilder();
+		b.append("world\n{\n");
+		solid(b, 2, 8f, 16f, 32f, 72f, 80f, 96f);
+		b.append("\tsolid\n\t{\n\t\t\"id\" \"3\"\n");
+		side(b, 1, "(0 0 0) (1 1 1) (2 2 2)");
+		b.append("\t}\n}\n");
+
+		VmfReader reader = new VmfReader(new StringReader(b.toString()));
+		Root root = reader.read();
+		assertThat(reader.getNumFailed(), equalTo(1));
+		assertThat(root.getWorld().brushes.size, equalTo(1));
+	}
+
+	@Test
+	public void testMalformed() throws IOException {
+		try {
+			new VmfReader(new StringReader("world\n{\n\t\"id\" \"1\"\n\tsolid\n\t{\n")).read();
+			fail();
+		} catch (VmfException e) {
+			assertThat(e.getLine(), equalTo(6));
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+import com.badlogic.gdx.math.Vector3;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.Root;
+import com.sastraxi.chisel.map.entities.BrushEntity;
+import com.sastraxi.chisel.map.vmf.VmfReader;
+import com.sastraxi.chisel.map.vmf.VmfSnapshot;
+import com.sastraxi.chisel.map.vmf.VmfWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestVmfSnapshot {
+
+	private File vmf;
+
+	@Before
+	public void setUp() throws IOException {
+		vmf = File.createTempFile("chisel", ".vmf");
+		StringBuilder b = new StringBuilder();
+		b.append("world\n{\n\t\"id\" \"1\"\n\t\"classname\" \"worldspawn\"\n\t\"skyname\" \"sky_day01_01\"\n");
+		for (int i = 0; i < 100; ++i) {
+			float x = 64f * (i % 10) + 1f, y = 64f * (i / 10) + 1f;
+			TestVmfReader.solid(b, 100 + i, x, y, 1f, x + 32f, y + 32f, 33.5f);
+		}
+		b.append("}\n");
+		b.append("entity\n{\n\t\"id\" \"10\"\n\t\"classname\" \"info_player_start\"\n\t\"origin\" \"1 2 3\"\n}\n");
+		b.append("entity\n{\n\t\"id\" \"11\"\n\t\"classname\" \"func_detail\"\n");
+		TestVmfReader.solid(b, 12, 8f, 16f, 132f, 72f, 80f, 196f);
+		b.append("}\n");
+		FileOutputStream out = new FileOutputStream(vmf);
+		out.write(b.toString().getBytes("ISO-8859-1"));
+		out.close();
+	}
+
+	@After
+	public void tearDown() {
+		VmfSnapshot.getFile(vmf).delete();
+		vmf.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		assertThat(VmfSnapshot.read(vmf), nullValue());
+		Root original = VmfSnapshot.open(vmf);
+		assertTrue(VmfSnapshot.getFile(vmf).isFile());
+
+		Root root = VmfSnapshot.read(vmf);
+		assertThat(root, notNullValue());
+		assertThat(root.getWorld().brushes.size, equalTo(100));
+		for (int i = 0; i < 100; ++i) {
+			Brush brush = root.getWorld().brushes.get(i);
+			Brush expected = original.getWorld().brushes.get(i);
+			assertThat(brush, equalTo(expected));
+			assertThat(brush.getId(), equalTo(expected.getId()));
+			for (int f = 0; f < brush.getFaces().size; ++f) {
+				assertThat(brush.getFaces().get(f).getPlane().normal, equalTo(expected.getFaces().get(f).getPlane().normal));
+				assertThat(brush.getFaces().get(f).getPlane().d, equalTo(expected.getFaces().get(f).getPlane().d));
+			}
+			assertThat(brush.getSurfaces().size, equalTo(6));
+			for (int f = 0; f < brush.getFaces().size; ++f) {
+				assertThat(brush.getSurface(f).getNormal(), equalTo(expected.getSurface(f).getNormal()));
+				assertThat(brush.getSurface(f).get("material"), equalTo("TOOLS/TOOLSNODRAW"));
+			}
+		}
+		assertThat(root.getWorldProperties().get("skyname"), equalTo("sky_day01_01"));
+		assertThat(root.getEntities().size, equalTo(2));
+		assertThat(root.getEntities().get(0).getProperties().get("origin"), equalTo("1 2 3"));
+		assertThat(root.getEntities().get(1), instanceOf(BrushEntity.class));
+		BrushEntity detail = (BrushEntity) root.getEntities().get(1);
+		assertThat(detail.getTiedBrushes().brushes.get(0).getId(), equalTo(12));
+	}
+
+	/**
+	 * The source comes back too, so saving is still incremental.
+	 */
+	@Test
+	public void testSaveAfterSnapshot() throws IOException {
+		VmfSnapshot.open(vmf);
+		Root root = VmfSnapshot.read(vmf);
+		Brush brush = root.getWorld().brushes.get(3);
+		for (Vector3 v: brush.getVertices()) {
+			v.add(0f, 64f, 0f);
+		}
+		root.getWorld().update(brush);
+		assertFalse(VmfSnapshot.write(root));
+
+		VmfWriter writer = new VmfWriter(root);
+		writer.write(vmf);
+		assertThat(writer.getNumSolids(), equalTo(1));
+
+		// the VMF changed under the snapshot.
+		assertThat(VmfSnapshot.read(vmf), nullValue());
+		assertTrue(VmfSnapshot.write(root));
+		String snapshot = VmfSnapshot.getFile(vmf).getPath();
+		assertFalse(new File(snapshot + ".bak").exists()); // the old one, moved aside while replacing it
+		assertFalse(new File(snapshot + ".tmp").exists());
+		Root again = VmfSnapshot.read(vmf);
+		assertThat(again.getWorld().brushes.get(3), equalTo(brush));
+	}
+
+	@Test
+	public void testStale() throws IOException {
+		VmfSnapshot.open(vmf);
+		assertThat(VmfSnapshot.read(vmf), notNullValue());
+		FileOutputStream out = new FileOutputStream(vmf, true);
+		out.write('\n');
+		out.close();
+		assertThat(VmfSnapshot.read(vmf), nullValue());
+
+		// reading it again brings the snapshot up to date.
+		assertThat(VmfSnapshot.open(vmf).getWorld().brushes.size, equalTo(100));
+		assertThat(VmfSnapshot.read(vmf), notNullValue());
+	}
+
+	@Test
+	public void testBadSnapshot() throws IOException {
+		VmfSnapshot.open(vmf);
+		RandomAccessFile file = new RandomAccessFile(VmfSnapshot.getFile(vmf), "rw");
+		file.setLength(file.length() / 2);
+		file.close();
+		assertThat(VmfSnapshot.read(vmf), nullValue());
+
+		file = new RandomAccessFile(VmfSnapshot.getFile(vmf), "rw");
+		file.seek(4);
+		file.write(99);
+		file.close();
+		assertThat(VmfSnapshot.read(vmf), nullValue());
+	}
+
+	@Test
+	public void testNotFromFile() throws IOException {
+		Root root = new VmfReader(new StringReader("world\n{\n}\n")).read();
+		assertFalse(VmfSnapshot.write(root));
+	}
+
+}
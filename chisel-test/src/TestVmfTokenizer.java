@@ -0,0 +1,149 @@
+import com.sastraxi.chisel.map.Root;
+import com.sastraxi.chisel.map.vmf.MappedVmfTokenizer;
+import com.sastraxi.chisel.map.vmf.StreamVmfTokenizer;
+import com.sastraxi.chisel.map.vmf.VmfException;
+import com.sastraxi.chisel.map.vmf.VmfReader;
+import com.sastraxi.chisel.map.vmf.VmfTokenizer;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestVmfTokenizer {
+
+	private static final String SAMPLE =
+			"// comment\nversioninfo\n{\n\t\"editorversion\" \"400\"\n}\n" +
+			"world\n{\n\t\"id\" \"-12\"\n\tsolid\n\t{\n\t\tside\n\t\t{\n" +
+			"\t\t\t\"plane\" \"(-64 64.5 1e2) (64 -0.25 64) (1.5e-005 -64 -7)\"\n" +
+			"\t\t\t\"uaxis\" \"[1 0 0 0] 0.25\"\n" +
+			"\t\t\t\"multi\" \"line\nstring\"\n" +
+			"\t\t}\n\t}\n}\n";
+
+	private static MappedVmfTokenizer mapped(String s) throws IOException {
+		return new MappedVmfTokenizer(ByteBuffer.wrap(s.getBytes("ISO-8859-1")));
+	}
+
+	@Test
+	public void testSameTokens() throws IOException {
+		VmfTokenizer stream = new StreamVmfTokenizer(new StringReader(SAMPLE));
+		VmfTokenizer mapped = mapped(SAMPLE);
+		float[] a = new float[12], b = new float[12];
+		int n = 0;
+		do {
+			assertThat(mapped.next(), equalTo(stream.next()));
+			assertThat(mapped.getTokenStart(), equalTo(stream.getTokenStart()));
+			assertThat(mapped.getTokenEnd(), equalTo(stream.getTokenEnd()));
+			assertThat(mapped.getLine(), equalTo(stream.getLine()));
+			if (stream.getType() == VmfTokenizer.STRING || stream.getType() == VmfTokenizer.NAME) {
+				assertThat(mapped.getText().toString(), equalTo(stream.getText().toString()));
+				assertTrue(mapped.is(stream.getText().toString()));
+				assertThat(mapped.getNumbers(a), equalTo(stream.getNumbers(b)));
+			}
+			n++;
+		} while (stream.getType() != VmfTokenizer.EOF);
+		assertThat(n, equalTo(23));
+	}
+
+	@Test
+	public void testNumbers() throws IOException {
+		VmfTokenizer tokens = mapped("\"(-64 64.5 1e2) (64 -0.25 64) (1.5e-005 -64 -7)\" \"[1 0 0 0] 0.25\" \"1 x 2\" \"-12\"");
+		float[] out = new float[9];
+		tokens.next();
+		assertThat(tokens.getNumbers(out), equalTo(9));
+		float[] expected = { -64f, 64.5f, 100f, 64f, -0.25f, 64f, 1.5e-5f, -64f, -7f };
+		for (int i = 0; i < 9; ++i) {
+			assertThat(out[i], equalTo(expected[i]));
+		}
+
+		tokens.next();
+		assertThat(tokens.getNumbers(out), equalTo(5));
+		assertThat(out[4], equalTo(0.25f));
+
+		tokens.next();
+		assertThat(tokens.getNumbers(out), equalTo(-1));
+
+		tokens.next();
+		assertThat(tokens.getInt(), equalTo(-12));
+	}
+
+	/**
+	 * Integers exactly as the JDK has them, decimals to within an ulp.
+	 */
+	@Test
+	public void testRandomNumbers() throws IOException {
+		Random random = new Random(7);
+		StringBuilder b = new StringBuilder("\"");
+		float[] expected = new float[2000];
+		for (int i = 0; i < expected.length; ++i) {
+			String s;
+			if (i % 2 == 0) {
+				s = Integer.toString(random.nextInt(1 << 20) - (1 << 19));
+			} else {
+				s = Float.toString((random.nextFloat() - 0.5f) * (float) Math.pow(10, random.nextInt(12) - 6));
+			}
+			expected[i] = Float.parseFloat(s);
+			b.append(s).append(' ');
+		}
+		b.append('"');
+
+		VmfTokenizer tokens = mapped(b.toString());
+		tokens.next();
+		float[] out = new float[expected.length];
+		assertThat(tokens.getNumbers(out), equalTo(expected.length));
+		for (int i = 0; i < expected.length; ++i) {
+			if (i % 2 == 0) {
+				assertThat(out[i], equalTo(expected[i]));
+			} else {
+				assertTrue(Math.abs(out[i] - expected[i]) <= Math.ulp(expected[i]));
+			}
+		}
+	}
+
+	@Test
+	public void testBadInt() throws IOException {
+		VmfTokenizer tokens = mapped("\"12a\"");
+		tokens.next();
+		try {
+			tokens.getInt();
+			fail();
+		} catch (VmfException e) {
+			assertThat(e.getLine(), equalTo(1));
+		}
+	}
+
+	@Test
+	public void testReadMappedFile() throws IOException {
+		StringBuilder b = new StringBuilder();
+		b.append("world\n{\n\t\"id\" \"1\"\n\t\"classname\" \"worldspawn\"\n");
+		for (int i = 0; i < 100; ++i) {
+			TestVmfReader.solid(b, 10 + i, 64f * i + 1f, 1f, 1f, 64f * i + 33f, 33f, 33f);
+		}
+		b.append("}\n");
+
+		File file = File.createTempFile("chisel", ".vmf");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(b.toString().getBytes("ISO-8859-1"));
+			out.close();
+
+			Root mapped = VmfReader.read(file);
+			Root streamed = new VmfReader(new StringReader(b.toString())).read();
+			assertThat(mapped.getWorld().brushes.size, equalTo(100));
+			for (int i = 0; i < 100; ++i) {
+				assertThat(mapped.getWorld().brushes.get(i), equalTo(streamed.getWorld().brushes.get(i)));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.IntMap;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.map.Root;
+import com.sastraxi.chisel.map.Surface;
+import com.sastraxi.chisel.map.entities.BrushEntity;
+import com.sastraxi.chisel.map.entities.Entity;
+import com.sastraxi.chisel.map.entities.PointEntity;
+import com.sastraxi.chisel.map.vmf.VmfReader;
+import com.sastraxi.chisel.map.vmf.VmfWriter;
+import com.sastraxi.chisel.math.LocalMath;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TestVmfWriter {
+
+	private static final int N = 200;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("chisel", ".vmf");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private static String map() {
+		StringBuilder b = new StringBuilder("versioninfo\n{\n\t\"editorversion\" \"400\"\n}\n");
+		b.append("world\n{\n\t\"id\" \"1\"\n\t\"classname\" \"worldspawn\"\n");
+		for (int i = 0; i < N; ++i) {
+			float x = 64f * (i % 20) + 1f, y = 64f * (i / 20) + 1f;
+			TestVmfReader.solid(b, 100 + i, x, y, 1f, x + 32f, y + 32f, 33f);
+		}
+		b.append("}\n");
+		b.append("entity\n{\n\t\"id\" \"10\"\n\t\"classname\" \"info_player_start\"\n\t\"origin\" \"1 2 3\"\n}\n");
+		b.append("entity\n{\n\t\"id\" \"11\"\n\t\"classname\" \"func_detail\"\n");
+		TestVmfReader.solid(b, 12, 8f, 16f, 132f, 72f, 80f, 196f);
+		b.append("}\n");
+		b.append("cameras\n{\n\t\"activecamera\" \"-1\"\n}\n");
+		return b.toString();
+	}
+
+	private static void write(File file, String s) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(s.getBytes("ISO-8859-1"));
+		out.close();
+	}
+
+	private static String read(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		int n = 0;
+		while (n < bytes.length) n += in.read(bytes, n, bytes.length - n);
+		in.close();
+		return new String(bytes, "ISO-8859-1");
+	}
+
+	private static void assertSameBounds(Brush a, Brush b) {
+		BoundingBox x = a.getBounds(), y = b.getBounds();
+		assertTrue(x.min.epsilonEquals(y.min, LocalMath.EPSILON));
+		assertTrue(x.max.epsilonEquals(y.max, LocalMath.EPSILON));
+		assertThat(a.getFaces().size, equalTo(b.getFaces().size));
+	}
+
+	@Test
+	public void testUnchangedIsCopied() throws IOException {
+		String text = map();
+		write(file, text);
+		Root root = VmfReader.read(file);
+
+		VmfWriter writer = new VmfWriter(root);
+		writer.write(file);
+		assertThat(writer.getNumSolids(), equalTo(0));
+		assertThat(writer.getNumCopied(), equalTo((long) text.length()));
+		assertThat(read(file), equalTo(text));
+	}
+
+	@Test
+	public void testOnlyChangesAreWritten() throws IOException {
+		String text = map();
+		write(file, text);
+		Root root = VmfReader.read(file);
+		BrushContainer world = root.getWorld();
+
+		Brush moved = world.brushes.get(5);
+		for (Vector3 v: moved.getVertices()) {
+			v.add(0f, 64f, 0f);
+		}
+		world.update(moved);
+		Brush removed = world.brushes.get(7);
+		world.remove(removed);
+		Brush added = Boxes.cube(5001f, 5001f, 5001f, 16f);
+		world.add(added);
+
+		root.getEntities().removeIndex(0); // info_player_start
+		PointEntity light = new PointEntity();
+		light.getProperties().put("classname", "light");
+		root.getEntities().add(light);
+
+		VmfWriter writer = new VmfWriter(root);
+		writer.write(file);
+		assertThat(writer.getNumSolids(), equalTo(2));
+		assertTrue(writer.getNumCopied() > text.length() * 9 / 10);
+		assertTrue(added.getId() > 211);
+
+		String saved = read(file);
+		assertFalse(saved.contains("info_player_start"));
+		assertFalse(saved.contains("\"id\" \"107\""));
+		assertTrue(saved.contains("cameras"));
+
+		Root again = VmfReader.read(file);
+		assertThat(again.getWorld().brushes.size, equalTo(N));
+		assertThat(again.getEntities().size, equalTo(2));
+		assertThat(again.getEntities().get(0).getClassName(), equalTo("func_detail"));
+		assertThat(again.getEntities().get(1).getClassName(), equalTo("light"));
+		// remove() moves the last brush into the gap, so the file's order is no longer ours.
+		IntMap<Brush> byId = new IntMap<Brush>();
+		for (Brush brush: again.getWorld().brushes) {
+			byId.put(brush.getId(), brush);
+		}
+		assertThat(byId.size, equalTo(N));
+		for (Brush brush: world.brushes) {
+			assertSameBounds(byId.get(brush.getId()), brush);
+		}
+
+		// and again, from what we just saved.
+		Brush second = world.brushes.get(100);
+		for (Vector3 v: second.getVertices()) {
+			v.add(0f, -64f, 0f);
+		}
+		world.update(second);
+		writer = new VmfWriter(root);
+		writer.write(file);
+		assertThat(writer.getNumSolids(), equalTo(1));
+		assertThat(VmfReader.read(file).getWorld().brushes.size, equalTo(N));
+	}
+
+	/**
+	 * An edited solid keeps each side's material and texture axes; only new faces get the default.
+	 */
+	@Test
+	public void testSidesKept() throws IOException {
+		write(file, map());
+		Root root = VmfReader.read(file);
+		BrushContainer world = root.getWorld();
+		Brush moved = world.brushes.get(5);
+		for (Vector3 v: moved.getVertices()) {
+			v.add(0f, 64f, 0f);
+		}
+		world.update(moved);
+		world.add(Boxes.cube(5001f, 5001f, 5001f, 16f));
+		new VmfWriter(root).write(file);
+
+		String saved = read(file);
+		// defaults only for the new cube's sides.
+		assertThat(saved.split(VmfWriter.DEFAULT_MATERIAL, -1).length - 1, equalTo(6));
+		assertThat(saved.split("lightmapscale", -1).length - 1, equalTo(6));
+
+		Brush again = null;
+		for (Brush brush: VmfReader.read(file).getWorld().brushes) {
+			if (brush.getId() == moved.getId()) again = brush;
+		}
+		assertThat(again.getSurfaces().size, equalTo(6));
+		for (int f = 0; f < again.getFaces().size; ++f) {
+			Surface surface = again.getSurface(f);
+			assertThat(surface.get("material"), equalTo("TOOLS/TOOLSNODRAW"));
+			assertThat(surface.get("uaxis"), equalTo("[1 0 0 0] 0.25"));
+			assertThat(surface.size(), equalTo(2));
+		}
+	}
+
+	/**
+	 * Every solid written out from scratch, which checks the planes face the right way.
+	 */
+	@Test
+	public void testFromScratch() throws IOException {
+		Root root = new VmfReader(new StringReader(map())).read();
+		assertThat(root.getSource(), equalTo(null));
+		VmfWriter writer = new VmfWriter(root);
+		writer.write(file);
+		assertThat(writer.getNumSolids(), equalTo(N + 1));
+		assertThat(writer.getNumCopied(), equalTo(0L));
+
+		Root again = VmfReader.read(file);
+		assertThat(again.getWorld().brushes.size, equalTo(N));
+		for (int i = 0; i < N; ++i) {
+			assertSameBounds(again.getWorld().brushes.get(i), root.getWorld().brushes.get(i));
+		}
+		assertThat(again.getWorldProperties().get("classname"), equalTo("worldspawn"));
+		Entity detail = again.getEntities().get(1);
+		assertThat(detail, instanceOf(BrushEntity.class));
+		assertSameBounds(((BrushEntity) detail).getTiedBrushes().brushes.get(0),
+				((BrushEntity) root.getEntities().get(1)).getTiedBrushes().brushes.get(0));
+	}
+
+	/**
+	 * The old file is moved aside while the new one goes in, then deleted; nothing's left over.
+	 */
+	@Test
+	public void testReplace() throws IOException {
+		String text = map();
+		write(file, text);
+		Root root = VmfReader.read(file);
+		File backup = new File(file.getPath() + ".bak"), temp = new File(file.getPath() + ".tmp");
+		write(backup, "left over"); // from a save that died
+
+		root.getWorld().add(Boxes.cube(5001f, 5001f, 5001f, 16f));
+		new VmfWriter(root).write(file);
+		assertFalse(backup.exists());
+		assertFalse(temp.exists());
+		assertThat(VmfReader.read(file).getWorld().brushes.size, equalTo(N + 1));
+	}
+
+	@Test
+	public void testChangedOnDisk() throws IOException {
+		write(file, map());
+		Root root = VmfReader.read(file);
+		write(file, map() + "\n");
+		assertFalse(root.getSource().isCurrent());
+
+		VmfWriter writer = new VmfWriter(root);
+		writer.write(file);
+		assertThat(writer.getNumCopied(), equalTo(0L));
+		assertThat(VmfReader.read(file).getWorld().brushes.size, equalTo(N));
+	}
+
+}
@@ -0,0 +1,213 @@
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.sastraxi.chisel.image.MeshCache;
+import com.sastraxi.chisel.image.WorldBatch;
+import com.sastraxi.chisel.image.WorldChunk;
+import com.sastraxi.chisel.map.Brush;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Nothing here touches GL. Culling wants the natives (for Matrix4, and for the meshes, which
+ * fall back to plain vertex arrays).
+ */
+public class TestWorldBatch {
+
+	private static final float CELL = 100f;
+
+	@BeforeClass
+	public static void loadNatives() {
+		GdxNativesLoader.load();
+	}
+
+	private PerspectiveCamera camera() {
+		// at the origin, looking down -z
+		PerspectiveCamera camera = new PerspectiveCamera(60f, 800f, 600f);
+		camera.position.set(0f, 0f, 0f);
+		camera.lookAt(0f, 0f, -1f);
+		camera.near = 0.1f;
+		camera.far = 100f;
+		camera.update();
+		return camera;
+	}
+
+	@Test
+	public void testPacking() {
+		Brush a = Boxes.cube(10f, 10f, 10f, 2f);
+		Brush b = Boxes.cube(20f, 10f, 10f, 2f);
+		WorldChunk chunk = new WorldChunk();
+		chunk.add(a);
+		chunk.add(b);
+		chunk.build();
+
+		// 6 quads a cube; 4 vertices and 2 triangles each
+		assertThat(chunk.getNumVertices(), equalTo(48));
+		assertThat(chunk.getNumIndices(), equalTo(72));
+		assertThat(chunk.getVertexStart(1), equalTo(24));
+		assertThat(chunk.getIndexStart(1), equalTo(36));
+
+		// every index stays within its own brush's vertices
+		for (int i = chunk.getIndexStart(1); i < chunk.getIndexStart(2); ++i) {
+			short index = chunk.getIndices()[i];
+			assertTrue(index >= 24 && index < 48);
+		}
+
+		// the second brush's vertices really are the second brush's
+		float[] verts = chunk.getVertices();
+		for (int v = chunk.getVertexStart(1); v < chunk.getVertexStart(2); ++v) {
+			float x = verts[v * WorldChunk.FLOATS_PER_VERTEX];
+			assertTrue(x == 18f || x == 22f);
+			assertThat(verts[v * WorldChunk.FLOATS_PER_VERTEX + 6], equalTo(b.getColour().toFloatBits()));
+		}
+	}
+
+	@Test
+	public void testGroupsByCell() {
+		WorldBatch batch = new WorldBatch(CELL);
+		Brush a = Boxes.cube(10f, 10f, 10f, 2f);
+		Brush b = Boxes.cube(30f, 10f, 10f, 2f);
+		Brush c = Boxes.cube(310f, 10f, 10f, 2f);
+		batch.add(a);
+		batch.add(b);
+		batch.add(c);
+
+		assertThat(batch.getChunks().size, equalTo(2));
+		assertThat(batch.getChunk(a), equalTo(batch.getChunk(b)));
+		assertThat(batch.getChunk(a), not(equalTo(batch.getChunk(c))));
+		assertThat(batch.build(), equalTo(2));
+		assertThat(batch.build(), equalTo(0));
+	}
+
+	@Test
+	public void testEditRebuildsOneChunk() {
+		WorldBatch batch = new WorldBatch(CELL);
+		Brush a = Boxes.cube(10f, 10f, 10f, 2f);
+		Brush b = Boxes.cube(310f, 10f, 10f, 2f);
+		batch.add(a);
+		batch.add(b);
+		batch.build();
+
+		// nudge a within its cell
+		for (Vector3 v: a.getVertices()) v.add(1f, 0f, 0f);
+		a.updateBounds();
+		batch.update(a);
+		assertTrue(batch.getChunk(a).isDirty());
+		assertFalse(batch.getChunk(b).isDirty());
+		assertThat(batch.build(), equalTo(1));
+		assertThat(batch.getChunk(a).getVertices()[0], not(equalTo(10f)));
+
+		// move a into b's cell
+		WorldChunk old = batch.getChunk(a);
+		for (Vector3 v: a.getVertices()) v.add(300f, 0f, 0f);
+		a.updateBounds();
+		batch.update(a);
+		assertThat(batch.getChunk(a), equalTo(batch.getChunk(b)));
+		assertTrue(old.isEmpty());
+		assertThat(batch.build(), equalTo(2));
+		assertThat(batch.getChunk(b).getNumVertices(), equalTo(48));
+	}
+
+	/**
+	 * With a MeshCache, changes just queue up their chunk; nothing is built on this thread.
+	 */
+	@Test
+	public void testEditQueuesChunk() {
+		final Array<Runnable> jobs = new Array<Runnable>();
+		MeshCache cache = new MeshCache(new Executor() {
+			@Override
+			public void execute(Runnable job) {
+				jobs.add(job);
+			}
+		}, 1);
+		WorldBatch batch = new WorldBatch(CELL, cache);
+		Brush a = Boxes.cube(10f, 10f, 10f, 2f);
+		Brush b = Boxes.cube(310f, 10f, 10f, 2f);
+		batch.add(a);
+		batch.add(b);
+		assertThat(jobs.size, equalTo(2));
+		assertTrue(cache.isPending(batch.getChunk(a)));
+
+		// edited again before its first build is done; queued once more when it finishes.
+		batch.update(a);
+		assertThat(jobs.size, equalTo(2));
+		assertThat(batch.getChunk(a).getNumVertices(), equalTo(0));
+		jobs.get(0).run();
+		assertThat(batch.getChunk(a).getNumVertices(), equalTo(24));
+	}
+
+	@Test
+	public void testSplitsLargeCells() {
+		WorldBatch batch = new WorldBatch(CELL);
+		int n = WorldChunk.MAX_VERTICES / 24 + 1;
+		for (int i = 0; i < n; ++i) {
+			batch.add(Boxes.cube(50f, 50f, 50f, 1f + i * 0.001f));
+		}
+		batch.build();
+		assertThat(batch.getChunks().size, equalTo(2));
+		int total = 0;
+		for (WorldChunk chunk: batch.getChunks()) {
+			assertTrue(chunk.getNumVertices() <= WorldChunk.MAX_VERTICES);
+			total += chunk.getNumVertices();
+		}
+		assertThat(total, equalTo(n * 24));
+	}
+
+	@Test
+	public void testCullsOutsideFrustum() {
+		WorldBatch batch = new WorldBatch(8f);
+		Brush ahead = Boxes.cube(1f, 1f, -20f, 2f);
+		Brush straddling = Boxes.cube(1f, 1f, 1f, 3f);
+		batch.add(ahead);
+		batch.add(straddling);
+		batch.add(Boxes.cube(1f, 1f, 20f, 2f));    // behind
+		batch.add(Boxes.cube(3f, 1f, 22f, 2f));    // behind, in the same chunk
+		batch.add(Boxes.cube(90f, 1f, -20f, 2f));  // off to the side
+		batch.add(Boxes.cube(1f, 1f, -150f, 2f));  // past the far plane
+
+		batch.cull(camera());
+		assertThat(batch.getNumCulled(), equalTo(3));
+		assertThat(batch.getNumCulledBrushes(), equalTo(4));
+	}
+
+	/**
+	 * Inside the frustum (the far plane is flat), but further than camera.far away.
+	 */
+	@Test
+	public void testCullsPastFarDistance() {
+		WorldBatch batch = new WorldBatch(8f);
+		batch.add(Boxes.cube(50f, 1f, -95f, 2f));
+
+		batch.cull(camera());
+		assertThat(batch.getNumCulled(), equalTo(1));
+		assertThat(batch.getNumCulledBrushes(), equalTo(1));
+	}
+
+	@Test
+	public void testCullFollowsEdits() {
+		WorldBatch batch = new WorldBatch(8f);
+		Brush brush = Boxes.cube(1f, 1f, 20f, 2f);
+		batch.add(brush);
+
+		PerspectiveCamera camera = camera();
+		batch.cull(camera);
+		assertThat(batch.getNumCulledBrushes(), equalTo(1));
+
+		for (Vector3 v: brush.getVertices()) v.add(0f, 0f, -40f);
+		brush.updateBounds();
+		batch.update(brush);
+		batch.cull(camera);
+		assertThat(batch.getNumCulled(), equalTo(0));
+		assertThat(batch.getNumCulledBrushes(), equalTo(0));
+	}
+
+}
@@ -2,6 +2,8 @@ package com.sastraxi.chisel;
 
 import com.badlogic.gdx.ApplicationListener;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
+import com.badlogic.gdx.InputAdapter;
 import com.badlogic.gdx.InputMultiplexer;
 import com.badlogic.gdx.graphics.*;
 import com.badlogic.gdx.graphics.g3d.*;
@@ -12,24 +14,37 @@ import com.badlogic.gdx.graphics.g3d.utils.DefaultShaderProvider;
 import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
 import com.badlogic.gdx.math.Plane;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.ui.Table;
 import com.badlogic.gdx.utils.Array;
 import com.sastraxi.chisel.image.GridPlane;
+import com.sastraxi.chisel.image.MeshCache;
+import com.sastraxi.chisel.image.WorldBatch;
 import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.math.Face;
 import com.sastraxi.chisel.math.HalfspacePolygon;
 import com.sastraxi.chisel.math.LocalMath;
+import com.sastraxi.chisel.shaders.BrushShader;
+import com.sastraxi.chisel.state.Selection;
+import com.sastraxi.chisel.state.WorldSelection;
 
 public class ChiselApp implements ApplicationListener {
 
 	public static float FIELD_OF_VIEW = 60.0f;
+	public static int CLICK_SLOP = 4; // pixels the mouse can move and still be clicking
 
 	private CameraInputController camController;
 	private PerspectiveCamera camera;
 	private Environment environment;
 
-	private Brush brush;
+	private BrushContainer world;
+	private MeshCache meshCache;
+	private WorldBatch worldBatch;
 	private GridPlane grid;
+	private WorldSelection selection;
+	private BrushShader brushShader;
 
 	private ModelBatch batch;
 	private DefaultShaderProvider shaderProvider;
@@ -69,7 +84,11 @@ public class ChiselApp implements ApplicationListener {
 		planes.add(new Plane(new Vector3(0f, 0f,  1f), new Vector3(0f, 0f,  1f)));
 		planes.add(new Plane(new Vector3(0f, 0f, -1f), new Vector3(0f, 0f, -1f)));
 		planes.add(LocalMath.safePlane(new Vector3(-1f, 1f, -1f), new Vector3(0.0f, 1.0f, -1.0f))); // left-top-front cut
-		brush = HalfspacePolygon.toConvex(planes);
+		meshCache = new MeshCache();
+		Brush.setMeshCache(meshCache);
+		world = new BrushContainer();
+		world.add(HalfspacePolygon.toConvex(planes));
+		worldBatch = new WorldBatch(world, meshCache);
 
 		// an x-z grid
 		grid = new GridPlane();
@@ -79,12 +98,18 @@ public class ChiselApp implements ApplicationListener {
 		// q.setEulerAngles(45f, 45f, 0f);
 		// System.out.println(q.transform(new Vector3(1f, 0f, 0f)));
 
+		// selected brushes are drawn again over the world, showing which faces are picked
+		selection = new WorldSelection();
+		brushShader = new BrushShader();
+		brushShader.init();
+
 		shaderProvider = new DefaultShaderProvider();
 		batch = new ModelBatch(shaderProvider);
 
 		stage = new Stage();
 
 		InputMultiplexer multiplexer = new InputMultiplexer();
+		multiplexer.addProcessor(picker);
 		multiplexer.addProcessor(camController);
 		multiplexer.addProcessor(stage);
 		Gdx.input.setInputProcessor(multiplexer);
@@ -97,9 +122,74 @@ public class ChiselApp implements ApplicationListener {
 
 	}
 
+	/**
+	 * Clicking (without dragging the camera) on a brush selects it and the face under the
+	 * mouse, or adds/removes that face with shift held; clicking on nothing clears the
+	 * selection. Everything is passed on to the camera as well.
+	 */
+	private final InputAdapter picker = new InputAdapter() {
+		private final float[] hit = new float[1];
+		private int downX, downY;
+
+		@Override
+		public boolean touchDown(int screenX, int screenY, int pointer, int button) {
+			downX = screenX;
+			downY = screenY;
+			return false;
+		}
+
+		@Override
+		public boolean touchUp(int screenX, int screenY, int pointer, int button) {
+			if (button != Input.Buttons.LEFT) return false;
+			if (Math.abs(screenX - downX) > CLICK_SLOP || Math.abs(screenY - downY) > CLICK_SLOP) return false;
+
+			boolean add = Gdx.input.isKeyPressed(Input.Keys.SHIFT_LEFT) || Gdx.input.isKeyPressed(Input.Keys.SHIFT_RIGHT);
+			Ray ray = camera.getPickRay(screenX, screenY);
+			Brush brush = world.pick(ray, hit);
+			if (brush == null) {
+				if (!add) selection.clear();
+				return false;
+			}
+
+			int face = faceAt(brush, ray.getEndPoint(new Vector3(), hit[0]));
+			if (!add) {
+				selection.clear();
+				selection.select(brush).selectFace(face);
+			} else {
+				Selection s = selection.select(brush);
+				if (s.isFaceSelected(face)) {
+					s.clearFace(face);
+					if (s.isEmpty()) selection.deselect(brush);
+				} else {
+					s.selectFace(face);
+				}
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * @return the face of brush whose plane passes closest to point (a point on its surface).
+	 */
+	private static int faceAt(Brush brush, Vector3 point) {
+		Array<Face> faces = brush.getFaces();
+		int best = 0;
+		float bestDist = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < faces.size; ++i) {
+			float dist = Math.abs(faces.get(i).getPlane().distance(point));
+			if (dist < bestDist) {
+				bestDist = dist;
+				best = i;
+			}
+		}
+		return best;
+	}
+
 	@Override
 	public void dispose() {
 		batch.dispose();
+		brushShader.dispose();
+		worldBatch.dispose();
 		stage.dispose();
 	}
 
@@ -114,7 +204,12 @@ public class ChiselApp implements ApplicationListener {
 
         batch.render(grid, environment, grid.getShader());
 
-		batch.render(brush, environment);
+		meshCache.update();
+		worldBatch.cull(camera);
+		batch.render(worldBatch, environment);
+		if (!selection.isEmpty()) {
+			batch.render(selection.getBrushes(), environment, brushShader);
+		}
 		batch.end();
 
 		stage.act(Gdx.graphics.getDeltaTime());
@@ -2,6 +2,15 @@ package com.sastraxi.chisel.image;
 
 import com.badlogic.gdx.graphics.Color;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out brush colours. Brushes with an id (i.e. from a map file) always get the same
+ * colour for it, session after session; anything else just takes the next in turn.
+ *
+ * Lock-free, so brushes can be made on any number of threads at once. The colours are
+ * shared; don't modify them.
+ */
 public class ColourManager {
 
 	private static final Color[] CYCLE_COLOURS = new Color[] {
@@ -9,12 +18,23 @@ public class ColourManager {
 		new Color(0.9f, 0.7f, 1.0f, 1.0f),
 		new Color(0.7f, 1.0f, 0.6f, 1.0f),
 	};
-	private static Integer i = 0;
+	private static final AtomicInteger counter = new AtomicInteger(0);
 
+	/**
+	 * @return the next colour in turn.
+	 */
 	public static Color next() {
-		synchronized(i) {
-			i = (i + 1) % CYCLE_COLOURS.length;
-		}
-		return CYCLE_COLOURS[i];
+		int i = counter.incrementAndGet() & Integer.MAX_VALUE;
+		return CYCLE_COLOURS[i % CYCLE_COLOURS.length];
+	}
+
+	/**
+	 * @return the same colour for the same id, every time. Neighbouring ids (as a map editor
+	 *         hands them out) are scattered, so they don't fall into a visible pattern.
+	 */
+	public static Color forId(int id) {
+		int h = id * 0x9E3779B9;
+		h ^= h >>> 16;
+		return CYCLE_COLOURS[(h & Integer.MAX_VALUE) % CYCLE_COLOURS.length];
 	}
 }
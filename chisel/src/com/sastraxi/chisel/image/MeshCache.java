@@ -0,0 +1,194 @@
+package com.sastraxi.chisel.image;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.sastraxi.chisel.tasks.Tasks;
+import com.sastraxi.chisel.trace.Trace;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Rebuilds meshes without holding up the render thread. Vertex and index data is generated
+ * on worker threads; the render thread only uploads finished data, and no more than a few
+ * meshes each frame. Until then, whatever was uploaded last keeps being drawn.
+ *
+ * Everything except the entries' generate() happens on the render thread; that includes
+ * every method here.
+ */
+public class MeshCache {
+
+	/**
+	 * Something that owns a mesh, split into the parts that can and can't leave the render thread.
+	 */
+	public interface Entry {
+
+		/**
+		 * Render thread, just before generate() is queued: take a copy of anything that
+		 * generate() needs and that could change in the meantime.
+		 */
+		void prepare();
+
+		/**
+		 * Worker thread: work out vertex and index data, without touching GL or the mesh
+		 * that's currently being drawn.
+		 */
+		void generate();
+
+		/**
+		 * Render thread: hand the data from the last generate() to the GPU.
+		 */
+		void upload();
+
+		/**
+		 * Render thread: the last generate() threw, so there's nothing to upload and the
+		 * entry is no longer tracked. It's up to the entry to be invalidated again.
+		 */
+		void failed(Throwable error);
+	}
+
+	public static final int DEFAULT_UPLOADS_PER_FRAME = 8;
+
+	private static class State {
+		Job building = null;
+		boolean again = false;
+		boolean ready = false;
+	}
+
+	private static class Job {
+		final Entry entry;
+		Throwable error = null;
+
+		Job(Entry entry) {
+			this.entry = entry;
+		}
+	}
+
+	private final Executor executor;
+	private final int uploadsPerFrame;
+
+	private final IdentityMap<Entry, State> states = new IdentityMap<Entry, State>();
+	private final ConcurrentLinkedQueue<Job> finished = new ConcurrentLinkedQueue<Job>();
+	private final Array<Entry> ready = new Array<Entry>();
+	private int numBuilding = 0;
+
+	public MeshCache() {
+		this(Tasks.pool(), DEFAULT_UPLOADS_PER_FRAME);
+	}
+
+	public MeshCache(Executor executor, int uploadsPerFrame) {
+		assert uploadsPerFrame > 0;
+		this.executor = executor;
+		this.uploadsPerFrame = uploadsPerFrame;
+	}
+
+	/**
+	 * The entry's mesh is out of date; rebuild it. If it's already being rebuilt, it'll be
+	 * rebuilt once more when that finishes (and the in-between result thrown away).
+	 */
+	public void invalidate(Entry entry) {
+		State state = states.get(entry);
+		if (state == null) {
+			state = new State();
+			states.put(entry, state);
+		}
+
+		if (state.building != null) {
+			state.again = true;
+			return;
+		}
+		if (state.ready) {
+			state.ready = false;
+			ready.removeValue(entry, true);
+		}
+		submit(entry, state);
+	}
+
+	/**
+	 * Stop tracking an entry (e.g. because it's being disposed). Anything in flight is dropped.
+	 */
+	public void forget(Entry entry) {
+		State state = states.remove(entry);
+		if (state != null) {
+			if (state.building != null) numBuilding--;
+			if (state.ready) ready.removeValue(entry, true);
+		}
+	}
+
+	private void submit(Entry entry, State state) {
+		final Job job = new Job(entry);
+		state.building = job;
+		numBuilding++;
+		entry.prepare();
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					job.entry.generate();
+				} catch (Throwable e) {
+					job.error = e;
+				}
+				finished.add(job);
+			}
+		});
+	}
+
+	/**
+	 * Call once a frame, from the render thread: collects finished builds and uploads
+	 * up to the per-frame limit of them, oldest first.
+	 *
+	 * @return the number of meshes uploaded.
+	 */
+	public int update() {
+		Job job;
+		while ((job = finished.poll()) != null) {
+			State state = states.get(job.entry);
+			if (state == null || state.building != job) continue; // forgotten
+			state.building = null;
+			numBuilding--;
+
+			if (state.again) {
+				// changed while we were building it; what we have is already stale.
+				state.again = false;
+				submit(job.entry, state);
+			} else if (job.error != null) {
+				states.remove(job.entry);
+				if (Trace.enabled()) {
+					Trace.record(Trace.MESH, "mesh generation failed: " + job.error);
+				}
+				job.entry.failed(job.error);
+			} else {
+				state.ready = true;
+				ready.add(job.entry);
+			}
+		}
+
+		int n = Math.min(uploadsPerFrame, ready.size);
+		for (int i = 0; i < n; ++i) {
+			Entry entry = ready.removeIndex(0);
+			states.remove(entry);
+			entry.upload();
+		}
+
+		if (n > 0 && Trace.enabled()) {
+			Trace.record(Trace.MESH, "uploaded " + n + " meshes, " + getNumPending() + " pending");
+		}
+		return n;
+	}
+
+	/**
+	 * @return true if the entry has a rebuild in flight or waiting to be uploaded.
+	 */
+	public boolean isPending(Entry entry) {
+		return states.containsKey(entry);
+	}
+
+	/**
+	 * @return the number of entries being built or waiting to be uploaded.
+	 */
+	public int getNumPending() {
+		return numBuilding + ready.size;
+	}
+
+}
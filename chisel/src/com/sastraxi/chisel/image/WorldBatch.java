@@ -0,0 +1,279 @@
+package com.sastraxi.chisel.image;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.RenderableProvider;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pool;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.math.LocalMath;
+import com.sastraxi.chisel.trace.Trace;
+
+/**
+ * Draws the solid geometry of many brushes with a handful of meshes, rather than one
+ * mesh (and one draw call) per brush.
+ *
+ * Brushes are grouped into cubic cells of the world by the centre of their bounds; each cell
+ * is one WorldChunk (or a few, if it gets too big for short indices). Changing a brush only
+ * rebuilds and re-uploads the chunk it's in.
+ *
+ * Given a MeshCache, chunks are rebuilt in the background (and drawn as they were until
+ * then); otherwise they're rebuilt on the spot. Everything but cull() and getRenderables()
+ * can be used without a GL context.
+ */
+public class WorldBatch implements RenderableProvider, Disposable {
+
+	public static final float DEFAULT_CELL_SIZE = 1024f;
+
+	private final float cellSize;
+	private final MeshCache cache;
+	private final LongMap<Array<WorldChunk>> cells = new LongMap<Array<WorldChunk>>();
+	private final IdentityMap<Brush, WorldChunk> owners = new IdentityMap<Brush, WorldChunk>();
+	private final Array<WorldChunk> chunks = new Array<WorldChunk>();
+
+	private final Array<WorldChunk> visible = new Array<WorldChunk>();
+	private boolean culling = false;
+	private int numCulled = 0, numCulledBrushes = 0;
+
+	// colour comes from the vertices
+	private final Material material = new Material();
+	private final Vector3 centre = new Vector3();
+
+	public WorldBatch() {
+		this(DEFAULT_CELL_SIZE, null);
+	}
+
+	public WorldBatch(float cellSize) {
+		this(cellSize, null);
+	}
+
+	/**
+	 * @param cache may be null, in which case chunks are rebuilt on the render thread.
+	 */
+	public WorldBatch(float cellSize, MeshCache cache) {
+		this.cellSize = cellSize;
+		this.cache = cache;
+	}
+
+	public WorldBatch(BrushContainer container, MeshCache cache) {
+		this(DEFAULT_CELL_SIZE, cache);
+		addAll(container.brushes);
+	}
+
+	/**
+	 * Pack a cell's integer coordinates into a key; 21 bits each is plenty.
+	 */
+	private long cellKey(Brush brush) {
+		BoundingBox bounds = brush.getBounds();
+		centre.set(bounds.min).add(bounds.max).scl(0.5f);
+		long x = (long) Math.floor(centre.x / cellSize) & 0x1FFFFF;
+		long y = (long) Math.floor(centre.y / cellSize) & 0x1FFFFF;
+		long z = (long) Math.floor(centre.z / cellSize) & 0x1FFFFF;
+		return (x << 42) | (y << 21) | z;
+	}
+
+	public void add(Brush brush) {
+		long key = cellKey(brush);
+		Array<WorldChunk> cell = cells.get(key);
+		if (cell == null) {
+			cell = new Array<WorldChunk>(1);
+			cells.put(key, cell);
+		}
+
+		WorldChunk chunk = null;
+		for (WorldChunk c: cell) {
+			if (c.hasRoomFor(brush)) {
+				chunk = c;
+				break;
+			}
+		}
+		if (chunk == null) {
+			chunk = new WorldChunk();
+			cell.add(chunk);
+			chunks.add(chunk);
+		}
+
+		chunk.add(brush);
+		owners.put(brush, chunk);
+		changed(chunk);
+	}
+
+	public void addAll(Array<Brush> brushes) {
+		for (Brush brush: brushes) {
+			add(brush);
+		}
+	}
+
+	/**
+	 * Empty chunks are kept around (and their meshes with them), as something will probably
+	 * end up in that part of the world again.
+	 */
+	public void remove(Brush brush) {
+		WorldChunk chunk = owners.remove(brush);
+		if (chunk != null) {
+			chunk.remove(brush);
+			changed(chunk);
+		}
+	}
+
+	/**
+	 * Must be called after changing the geometry of a brush in this batch
+	 * (and after BrushContainer.update, so its bounds are up to date).
+	 */
+	public void update(Brush brush) {
+		WorldChunk chunk = owners.get(brush);
+		if (chunk == null) return;
+
+		// same cell and still fits? just rebuild the chunk.
+		Array<WorldChunk> cell = cells.get(cellKey(brush));
+		if (cell != null && cell.contains(chunk, true)) {
+			chunk.invalidate();
+			if (!chunk.isOverfull()) {
+				changed(chunk);
+				return;
+			}
+		}
+		remove(brush);
+		add(brush);
+	}
+
+	private void changed(WorldChunk chunk) {
+		if (cache != null) {
+			cache.invalidate(chunk);
+		}
+	}
+
+	/**
+	 * Pack the geometry of every chunk that has changed since the last call, right now.
+	 * No GL needed, but don't mix this with a MeshCache (which does it on the workers).
+	 * @return the number of chunks rebuilt.
+	 */
+	public int build() {
+		int n = 0;
+		for (WorldChunk chunk: chunks) {
+			if (chunk.isDirty()) {
+				chunk.build();
+				n++;
+			}
+		}
+		if (n > 0 && Trace.enabled()) {
+			Trace.record(Trace.MESH, "rebuilt " + n + " of " + chunks.size + " chunks");
+		}
+		return n;
+	}
+
+	/**
+	 * Without a MeshCache, rebuild and upload whatever has changed. With one, hand it any
+	 * chunk that's changed but isn't on its way (say, because its last build failed).
+	 */
+	private void refresh() {
+		if (cache != null) {
+			for (WorldChunk chunk: chunks) {
+				if (chunk.isDirty() && !cache.isPending(chunk)) {
+					cache.invalidate(chunk);
+				}
+			}
+			return;
+		}
+		build();
+		for (WorldChunk chunk: chunks) {
+			if (chunk.needsUpload()) {
+				chunk.upload();
+			}
+		}
+	}
+
+	/**
+	 * Only draw chunks that the camera could see, from now until the next call. A chunk is
+	 * culled (with every brush in it) if its bounds are outside the camera's frustum, or
+	 * entirely further away from the camera than camera.far; the frustum's far plane is flat,
+	 * and would keep what's off in its corners. The camera must have been update()d.
+	 */
+	public void cull(Camera camera) {
+		refresh();
+		visible.clear();
+		float far2 = camera.far * camera.far;
+		int total = 0, totalBrushes = 0;
+		numCulledBrushes = 0;
+		for (WorldChunk chunk: chunks) {
+			if (chunk.getMeshIndices() == 0) continue;
+			total++;
+			totalBrushes += chunk.getMeshBrushes();
+			BoundingBox bounds = chunk.getMeshBounds();
+			if (LocalMath.boxInFrustum(camera.frustum, bounds)
+					&& LocalMath.boxDistance2(bounds, camera.position) <= far2) {
+				visible.add(chunk);
+			} else {
+				numCulledBrushes += chunk.getMeshBrushes();
+			}
+		}
+		numCulled = total - visible.size;
+		culling = true;
+		if (Trace.enabled()) {
+			Trace.record(Trace.RENDER, "culled " + numCulledBrushes + " of " + totalBrushes + " brushes ("
+					+ numCulled + " of " + total + " chunks)");
+		}
+	}
+
+	/**
+	 * @return every chunk, including empty ones. Don't modify it.
+	 */
+	public Array<WorldChunk> getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * @return the chunk a brush is in, or null if it isn't in this batch.
+	 */
+	public WorldChunk getChunk(Brush brush) {
+		return owners.get(brush);
+	}
+
+	/**
+	 * @return how many (non-empty) chunks the last cull() dropped.
+	 */
+	public int getNumCulled() {
+		return numCulled;
+	}
+
+	/**
+	 * @return how many brushes the last cull() dropped, i.e. those in the chunks it dropped.
+	 */
+	public int getNumCulledBrushes() {
+		return numCulledBrushes;
+	}
+
+	@Override
+	public void getRenderables(Array<Renderable> renderables, Pool<Renderable> pool) {
+		if (!culling) refresh();
+		Array<WorldChunk> drawn = culling ? visible : chunks;
+		for (WorldChunk chunk: drawn) {
+			if (chunk.getMeshIndices() == 0) continue;
+			Renderable r = pool.obtain();
+			r.mesh = chunk.getMesh();
+			r.material = material;
+			r.primitiveType = GL10.GL_TRIANGLES;
+			r.meshPartOffset = 0;
+			r.meshPartSize = chunk.getMeshIndices();
+			r.worldTransform.idt();
+			renderables.add(r);
+		}
+	}
+
+	@Override
+	public void dispose() {
+		for (WorldChunk chunk: chunks) {
+			if (cache != null) cache.forget(chunk);
+			chunk.dispose();
+		}
+	}
+
+}
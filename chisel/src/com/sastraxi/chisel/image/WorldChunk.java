@@ -0,0 +1,369 @@
+package com.sastraxi.chisel.image;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.math.Face;
+
+/**
+ * The solid geometry of a group of brushes, packed into one vertex buffer and one index
+ * buffer so that they can all be drawn at once.
+ *
+ * build() does the packing into plain float[] / short[] arrays and needs no GL context;
+ * upload() hands the result to the GPU (and must be called from the render thread). A
+ * MeshCache can do the packing on a worker instead, as prepare() takes a copy of the brushes'
+ * geometry for it to work from.
+ */
+public class WorldChunk implements MeshCache.Entry, Disposable {
+
+	/**
+	 * position (3) + normal (3) + packed colour (1)
+	 */
+	public static final int FLOATS_PER_VERTEX = 7;
+
+	/**
+	 * Indices are shorts, so this is as big as a chunk's vertex buffer can get.
+	 */
+	public static final int MAX_VERTICES = 65536;
+
+	private final Array<Brush> brushes = new Array<Brush>();
+	private int numVertices = 0; // as of the last add/remove, not the last build
+
+	// what generate() works from: a copy of the brushes' geometry, as of prepare()
+	private int numBuilding = 0;
+	private float[] buildColours = new float[0]; // per brush
+	private int[] buildFaceStart = new int[1], buildVertexStart = new int[1]; // per brush, + 1
+	private int[][] buildLoops = new int[0][]; // per face; faces never modify their loops, so these are shared
+	private float[] buildNormals = new float[0]; // xyz per face
+	private float[] buildCoords = new float[0]; // xyz per vertex
+	private final BoundingBox buildBounds = new BoundingBox();
+
+	private float[] vertices = new float[0];
+	private short[] indices = new short[0];
+	private int[] brushVertexStart = new int[1];
+	private int[] brushIndexStart = new int[1];
+	private int builtBrushes = 0, builtVertices = 0, builtIndices = 0;
+	private final BoundingBox bounds = new BoundingBox();
+
+	private boolean dirty = false;
+	private boolean generated = false;
+
+	// what's on the GPU, and so what's being drawn; render thread only
+	private Mesh mesh = null;
+	private int meshBrushes = 0, meshIndices = 0;
+	private final BoundingBox meshBounds = new BoundingBox();
+
+	/**
+	 * @return the number of vertices the solid mesh of this brush needs.
+	 */
+	public static int countVertices(Brush brush) {
+		int n = 0;
+		for (Face face: brush.getFaces()) {
+			n += face.arity();
+		}
+		return n;
+	}
+
+	/**
+	 * @return the number of indices the solid mesh of this brush needs.
+	 */
+	public static int countIndices(Brush brush) {
+		int n = 0;
+		for (Face face: brush.getFaces()) {
+			n += (face.arity() - 2) * 3; // each face has (edges - 2) triangles.
+		}
+		return n;
+	}
+
+	/**
+	 * @return false if the brush would push this chunk over MAX_VERTICES.
+	 */
+	public boolean hasRoomFor(Brush brush) {
+		return numVertices + countVertices(brush) <= MAX_VERTICES;
+	}
+
+	public void add(Brush brush) {
+		brushes.add(brush);
+		numVertices += countVertices(brush);
+		dirty = true;
+	}
+
+	public boolean remove(Brush brush) {
+		if (!brushes.removeValue(brush, true)) return false;
+		recount(); // the brush may have changed since it was added
+		dirty = true;
+		return true;
+	}
+
+	/**
+	 * Must be called after the geometry of one of this chunk's brushes changes.
+	 */
+	public void invalidate() {
+		recount();
+		dirty = true;
+	}
+
+	private void recount() {
+		numVertices = 0;
+		for (Brush brush: brushes) {
+			numVertices += countVertices(brush);
+		}
+	}
+
+	/**
+	 * @return true if a brush has grown so much that this chunk no longer fits in MAX_VERTICES.
+	 */
+	public boolean isOverfull() {
+		return numVertices > MAX_VERTICES;
+	}
+
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	public boolean isEmpty() {
+		return brushes.size == 0;
+	}
+
+	public Array<Brush> getBrushes() {
+		return brushes;
+	}
+
+	/**
+	 * Pack the solid meshes of every brush into this chunk's buffers, brush after brush.
+	 * Each vertex is FLOATS_PER_VERTEX floats; each face is a triangle fan.
+	 */
+	public void build() {
+		prepare();
+		generate();
+	}
+
+	/**
+	 * Copies what generate() needs, as the brushes can be edited while it runs.
+	 */
+	@Override
+	public void prepare() {
+		int n_faces = 0, n_points = 0;
+		for (Brush brush: brushes) {
+			n_faces += brush.getFaces().size;
+			n_points += brush.getVertices().size;
+		}
+		numBuilding = brushes.size;
+		if (buildFaceStart.length < numBuilding + 1) {
+			buildColours = new float[numBuilding];
+			buildFaceStart = new int[numBuilding + 1];
+			buildVertexStart = new int[numBuilding + 1];
+		}
+		if (buildLoops.length < n_faces) {
+			buildLoops = new int[n_faces][];
+			buildNormals = new float[n_faces * 3];
+		}
+		if (buildCoords.length < n_points * 3) {
+			buildCoords = new float[n_points * 3];
+		}
+
+		int f = 0, c = 0;
+		buildBounds.inf();
+		for (int b = 0; b < numBuilding; ++b) {
+			Brush brush = brushes.get(b);
+			buildColours[b] = brush.getColour().toFloatBits();
+			buildFaceStart[b] = f;
+			buildVertexStart[b] = c / 3;
+			buildBounds.ext(brush.getBounds());
+			for (Face face: brush.getFaces()) {
+				Vector3 normal = face.getPlane().normal;
+				buildLoops[f] = face.getLoop();
+				buildNormals[3*f] = normal.x; buildNormals[3*f+1] = normal.y; buildNormals[3*f+2] = normal.z;
+				f++;
+			}
+			for (Vector3 p: brush.getVertices()) {
+				buildCoords[c++] = p.x; buildCoords[c++] = p.y; buildCoords[c++] = p.z;
+			}
+		}
+		buildFaceStart[numBuilding] = f;
+		buildVertexStart[numBuilding] = c / 3;
+		dirty = false;
+	}
+
+	/**
+	 * Nothing to upload; the chunk is dirty again, so that it's rebuilt.
+	 */
+	@Override
+	public void failed(Throwable error) {
+		dirty = true;
+	}
+
+	@Override
+	public void generate() {
+		int n_vertices = 0, n_indices = 0;
+		for (int f = 0; f < buildFaceStart[numBuilding]; ++f) {
+			n_vertices += buildLoops[f].length;
+			n_indices += (buildLoops[f].length - 2) * 3; // each face has (edges - 2) triangles.
+		}
+		assert n_vertices <= MAX_VERTICES;
+
+		if (vertices.length < n_vertices * FLOATS_PER_VERTEX) {
+			vertices = new float[n_vertices * FLOATS_PER_VERTEX];
+		}
+		if (indices.length < n_indices) {
+			indices = new short[n_indices];
+		}
+		if (brushVertexStart.length < numBuilding + 1) {
+			brushVertexStart = new int[numBuilding + 1];
+			brushIndexStart = new int[numBuilding + 1];
+		}
+
+		int v = 0, i = 0;
+		bounds.inf();
+		if (numBuilding > 0) bounds.set(buildBounds);
+		for (int b = 0; b < numBuilding; ++b) {
+			float colour = buildColours[b];
+			int base = buildVertexStart[b];
+			brushVertexStart[b] = v / FLOATS_PER_VERTEX;
+			brushIndexStart[b] = i;
+
+			for (int f = buildFaceStart[b]; f < buildFaceStart[b + 1]; ++f) {
+				int[] loop = buildLoops[f];
+
+				// assemble vertices
+				int v_start = v / FLOATS_PER_VERTEX;
+				for (int t = 0; t < loop.length; ++t) {
+					int c = (base + loop[t]) * 3;
+					vertices[v++] = buildCoords[c]; vertices[v++] = buildCoords[c+1]; vertices[v++] = buildCoords[c+2];
+					vertices[v++] = buildNormals[3*f]; vertices[v++] = buildNormals[3*f+1]; vertices[v++] = buildNormals[3*f+2];
+					vertices[v++] = colour;
+				}
+
+				// assemble indices (triangle fan)
+				for (int t = 0; t < loop.length - 2; ++t) {
+					indices[i++] = (short) (v_start);
+					indices[i++] = (short) (v_start+t+1);
+					indices[i++] = (short) (v_start+t+2);
+				}
+			}
+		}
+		brushVertexStart[numBuilding] = v / FLOATS_PER_VERTEX;
+		brushIndexStart[numBuilding] = i;
+
+		builtBrushes = numBuilding;
+		builtVertices = v / FLOATS_PER_VERTEX;
+		builtIndices = i;
+		generated = true;
+	}
+
+	/**
+	 * The packed vertex data as of the last build(); only the first getNumVertices() * FLOATS_PER_VERTEX are used.
+	 */
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * The packed index data as of the last build(); only the first getNumIndices() are used.
+	 */
+	public short[] getIndices() {
+		return indices;
+	}
+
+	public int getNumVertices() {
+		return builtVertices;
+	}
+
+	public int getNumIndices() {
+		return builtIndices;
+	}
+
+	/**
+	 * @return the first vertex of the b'th brush, as of the last build(). b = number of brushes is allowed.
+	 */
+	public int getVertexStart(int b) {
+		return brushVertexStart[b];
+	}
+
+	/**
+	 * @return the first index of the b'th brush, as of the last build(). b = number of brushes is allowed.
+	 */
+	public int getIndexStart(int b) {
+		return brushIndexStart[b];
+	}
+
+	/**
+	 * @return the union of every brush's bounds, as of the last build().
+	 */
+	public BoundingBox getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * @return true if the last build() hasn't made it to the GPU yet.
+	 */
+	public boolean needsUpload() {
+		return generated;
+	}
+
+	/**
+	 * Upload the last build(). The mesh is only re-allocated if the chunk has outgrown it.
+	 */
+	@Override
+	public void upload() {
+		if (mesh != null && (mesh.getMaxVertices() < builtVertices || mesh.getMaxIndices() < builtIndices)) {
+			mesh.dispose();
+			mesh = null;
+		}
+		if (mesh == null) {
+			mesh = new Mesh(true, vertices.length / FLOATS_PER_VERTEX, indices.length,
+					new VertexAttribute(VertexAttributes.Usage.Position, 3, "a_position"),
+					new VertexAttribute(VertexAttributes.Usage.Normal, 3, "a_normal"),
+					new VertexAttribute(VertexAttributes.Usage.ColorPacked, 4, "a_color"));
+		}
+		mesh.setVertices(vertices, 0, builtVertices * FLOATS_PER_VERTEX);
+		mesh.setIndices(indices, 0, builtIndices);
+		meshBrushes = builtBrushes;
+		meshIndices = builtIndices;
+		meshBounds.set(bounds);
+		generated = false;
+	}
+
+	/**
+	 * @return the mesh as of the last upload(), or null if there hasn't been one.
+	 */
+	public Mesh getMesh() {
+		return mesh;
+	}
+
+	/**
+	 * @return the number of brushes in the mesh as of the last upload().
+	 */
+	public int getMeshBrushes() {
+		return meshBrushes;
+	}
+
+	/**
+	 * @return the number of indices in the mesh as of the last upload().
+	 */
+	public int getMeshIndices() {
+		return meshIndices;
+	}
+
+	/**
+	 * @return the bounds of what's in the mesh as of the last upload().
+	 */
+	public BoundingBox getMeshBounds() {
+		return meshBounds;
+	}
+
+	@Override
+	public void dispose() {
+		if (mesh != null) {
+			mesh.dispose();
+			mesh = null;
+		}
+		meshBrushes = meshIndices = 0;
+	}
+
+}
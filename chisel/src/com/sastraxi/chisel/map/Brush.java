@@ -7,42 +7,92 @@ import com.badlogic.gdx.graphics.g3d.RenderableProvider;
 import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
 import com.badlogic.gdx.math.Plane;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.collision.Ray;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
 import com.badlogic.gdx.utils.Pool;
 import com.sastraxi.chisel.image.ColourManager;
+import com.sastraxi.chisel.image.MeshCache;
+import com.sastraxi.chisel.math.EdgeMap;
 import com.sastraxi.chisel.math.Face;
 import com.sastraxi.chisel.math.LocalMath;
 import com.sastraxi.chisel.state.Selection;
+import com.sastraxi.chisel.trace.Trace;
 
+import java.nio.FloatBuffer;
 import java.util.Arrays;
+import java.util.BitSet;
 
 public class Brush implements RenderableProvider {
 
     private Selection selection = null;
 
+    /**
+     * Selection changes only rewrite the selection flags in the vertex buffer; a single face
+     * or vertex only its own corners.
+     */
+    private final Selection.Listener selectionListener = new Selection.Listener() {
+        @Override
+        public void selectionChanged(Selection selection, int parts, int index) {
+            if (index == Selection.MANY) {
+                invalidateSelection();
+            } else {
+                brushMesh.changed(parts, index);
+            }
+        }
+    };
+
     public boolean hasSelection() {
         return selection != null;
     }
 
     /**
      * Returns the current selection, or null if there isn't one.
-     * Any write operations on the selection must be followed by the appropriate one of:
-     *  - Brush.invalidateMesh(MESH_TYPE_SOLID_SELECTED);
-     *  - Brush.invalidateMesh(MESH_TYPE_POINTS_SELECTED);
+     * Changes made through it update the mesh on their own.
      */
     public Selection getSelection() {
         return selection;
     }
 
+    /**
+     * Starts a (probably empty) selection on this brush, replacing any old one,
+     * which the caller still owns.
+     */
+    public void setSelection(Selection selection) {
+        if (this.selection != null) {
+            this.selection.setListener(null);
+        }
+        this.selection = selection;
+        if (selection != null) {
+            selection.setListener(selectionListener);
+        }
+        invalidateSelection();
+    }
+
     public void removeSelection(Pool<Selection> selectionPool) {
-        selectionPool.free(this.selection);
-        this.selection = null;
+        if (this.selection == null) return;
+        Selection old = this.selection;
+        setSelection(null);
+        selectionPool.free(old);
     }
 
+	/**
+	 * How far (as a cosine; about 25 degrees) a face can turn and keep its surface.
+	 */
+	private static final float SURFACE_COS = 0.9f;
+
 	// actual data
 	private final Array<Face> faces;
 	private final Array<Vector3> vertices;
-	private final Color colour;
+	private volatile Color colour = null; // picked on first use, or by setId()
+	private final BoundingBox bounds = new BoundingBox();
+	private Material material = null; // made on first render, then reused every frame
+	private int id = 0; // as in the VMF; 0 if it never came from one
+	private Array<Surface> surfaces = null; // how its sides looked in the VMF; null if it never came from one
+	private int revision = 0; // bumped whenever the geometry changes
+	private volatile BrushFingerprint fingerprint = null; // as of some revision; see getFingerprint()
 
 	/**
 	 * A brush is not allowed to contain vertices that do not exist on any faces.
@@ -50,7 +100,6 @@ public class Brush implements RenderableProvider {
 	public Brush(Array<Vector3> vertices, Array<Face> faces) {
 		this.vertices = vertices;
 		this.faces = faces;
-		this.colour = ColourManager.next();
 
 		// assert face correctness: planar + convex
 		for (Face face: this.faces) {
@@ -58,173 +107,621 @@ public class Brush implements RenderableProvider {
 			assert(face.isConvex(this.vertices));
 		}
 
-        this.meshes = new Mesh[NUM_MESH_TYPES];
+		updateBounds();
 
 	}
 
-	// cache
-    private static final int MESH_TYPE_SOLID = 0;
-    private static final int MESH_TYPE_LINES = 1;
-    private static final int MESH_TYPE_POINTS = 2;
-    private static final int MESH_TYPE_SOLID_SELECTED = 3;
-    private static final int MESH_TYPE_POINTS_SELECTED = 4;
-    private static final int NUM_MESH_TYPES = 5;
-
-    private Mesh[] meshes = new Mesh[NUM_MESH_TYPES];
-    private boolean[] meshIsValid = new boolean[NUM_MESH_TYPES];
-
-	private Mesh getMesh(int mesh_type) {
-		if (!meshIsValid[mesh_type]) {
-			if (meshes[mesh_type] != null) {
-                meshes[mesh_type].dispose();
-            }
-			meshes[mesh_type] = generateMesh(mesh_type);
-			meshIsValid[mesh_type] = true;
+	/**
+	 * For geometry that's already known to be good (e.g. from a VmfSnapshot):
+	 * the face planes are taken as given, nx ny nz d per face starting at planes[offset],
+	 * instead of being worked out again.
+	 */
+	public Brush(Array<Vector3> vertices, Array<Face> faces, float[] planes, int offset) {
+		this.vertices = vertices;
+		this.faces = faces;
+
+		for (Face face: this.faces) {
+			face.setPlane(planes[offset], planes[offset+1], planes[offset+2], planes[offset+3]);
+			offset += 4;
 		}
-		return meshes[mesh_type];
+
+		updateExtent();
 	}
 
-    private Mesh generateMesh(int mesh_type) {
-        switch (mesh_type) {
-            case MESH_TYPE_LINES:
-                return generateWireframeMesh();
-            case MESH_TYPE_POINTS:
-                return generatePointMesh(null);
-            case MESH_TYPE_POINTS_SELECTED:
-                return generatePointMesh(selection.getSelectedVertices());
-            case MESH_TYPE_SOLID:
-                return generateSolidMesh(null);
-            case MESH_TYPE_SOLID_SELECTED:
-                return generateSolidMesh(selection.getSelectedFaces());
-        }
-        assert false: "Unhandled mesh type in Brush.generateMesh(int)";
-        return null;
+	// cache
+    /**
+     * What getRenderables() draws of each brush; any of these or'd together. They're all
+     * ranges of the same index buffer, over the same vertices.
+     */
+    public static final int VIEW_SOLID = 1;
+    public static final int VIEW_LINES = 2;
+    public static final int VIEW_POINTS = 4;
+
+    private static volatile int views = VIEW_SOLID;
+
+    public static void setViews(int mask) {
+        views = mask;
     }
 
-    private Mesh generatePointMesh(Array<Integer> selectedVertices) {
-        // xxx: stub
-        return null;
+    public static int getViews() {
+        return views;
+    }
+
+    /**
+     * position (3) + normal (3) + selection (2: this corner's face, this corner's vertex; 1 if selected)
+     */
+    private static final int FLOATS_PER_VERTEX = 8;
+    private static final int SELECTION_OFFSET = 6;
+
+    private final BrushMesh brushMesh = new BrushMesh();
+
+    /**
+     * If set, meshes are rebuilt on its workers and the old mesh drawn until then.
+     */
+    private static volatile MeshCache meshCache = null;
+
+    public static void setMeshCache(MeshCache cache) {
+        meshCache = cache;
     }
 
 	/**
-	 * Generates a non-smooth mesh (think: D&D dice) that represents this Brush,
-	 * given its geometry.
+	 * @return the mesh, or null if it isn't ready yet (or is empty).
 	 */
-	private Mesh generateSolidMesh(Array<Integer> selectedFaces) {
+	private Mesh getMesh() {
+		BrushMesh m = brushMesh;
+		if (m.valid && m.patchPending) {
+			m.patch();
+		} else if (!m.valid) {
+			m.valid = true;
+			MeshCache cache = meshCache;
+			if (cache != null) {
+				cache.invalidate(m);
+			} else {
+				m.prepare();
+				m.generate();
+				m.upload();
+			}
+		}
+		return m.mesh;
+	}
 
-		// each face has (edges - 2) triangles.
-		int n_indices = 0, n_vertices = 0;
-		for (Face face: faces) {
-			n_vertices += face.arity();
-			n_indices += (face.arity() - 2) * 3;
+    /**
+     * This brush's mesh, split up so that the vertex and index data can be worked out away
+     * from the render thread.
+     *
+     * There's one vertex per face corner (so that faces can be flat-shaded), and one index
+     * buffer: the triangles, then each edge once as a line, then each vertex once as a point.
+     * Selection is a vertex attribute, so when only the selection has changed the indices
+     * and positions are left alone and just the flags in the vertex buffer are rewritten:
+     * all of them on the workers after a bulk change, or, when one face or vertex has been
+     * clicked, the few corners it's on, right here on the render thread.
+     */
+    private class BrushMesh implements MeshCache.Entry {
+
+        boolean valid = false;
+        Mesh mesh = null;
+
+        // bumped by invalidateMesh(); the uploaded mesh matches geometry as of uploadedRevision.
+        int revision = 0;
+        int uploadedRevision = -1;
+
+        // index buffer ranges of the uploaded mesh
+        int numSolidIndices = 0, numLineIndices = 0, numPointIndices = 0;
+
+        // where each face's / vertex's corners are in the uploaded mesh (see generateMesh)
+        int[] faceCorners = null;
+        int[] vertexCornerStart = null, vertexCorners = null;
+
+        // faces and vertices whose flags patch() has yet to rewrite
+        final BitSet dirtyFaces = new BitSet();
+        final BitSet dirtyVertices = new BitSet();
+        boolean patchPending = false;
+
+        // prepare() takes these copies; generate() leaves its results in the fields after them.
+        final BitSet selectedFaces = new BitSet();
+        final BitSet selectedVertices = new BitSet();
+        boolean flagsOnly = false;
+        int buildRevision = 0;
+        int numVertices = 0, numFaces = 0;
+        float[] coords = new float[0]; // xyz per vertex
+        float[] normals = new float[0]; // xyz per face
+        int[][] loops = new int[0][]; // faces never modify their loops, so these are shared
+
+        float[] verts = null;
+        short[] indices = null;
+        int solid = 0, lines = 0, points = 0;
+        int[] newFaceCorners = null, newVertexCornerStart = null, newVertexCorners = null;
+
+        /**
+         * One face's or vertex's selection has changed. Patched in place if the uploaded mesh
+         * is current and nothing's being built that would overwrite it; otherwise it's the
+         * same as any other change.
+         */
+        void changed(int parts, int index) {
+            MeshCache cache = meshCache;
+            if (!valid || mesh == null || uploadedRevision != revision
+                    || (cache != null && cache.isPending(this))) {
+                valid = false;
+                return;
+            }
+            if ((parts & Selection.FACES) != 0) dirtyFaces.set(index);
+            if ((parts & Selection.VERTICES) != 0) dirtyVertices.set(index);
+            patchPending = true;
+        }
+
+        /**
+         * Render thread: rewrite the flags of the dirty faces' and vertices' corners, as
+         * they are in the selection now.
+         */
+        void patch() {
+            patchPending = false;
+            FloatBuffer buffer = mesh.getVerticesBuffer(); // marks it for re-upload
+            for (int f = dirtyFaces.nextSetBit(0); f >= 0; f = dirtyFaces.nextSetBit(f + 1)) {
+                if (f >= faceCorners.length - 1) break;
+                float flag = selection != null && selection.isFaceSelected(f) ? 1f : 0f;
+                for (int k = faceCorners[f]; k < faceCorners[f + 1]; ++k) {
+                    buffer.put(k * FLOATS_PER_VERTEX + SELECTION_OFFSET, flag);
+                }
+            }
+            for (int v = dirtyVertices.nextSetBit(0); v >= 0; v = dirtyVertices.nextSetBit(v + 1)) {
+                if (v >= vertexCornerStart.length - 1) break;
+                float flag = selection != null && selection.isVertexSelected(v) ? 1f : 0f;
+                for (int c = vertexCornerStart[v]; c < vertexCornerStart[v + 1]; ++c) {
+                    buffer.put(vertexCorners[c] * FLOATS_PER_VERTEX + SELECTION_OFFSET + 1, flag);
+                }
+            }
+            dirtyFaces.clear();
+            dirtyVertices.clear();
+        }
+
+        @Override
+        public void prepare() {
+            // the copy below has the latest of everything.
+            dirtyFaces.clear();
+            dirtyVertices.clear();
+            patchPending = false;
+
+            selectedFaces.clear();
+            selectedVertices.clear();
+            if (selection != null) {
+                selectedFaces.or(selection.getSelectedFaces());
+                selectedVertices.or(selection.getSelectedVertices());
+            }
+            buildRevision = revision;
+            flagsOnly = mesh != null && uploadedRevision == revision;
+
+            // generate() mustn't look at the brush itself, which can be edited while it runs.
+            numVertices = vertices.size;
+            numFaces = faces.size;
+            if (coords.length < numVertices * 3) {
+                coords = new float[numVertices * 3];
+            }
+            if (loops.length < numFaces) {
+                loops = new int[numFaces][];
+                normals = new float[numFaces * 3];
+            }
+            for (int v = 0, c = 0; v < numVertices; ++v) {
+                Vector3 p = vertices.get(v);
+                coords[c++] = p.x; coords[c++] = p.y; coords[c++] = p.z;
+            }
+            for (int f = 0; f < numFaces; ++f) {
+                Face face = faces.get(f);
+                Vector3 normal = face.getPlane().normal;
+                loops[f] = face.getLoop();
+                normals[3*f] = normal.x; normals[3*f+1] = normal.y; normals[3*f+2] = normal.z;
+            }
+        }
+
+        @Override
+        public void generate() {
+            verts = null;
+            indices = null;
+            if (flagsOnly) {
+                verts = generateSelectionFlags(this);
+            } else {
+                generateMesh(this);
+            }
+        }
+
+        /**
+         * Nothing to upload, and nothing in flight; it'll be asked for again next time it's drawn.
+         */
+        @Override
+        public void failed(Throwable error) {
+            valid = false;
+            verts = null;
+            indices = null;
+            newFaceCorners = newVertexCornerStart = newVertexCorners = null;
+        }
+
+        @Override
+        public void upload() {
+            if (flagsOnly) {
+                if (verts == null || mesh == null) return;
+                FloatBuffer buffer = mesh.getVerticesBuffer(); // marks it for re-upload
+                for (int k = 0, n = verts.length / 2; k < n; ++k) {
+                    buffer.put(k * FLOATS_PER_VERTEX + SELECTION_OFFSET, verts[2*k]);
+                    buffer.put(k * FLOATS_PER_VERTEX + SELECTION_OFFSET + 1, verts[2*k+1]);
+                }
+                verts = null;
+                return;
+            }
+
+            if (mesh != null) {
+                mesh.dispose();
+                mesh = null;
+            }
+            uploadedRevision = buildRevision;
+            numSolidIndices = numLineIndices = numPointIndices = 0;
+            faceCorners = newFaceCorners;
+            vertexCornerStart = newVertexCornerStart;
+            vertexCorners = newVertexCorners;
+            newFaceCorners = newVertexCornerStart = newVertexCorners = null;
+            if (verts == null) return;
+
+            // the total number of components in the VertexAttributes attached
+            // must match FLOATS_PER_VERTEX
+            mesh = new Mesh(true, verts.length / FLOATS_PER_VERTEX, indices.length,
+                    new VertexAttribute(VertexAttributes.Usage.Position, 3, "a_position"),
+                    new VertexAttribute(VertexAttributes.Usage.Normal, 3, "a_normal"),
+                    new VertexAttribute(VertexAttributes.Usage.Generic, 2, "a_selection"));
+            mesh.setVertices(verts);
+            mesh.setIndices(indices);
+            numSolidIndices = solid;
+            numLineIndices = lines;
+            numPointIndices = points;
+            verts = null;
+            indices = null;
+        }
+    }
+
+	/**
+	 * Generates the mesh that represents this Brush, given the copy of its geometry that
+	 * prepare() took: a non-smooth (think: D&D dice) solid, its edges and its vertices, all
+	 * over the same vertex data. Doesn't touch GL; the data is left in m.
+	 */
+	private static void generateMesh(BrushMesh m) {
+		int numVertices = m.numVertices, numFaces = m.numFaces;
+		float[] coords = m.coords, normals = m.normals;
+
+		// each face has (edges - 2) triangles; each edge is on two faces.
+		int n_vertices = 0, n_triangles = 0;
+		for (int f_i = 0; f_i < numFaces; ++f_i) {
+			n_vertices += m.loops[f_i].length;
+			n_triangles += m.loops[f_i].length - 2;
 		}
+		int n_solid = n_triangles * 3;
+		int max_lines = n_vertices; // one per corner, before we find that each is shared
+		if (n_vertices == 0) return;
 
-		int i = 0, v = 0;
-		short[] indices = new short[n_indices]; // each triangle has 3 vertices.
-		float[] verts = new float[n_vertices * 6]; // each vertex has a number of attributes; see below*
-		for (int f_i = 0; f_i < faces.size; ++f_i) {
+		short[] indices = new short[n_solid + max_lines * 2 + numVertices];
+		float[] verts = new float[n_vertices * FLOATS_PER_VERTEX];
+		int[] firstCorner = new int[numVertices];
+		Arrays.fill(firstCorner, -1);
+		int[] faceCorners = new int[numFaces + 1];
+		int[] vertexCornerStart = new int[numVertices + 1];
+		EdgeMap edges = new EdgeMap(max_lines / 2); // edge -> the face it was drawn for
 
-            Face face = faces.get(f_i);
-			Vector3 normal = face.getNormal(this.vertices).nor();
+		int v = 0, s = 0, l = n_solid;
+		for (int f_i = 0; f_i < numFaces; ++f_i) {
 
-            // todo: use selectedFaces to highlight individual faces (might be null, treat as empty set)
-            // this requires us to use a custom shader that blends the brush colour with
+			float faceSelected = m.selectedFaces.get(f_i) ? 1f : 0f;
+			int[] loop = m.loops[f_i];
 
 			// assemble vertices
-			int v_start = v / 6;
-			for (int t = 0; t < face.arity(); ++t) {
-				Vector3 p = this.vertices.get(face.getEdges().get(t)[LocalMath.EDGE_START]);
-				verts[v++] = p.x; verts[v++] = p.y; verts[v++] = p.z;
-				verts[v++] = normal.x; verts[v++] = normal.y; verts[v++] = normal.z;
+			int v_start = v / FLOATS_PER_VERTEX;
+			faceCorners[f_i] = v_start;
+			for (int t = 0; t < loop.length; ++t) {
+				vertexCornerStart[loop[t] + 1]++;
+				int c = loop[t] * 3;
+				verts[v++] = coords[c]; verts[v++] = coords[c+1]; verts[v++] = coords[c+2];
+				verts[v++] = normals[3*f_i]; verts[v++] = normals[3*f_i+1]; verts[v++] = normals[3*f_i+2];
+				verts[v++] = faceSelected;
+				verts[v++] = m.selectedVertices.get(loop[t]) ? 1f : 0f;
+				if (firstCorner[loop[t]] < 0) firstCorner[loop[t]] = v_start + t;
 			}
 
 			// assemble indices (triangle fan)
-			for (int t = 0; t < face.arity() - 2; ++t) {
-				indices[i++] = (short) (v_start);
-				indices[i++] = (short) (v_start+t+1);
-				indices[i++] = (short) (v_start+t+2);
+			for (int t = 0; t < loop.length - 2; ++t) {
+				indices[s++] = (short) (v_start);
+				indices[s++] = (short) (v_start+t+1);
+				indices[s++] = (short) (v_start+t+2);
+			}
+
+			// each edge once; the neighbouring face has it too, the other way round.
+			for (int t = 0; t < loop.length; ++t) {
+				int u = (t + 1) % loop.length;
+				if (edges.add(loop[t], loop[u], f_i)) {
+					indices[l++] = (short) (v_start+t);
+					indices[l++] = (short) (v_start+u);
+				}
 			}
 
 		}
 
-		// the total number of components in the VertexAttributes attached
-		// must match the multiplier in the verts[] definition above*
-		Mesh mesh = new Mesh(true, n_vertices, n_indices,
-				new VertexAttribute(VertexAttributes.Usage.Position, 3, "a_position"),
-				new VertexAttribute(VertexAttributes.Usage.Normal, 3, "a_normal"));
+		faceCorners[numFaces] = n_vertices;
 
-		System.out.println("Generated Mesh:");
-		System.out.println(Arrays.toString(verts));
-		System.out.println(Arrays.toString(indices));
+		// every vertex's corners, grouped by vertex
+		for (int i = 0; i < numVertices; ++i) {
+			vertexCornerStart[i + 1] += vertexCornerStart[i];
+		}
+		int[] vertexCorners = new int[n_vertices];
+		int[] fill = Arrays.copyOf(vertexCornerStart, numVertices);
+		for (int f_i = 0, k = 0; f_i < numFaces; ++f_i) {
+			for (int id: m.loops[f_i]) {
+				vertexCorners[fill[id]++] = k++;
+			}
+		}
+
+		// each vertex once
+		int p = l;
+		for (int i = 0; i < firstCorner.length; ++i) {
+			if (firstCorner[i] >= 0) indices[p++] = (short) firstCorner[i];
+		}
+		if (p < indices.length) indices = Arrays.copyOf(indices, p);
 
-		mesh.setVertices(verts);
-		mesh.setIndices(indices);
+		if (Trace.enabled()) {
+			Trace.record(Trace.MESH, "Generated Mesh:\n" + Arrays.toString(verts) + "\n" + Arrays.toString(indices));
+		}
 
-		return mesh;
+		m.verts = verts;
+		m.indices = indices;
+		m.solid = n_solid;
+		m.lines = l - n_solid;
+		m.points = p - l;
+		m.newFaceCorners = faceCorners;
+		m.newVertexCornerStart = vertexCornerStart;
+		m.newVertexCorners = vertexCorners;
 	}
 
-    /**
-     * Generate a mesh out of the lines used to draw whatever
-     * @return
-     */
-	private Mesh generateWireframeMesh() {
-		return null;
+	/**
+	 * Just the selection attribute of every vertex generateMesh() makes, two floats each,
+	 * in the same order.
+	 */
+	private static float[] generateSelectionFlags(BrushMesh m) {
+		int n_vertices = 0;
+		for (int f_i = 0; f_i < m.numFaces; ++f_i) {
+			n_vertices += m.loops[f_i].length;
+		}
+		float[] flags = new float[n_vertices * 2];
+		int k = 0;
+		for (int f_i = 0; f_i < m.numFaces; ++f_i) {
+			float faceSelected = m.selectedFaces.get(f_i) ? 1f : 0f;
+			for (int id: m.loops[f_i]) {
+				flags[k++] = faceSelected;
+				flags[k++] = m.selectedVertices.get(id) ? 1f : 0f;
+			}
+		}
+		return flags;
 	}
 
-	public void invalidateMesh(int mesh_type) {
-		this.meshIsValid[mesh_type] = false;
+	/**
+	 * Must be called after changing this brush's geometry.
+	 */
+	public void invalidateMesh() {
+		brushMesh.revision++;
+		brushMesh.valid = false;
 	}
 
-    public void invalidateMeshes() {
-        for (int i = 0; i < this.meshIsValid.length; ++i) {
-            this.meshIsValid[i] = false;
-        }
+    /**
+     * Only the selection has changed; keeps the indices and positions.
+     */
+    private void invalidateSelection() {
+        brushMesh.valid = false;
     }
 
 	@Override
 	public void getRenderables(Array<Renderable> renderables, Pool<Renderable> pool) {
 
-        if (hasSelection()) {
-
-            // solid mesh
-            Renderable r = pool.obtain();
-            r.mesh = getMesh(MESH_TYPE_SOLID_SELECTED);
-            r.material = new Material(ColorAttribute.createDiffuse(colour));
-            r.primitiveType = GL10.GL_TRIANGLES;
-            r.meshPartSize = r.mesh.getNumIndices();
-            r.worldTransform.idt();
-            renderables.add(r);
-
-        } else {
-
-            // solid mesh
-            Renderable r = pool.obtain();
-            r.mesh = getMesh(MESH_TYPE_SOLID);
-            r.material = new Material(ColorAttribute.createDiffuse(colour));
-            r.primitiveType = GL10.GL_TRIANGLES;
-            r.meshPartSize = r.mesh.getNumIndices();
-            r.worldTransform.idt();
-            renderables.add(r);
+        Mesh m = getMesh();
+        if (m == null) return;
+        if (material == null) {
+            material = new Material(ColorAttribute.createDiffuse(getColour()));
+        }
 
+        int mask = views;
+        if ((mask & VIEW_SOLID) != 0) {
+            addRenderable(renderables, pool, m, GL10.GL_TRIANGLES, 0, brushMesh.numSolidIndices);
+        }
+        if ((mask & VIEW_LINES) != 0) {
+            addRenderable(renderables, pool, m, GL10.GL_LINES, brushMesh.numSolidIndices, brushMesh.numLineIndices);
+        }
+        if ((mask & VIEW_POINTS) != 0) {
+            addRenderable(renderables, pool, m, GL10.GL_POINTS,
+                    brushMesh.numSolidIndices + brushMesh.numLineIndices, brushMesh.numPointIndices);
         }
 
 	}
 
+    private void addRenderable(Array<Renderable> renderables, Pool<Renderable> pool, Mesh m,
+                               int primitiveType, int offset, int size) {
+        if (size == 0) return;
+        Renderable r = pool.obtain();
+        r.mesh = m;
+        r.material = material;
+        r.primitiveType = primitiveType;
+        r.meshPartOffset = offset;
+        r.meshPartSize = size;
+        r.worldTransform.idt();
+        renderables.add(r);
+    }
+
+	public static final int POSITIVE_SIDE = 0;
+	public static final int NEGATIVE_SIDE = 1;
+
 	/**
 	 * Does not modify the Brush it is called on.
 	 *
+	 * Each vertex is classified against the plane exactly once, and only the faces the plane
+	 * crosses are split. Vertices that survive keep their index where they can (split points
+	 * fill the gaps left by the ones that don't), so faces the plane doesn't cross share their
+	 * vertex loops with this brush. The vertices themselves are copied, as they're edited in
+	 * place. If the plane misses the brush (or only glances it), this brush itself is
+	 * returned for its side.
+	 *
 	 * @param plane the splitting plane.
 	 * @param returnPositive return the new convex brush on the positive side of the plane (with normal).
 	 * @param returnNegative return the new convex brush on the negative side of the plane.
 	 *
-	 * @return a brush array. Get the brushes by e.g. carve(plane, true, false)[Brush.POSITIVE_SIDE]
+	 * @return a brush array. Get the brushes by e.g. carve(plane, true, false)[Brush.POSITIVE_SIDE];
+	 *         an entry is null if it wasn't asked for or there's nothing on that side.
 	 */
 	public Brush[] carve(Plane plane, boolean returnPositive, boolean returnNegative) {
-		// todo for each face, the plane either:
-		// a) misses the face;
-		// b) glances the face (some edge of the face is on the plane)
-		// c) splits the face.
-		return null;
+		Brush[] result = new Brush[2];
+
+		// for each vertex, the plane is either behind, in front of, or going through it.
+		int[] side = new int[vertices.size];
+		float[] distance = new float[vertices.size];
+		boolean anyPositive = false, anyNegative = false;
+		for (int v = 0; v < vertices.size; ++v) {
+			distance[v] = plane.distance(vertices.get(v));
+			if (distance[v] > LocalMath.EPSILON) {
+				side[v] = 1;
+				anyPositive = true;
+			} else if (distance[v] < -LocalMath.EPSILON) {
+				side[v] = -1;
+				anyNegative = true;
+			}
+		}
+
+		// the plane misses (or glances) the brush; it's all on one side.
+		if (!anyPositive || !anyNegative) {
+			if (anyPositive && returnPositive) result[POSITIVE_SIDE] = this;
+			if (anyNegative && returnNegative) result[NEGATIVE_SIDE] = this;
+			return result;
+		}
+
+		// find where the plane splits each crossed edge, once for both sides.
+		EdgeMap splitIndex = new EdgeMap();
+		Array<Vector3> splits = new Array<Vector3>();
+		for (Face face: faces) {
+			int[] ids = face.getLoop();
+			for (int i = 0; i < ids.length; ++i) {
+				int a = ids[i], b = ids[(i+1) % ids.length];
+				if (side[a] * side[b] >= 0) continue;
+				if (!splitIndex.add(a, b, vertices.size + splits.size)) continue;
+
+				int lo = Math.min(a, b), hi = Math.max(a, b);
+				float t = distance[lo] / (distance[lo] - distance[hi]);
+				splits.add(vertices.get(hi).cpy().sub(vertices.get(lo)).scl(t).add(vertices.get(lo)));
+			}
+		}
+
+		if (returnPositive) result[POSITIVE_SIDE] = carveSide(1, side, splitIndex, splits);
+		if (returnNegative) result[NEGATIVE_SIDE] = carveSide(-1, side, splitIndex, splits);
+		for (Brush half: result) {
+			if (half != null) half.surfaces = surfaces; // the faces that were cut still face the same way
+		}
+		return result;
+	}
+
+	/**
+	 * Build the part of this brush on one side of a plane, plus the new face on the plane.
+	 * Vertex ids below vertices.size are ours; the rest index into splits.
+	 *
+	 * @param keep 1 for the positive side, -1 for the negative side.
+	 * @return the new brush, or null if the cut face couldn't be closed (degenerate input).
+	 */
+	private Brush carveSide(int keep, int[] side, EdgeMap splitIndex, Array<Vector3> splits) {
+		int[] remap = numberSide(keep, side, splits.size);
+		int numVertices = 0;
+		for (int id: remap) {
+			numVertices = Math.max(numVertices, id + 1);
+		}
+		Vector3[] placed = new Vector3[numVertices];
+		for (int id = 0; id < remap.length; ++id) {
+			if (remap[id] < 0) continue;
+			placed[remap[id]] = id < vertices.size ? vertices.get(id).cpy() : splits.get(id - vertices.size).cpy();
+		}
+		Array<Vector3> newVertices = new Array<Vector3>(placed);
+		Array<Face> newFaces = new Array<Face>();
+
+		IntIntMap capNext = new IntIntMap();
+		IntArray loop = new IntArray();
+		for (Face face: faces) {
+			int[] original = face.getLoop();
+
+			loop.clear();
+			boolean same = true; // the plane doesn't touch this face, and its vertices kept their places
+			for (int i = 0; i < original.length; ++i) {
+				int a = original[i], b = original[(i+1) % original.length];
+				if (side[a] != -keep) loop.add(a);
+				if (side[a] * side[b] < 0) loop.add(splitIndex.get(a, b, -1));
+				same &= side[a] != -keep && remap[a] == a;
+			}
+			if (loop.size < 3) continue; // the face is entirely on the other side.
+
+			int[] ids;
+			if (same && loop.size == original.length) {
+				ids = original; // faces never modify their loops, so it can be shared.
+			} else {
+				ids = new int[loop.size];
+				for (int i = 0; i < loop.size; ++i) {
+					ids[i] = remap[loop.get(i)];
+				}
+			}
+
+			// edges lying on the plane border the new face, which walks them the other way.
+			for (int i = 0; i < loop.size; ++i) {
+				int a = loop.get(i), b = loop.get((i+1) % loop.size);
+				if (isOnPlane(a, side) && isOnPlane(b, side)) {
+					capNext.put(remap[b], remap[a]);
+				}
+			}
+
+			newFaces.add(new Face(ids));
+		}
+
+		// chain the new face together.
+		if (capNext.size < 3) return null;
+		int[] cap = new int[capNext.size];
+		int start = capNext.keys().next(), v = start, k = 0;
+		do {
+			if (k == cap.length) return null;
+			cap[k++] = v;
+			v = capNext.get(v, -1);
+			if (v < 0) return null;
+		} while (v != start);
+		if (k != cap.length) return null;
+		newFaces.add(new Face(cap));
+
+		return new Brush(newVertices, newFaces);
+	}
+
+	/**
+	 * Numbers the vertices of one side: ours that survive keep their index if they can, and
+	 * split points (ids vertices.size and up) go into the gaps left by the ones that don't.
+	 * If there are more gaps than split points, vertices from the end move down to close them.
+	 *
+	 * @return the new index of every id, or -1 if it's on the other side.
+	 */
+	private int[] numberSide(int keep, int[] side, int numSplits) {
+		int n = vertices.size;
+		int[] remap = new int[n + numSplits];
+		int numKept = 0;
+		for (int v = 0; v < n; ++v) {
+			if (side[v] != -keep) numKept++;
+		}
+		int size = numKept + numSplits;
+
+		// everything that can't stay where it is goes into the next free slot: a gap, or once
+		// those run out, past the end of ours. There are exactly enough of them below size.
+		int slot = 0;
+		for (int id = 0; id < remap.length; ++id) {
+			if (id < n && side[id] == -keep) {
+				remap[id] = -1;
+			} else if (id < n && id < size) {
+				remap[id] = id;
+			} else {
+				while (slot < n && side[slot] != -keep) slot++;
+				remap[id] = slot++;
+			}
+		}
+		return remap;
+	}
+
+	private boolean isOnPlane(int id, int[] side) {
+		return id >= vertices.size || side[id] == 0;
 	}
 
 	public Array<Face> getFaces() {
@@ -236,67 +733,155 @@ public class Brush implements RenderableProvider {
 	}
 
 	/**
-	 * Compares the list of Faces and vertices differently (topologically).
-	 * 1. Find a mapping that is one-to-one and onto from the vertex
-	 *    indices of this brush to the vertex indices of the other.
-	 * 2. Re-write our Face edge lists in terms of the other brush's vertex indices.
-	 * 3. Require that each re-written Face from our faces topologically
-	 *    equals some face in the other object.
-	 * @param o the object to compare to.
-	 * @return true, if both Brush objects represent the same geometry, false otherwise.
+	 * Brushes with an id always get the same colour for it; others take the next one going.
 	 */
-	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
+	public Color getColour() {
+		Color c = colour;
+		if (c == null) {
+			c = id != 0 ? ColourManager.forId(id) : ColourManager.next();
+			colour = c;
+		}
+		return c;
+	}
 
-		Brush other  = (Brush) o;
+	public int getId() {
+		return id;
+	}
 
-		if (other.vertices.size != vertices.size) return false;
-		if (other.faces.size != faces.size) return false;
+	/**
+	 * Also picks this brush's colour to match the id; anything already built with the old
+	 * colour (e.g. a WorldBatch chunk) needs updating.
+	 */
+	public void setId(int id) {
+		this.id = id;
+		this.colour = id != 0 ? ColourManager.forId(id) : null;
+		this.material = null;
+	}
 
-		// first map vertices, _map[i] -> the index of i in other
-		int[] _map = new int[vertices.size];
-		for (int i = 0; i < vertices.size; ++i) {
-			Vector3 v_this = this.vertices.get(i);
+	/**
+	 * @return how each side looked when this brush was read (e.g. from a VMF), in no particular
+	 *         order; null if it wasn't. Don't modify it.
+	 */
+	public Array<Surface> getSurfaces() {
+		return surfaces;
+	}
 
-			for (int j = 0; j < vertices.size; ++j) {
-				Vector3 v_other = other.vertices.get(j);
+	public void setSurfaces(Array<Surface> surfaces) {
+		this.surfaces = surfaces;
+	}
 
-				if (v_this.equals(v_other)) {
-					_map[i] = j;
-				}
+	/**
+	 * Faces are matched to surfaces by direction, so a face keeps its surface when it's moved
+	 * or tilted a little, but not when it's turned right round.
+	 *
+	 * @return the surface facing most nearly the same way as the face, or null if there's
+	 *         none within SURFACE_COS of it (e.g. the new face of a carve).
+	 */
+	public Surface getSurface(int face) {
+		if (surfaces == null) return null;
+		Vector3 normal = faces.get(face).getPlane().normal;
+		Surface best = null;
+		float bestDot = SURFACE_COS;
+		for (Surface surface: surfaces) {
+			float dot = surface.getNormal().dot(normal);
+			if (dot >= bestDot) {
+				bestDot = dot;
+				best = surface;
 			}
 		}
+		return best;
+	}
 
-		// create expected faces (based on mapping),
-		// then look for them in the other object
-		for (int i = 0; i < faces.size; ++i) {
+	/**
+	 * @return the axis-aligned bounds of this brush, as of the last updateBounds(). Don't modify it.
+	 */
+	public BoundingBox getBounds() {
+		return bounds;
+	}
 
-			Array<int[]> expectedFaceEdges = new Array<int[]>();
-			for (int[] edge: faces.get(i).getEdges()) {
-				expectedFaceEdges.add(new int[] {
-					_map[edge[LocalMath.EDGE_START]],
-					_map[edge[LocalMath.EDGE_END]]
-				});
-			}
+	/**
+	 * @return a number that changes every time updateBounds() is called, i.e. whenever the
+	 *         geometry has changed. Only good for comparing against an earlier value.
+	 */
+	public int getRevision() {
+		return revision;
+	}
 
-			Face expectedFace = new Face(expectedFaceEdges);
-			if (!other.faces.contains(expectedFace, false)) {
-				System.out.println("Couldn't find " + expectedFace.toString2(vertices));
-				return false;
+	/**
+	 * Must be called after moving any vertices: works out every face's plane again, as well
+	 * as the bounds. Anything that goes by the planes (intersect(), the mesh's normals,
+	 * getSurface()) is stale until then.
+	 */
+	public void updateBounds() {
+		for (Face face: faces) {
+			face.updatePlane(vertices);
+		}
+		updateExtent();
+	}
+
+	private void updateExtent() {
+		revision++;
+		bounds.inf();
+		for (Vector3 v: vertices) {
+			bounds.ext(v);
+		}
+	}
+
+	/**
+	 * Clip a ray against every face plane.
+	 *
+	 * @return the distance along the ray (in units of its direction) to where it enters the
+	 *         brush (0 if it starts inside), or Float.POSITIVE_INFINITY if it misses.
+	 */
+	public float intersect(Ray ray) {
+		float enter = 0f, exit = Float.POSITIVE_INFINITY;
+		for (Face face: faces) {
+			Plane plane = face.getPlane();
+			float dist = plane.distance(ray.origin);
+			float speed = plane.normal.dot(ray.direction);
+			if (speed == 0f) {
+				if (dist > 0f) return Float.POSITIVE_INFINITY; // parallel, and outside this face.
+			} else if (speed < 0f) {
+				enter = Math.max(enter, -dist / speed);
+			} else {
+				exit = Math.min(exit, -dist / speed);
 			}
+			if (enter > exit) return Float.POSITIVE_INFINITY;
+		}
+		return enter;
+	}
 
+	/**
+	 * The shape of this brush, independent of vertex and face order. Worked out on first use
+	 * and kept until the geometry changes (i.e. until the next updateBounds()).
+	 */
+	public BrushFingerprint getFingerprint() {
+		BrushFingerprint f = fingerprint;
+		if (f == null || f.getRevision() != revision) {
+			f = BrushFingerprint.of(this);
+			fingerprint = f;
 		}
+		return f;
+	}
 
-		return true;
+	/**
+	 * Two brushes are equal if they're the same solid: the same vertices (to within
+	 * BrushFingerprint.QUANTUM), and faces made of the same vertices, whatever order either
+	 * keeps them in. Compares fingerprints, so it's quick past the first call.
+	 *
+	 * @param o the object to compare to.
+	 * @return true, if both Brush objects represent the same geometry, false otherwise.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		return getFingerprint().equals(((Brush) o).getFingerprint());
 	}
 
 	@Override
 	public int hashCode() {
-		int result = faces.hashCode();
-		result = 31 * result + vertices.hashCode();
-		return result;
+		return getFingerprint().hashCode();
 	}
 
 	@Override
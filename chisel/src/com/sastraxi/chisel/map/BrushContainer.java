@@ -2,23 +2,221 @@ package com.sastraxi.chisel.map;
 
 import com.badlogic.gdx.graphics.g3d.Renderable;
 import com.badlogic.gdx.graphics.g3d.RenderableProvider;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.collision.Ray;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectSet;
 import com.badlogic.gdx.utils.Pool;
+import com.sastraxi.chisel.math.BoundsTree;
+import com.sastraxi.chisel.math.VertexWelder;
+import com.sastraxi.chisel.tasks.Tasks;
 
 public class BrushContainer implements RenderableProvider {
 
+	/**
+	 * Carving a brush is cheap; don't bother the worker pool with fewer than this many.
+	 */
+	private static final int CARVE_GRAIN = 64;
+	private static final int FINGERPRINT_GRAIN = 256;
+
 	public Array<Brush> brushes;
 
+	/**
+	 * Bounding volume hierarchy over every brush, kept up to date as brushes come and go.
+	 */
+	private final BoundsTree<Brush> tree = new BoundsTree<Brush>();
+	private final IdentityMap<Brush, Slot> slots = new IdentityMap<Brush, Slot>();
+
+	/**
+	 * Where a brush is: its proxy in the tree, and its index in brushes.
+	 */
+	private static final class Slot {
+		final int proxy;
+		int index;
+
+		Slot(int proxy, int index) {
+			this.proxy = proxy;
+			this.index = index;
+		}
+	}
+
+	private static final BoundsTree.RayTest<Brush> RAY_TEST = new BoundsTree.RayTest<Brush>() {
+		@Override
+		public float intersect(Brush brush, Ray ray) {
+			return brush.intersect(ray);
+		}
+	};
+
 	public BrushContainer() {
 		this.brushes = new Array<Brush>();
 	}
 
 	public void add(Brush brush) {
+		slots.put(brush, new Slot(tree.insert(brush.getBounds(), brush), this.brushes.size));
 		this.brushes.add(brush);
 	}
 
 	public void addAll(Array<Brush> brushes) {
-		this.brushes.addAll(brushes);
+		for (Brush brush: brushes) {
+			add(brush);
+		}
+	}
+
+	/**
+	 * The last brush takes the removed one's place in brushes, so this doesn't have to
+	 * search or shift anything.
+	 */
+	public void remove(Brush brush) {
+		Slot slot = slots.remove(brush);
+		if (slot == null) return;
+		tree.remove(slot.proxy);
+		Brush last = brushes.pop();
+		if (last != brush) {
+			brushes.set(slot.index, last);
+			slots.get(last).index = slot.index;
+		}
+	}
+
+	/**
+	 * Must be called after changing the geometry of a brush in this container.
+	 */
+	public void update(Brush brush) {
+		brush.updateBounds();
+		tree.update(slots.get(brush).proxy, brush.getBounds());
+	}
+
+	/**
+	 * Anyone changing brushes directly (rather than through add/remove/update) must call this.
+	 */
+	public void invalidate() {
+		tree.clear();
+		slots.clear();
+		for (int i = 0; i < brushes.size; ++i) {
+			Brush brush = brushes.get(i);
+			slots.put(brush, new Slot(tree.insert(brush.getBounds(), brush), i));
+		}
+	}
+
+	/**
+	 * @param hit if not null, hit[0] receives the distance along the ray.
+	 * @return the first brush hit by the ray, or null.
+	 */
+	public Brush pick(Ray ray, float[] hit) {
+		return tree.raycast(ray, RAY_TEST, hit);
+	}
+
+	/**
+	 * Adds every brush that may be visible through the frustum to out.
+	 */
+	public void getBrushes(Frustum frustum, Array<Brush> out) {
+		tree.query(frustum, out);
+	}
+
+	/**
+	 * Adds every brush whose bounds overlap the box to out.
+	 */
+	public void getBrushes(BoundingBox box, Array<Brush> out) {
+		tree.query(box, out);
+	}
+
+	/**
+	 * @return the brush whose bounds are closest to the point (or contain it), or null if empty.
+	 */
+	public Brush getNearest(Vector3 point) {
+		return tree.nearest(point);
+	}
+
+	/**
+	 * Finds brushes that are the same solid as one earlier in brushes (pasted twice in place,
+	 * say). Fingerprints are worked out on the worker pool, then it's one hash lookup per brush.
+	 *
+	 * @param out receives each duplicate (but not the first of its kind).
+	 * @return how many were found.
+	 */
+	public int findDuplicates(Array<Brush> out) {
+		Tasks.parallelFor(brushes.size, FINGERPRINT_GRAIN, new Tasks.Range() {
+			@Override
+			public void run(int from, int to) {
+				for (int i = from; i < to; ++i) {
+					brushes.get(i).getFingerprint();
+				}
+			}
+		});
+		ObjectSet<BrushFingerprint> seen = new ObjectSet<BrushFingerprint>(brushes.size);
+		int found = 0;
+		for (Brush brush: brushes) {
+			if (!seen.add(brush.getFingerprint())) {
+				out.add(brush);
+				found++;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Carve every brush in this container with the same plane, spreading the work over
+	 * the worker pool. Does not modify the container or any of its brushes.
+	 *
+	 * @see Brush#carve(Plane, boolean, boolean)
+	 * @return one Brush.carve result per brush, in the same order as brushes.
+	 */
+	public Brush[][] carve(final Plane plane, final boolean returnPositive, final boolean returnNegative) {
+		final Brush[][] results = new Brush[brushes.size][];
+		Tasks.parallelFor(brushes.size, CARVE_GRAIN, new Tasks.Range() {
+			@Override
+			public void run(int from, int to) {
+				for (int i = from; i < to; ++i) {
+					results[i] = brushes.get(i).carve(plane, returnPositive, returnNegative);
+				}
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * Snap together vertices of different brushes that are within tolerance of each other
+	 * (hairline cracks in an imported map, say), moving each onto the first one seen. A brush's
+	 * vertices are never merged with each other, nor moved onto the same spot, so no brush
+	 * loses any.
+	 *
+	 * @return how many vertices moved.
+	 */
+	public int weld(float tolerance) {
+		int total = 0;
+		for (Brush brush: brushes) {
+			total += brush.getVertices().size;
+		}
+		VertexWelder welder = new VertexWelder(tolerance, total);
+		IntArray owners = new IntArray(total);
+		IntArray targets = new IntArray();
+		Vector3 target = new Vector3();
+		int moved = 0;
+		for (int b = 0; b < brushes.size; ++b) {
+			Brush brush = brushes.get(b);
+			boolean changed = false;
+			targets.clear();
+			for (Vector3 v: brush.getVertices()) {
+				int i = welder.add(v);
+				if (i == owners.size) {
+					owners.add(b);
+				} else if (owners.get(i) != b && !targets.contains(i) && !welder.get(i, target).equals(v)) {
+					targets.add(i);
+					v.set(target);
+					changed = true;
+					moved++;
+				}
+			}
+			if (changed) {
+				update(brush);
+				brush.invalidateMesh();
+			}
+		}
+		return moved;
 	}
 
 	@Override
@@ -0,0 +1,183 @@
+package com.sastraxi.chisel.map;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.math.Face;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The shape of a brush, written down so that it doesn't depend on the order its vertices
+ * or faces happen to be stored in, or where each face's loop starts. Two brushes with the
+ * same fingerprint are the same solid.
+ *
+ * Vertices are snapped to a grid of QUANTUM units and sorted; each face becomes the sorted
+ * list of its vertices' places in that order, and the faces are sorted in turn. As with
+ * Face.equals, a face is known by which vertices it has: on a convex solid that decides the
+ * loop, and the winding along with it. A 64-bit hash of the lot makes most comparisons a
+ * single test.
+ *
+ * Immutable; Brush makes one on demand and keeps it until the geometry changes.
+ */
+public final class BrushFingerprint {
+
+	/**
+	 * Vertices closer together than this may land in the same grid cell, and count as the
+	 * same point. (Points either side of a cell boundary never will, however close.)
+	 */
+	public static final double QUANTUM = 1.0 / 256.0;
+
+	private final int revision;
+	private final long[] vertices; // x y z per distinct vertex, in grid units, sorted
+	private final int[] faces;     // per face: arity, then its vertices (ascending)
+	private final long hash;
+
+	private BrushFingerprint(int revision, long[] vertices, int[] faces) {
+		this.revision = revision;
+		this.vertices = vertices;
+		this.faces = faces;
+
+		long h = mix(vertices.length);
+		for (long q: vertices) h = mix(h ^ q);
+		for (int i: faces) h = mix(h ^ i);
+		this.hash = h;
+	}
+
+	static BrushFingerprint of(Brush brush) {
+		Array<Vector3> points = brush.getVertices();
+		Array<Face> brushFaces = brush.getFaces();
+
+		// snap, then sort the vertices by (x, y, z).
+		int n = points.size;
+		long[] q = new long[3 * n];
+		for (int i = 0; i < n; ++i) {
+			Vector3 v = points.get(i);
+			q[3*i]   = Math.round(v.x / QUANTUM);
+			q[3*i+1] = Math.round(v.y / QUANTUM);
+			q[3*i+2] = Math.round(v.z / QUANTUM);
+		}
+		int[] order = new int[n];
+		for (int i = 0; i < n; ++i) order[i] = i;
+		sort(order, q);
+
+		// number them in sorted order; vertices that snapped together share a number.
+		int[] rank = new int[n];
+		long[] sorted = new long[3 * n];
+		int distinct = 0;
+		for (int k = 0; k < n; ++k) {
+			int i = order[k];
+			if (k == 0 || compare(q, i, order[k-1]) != 0) {
+				System.arraycopy(q, 3*i, sorted, 3*distinct, 3);
+				distinct++;
+			}
+			rank[i] = distinct - 1;
+		}
+		if (distinct < n) sorted = Arrays.copyOf(sorted, 3 * distinct);
+
+		// each face's vertices in order, then the faces in order.
+		int[][] loops = new int[brushFaces.size][];
+		int total = 0;
+		for (int f = 0; f < brushFaces.size; ++f) {
+			int[] loop = brushFaces.get(f).getLoop();
+			int[] ranks = new int[loop.length];
+			for (int i = 0; i < loop.length; ++i) ranks[i] = rank[loop[i]];
+			Arrays.sort(ranks);
+			loops[f] = ranks;
+			total += 1 + ranks.length;
+		}
+		Arrays.sort(loops, LOOP_ORDER);
+		int[] faces = new int[total];
+		int k = 0;
+		for (int[] loop: loops) {
+			faces[k++] = loop.length;
+			System.arraycopy(loop, 0, faces, k, loop.length);
+			k += loop.length;
+		}
+
+		return new BrushFingerprint(brush.getRevision(), sorted, faces);
+	}
+
+	/**
+	 * @return the brush revision this was made from.
+	 */
+	int getRevision() {
+		return revision;
+	}
+
+	public long getHash() {
+		return hash;
+	}
+
+	public int getNumVertices() {
+		return vertices.length / 3;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof BrushFingerprint)) return false;
+		BrushFingerprint other = (BrushFingerprint) o;
+		return hash == other.hash && Arrays.equals(vertices, other.vertices) && Arrays.equals(faces, other.faces);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BrushFingerprint(%016x)", hash);
+	}
+
+	private static final Comparator<int[]> LOOP_ORDER = new Comparator<int[]>() {
+		@Override
+		public int compare(int[] a, int[] b) {
+			if (a.length != b.length) return a.length < b.length ? -1 : 1;
+			for (int i = 0; i < a.length; ++i) {
+				if (a[i] != b[i]) return a[i] < b[i] ? -1 : 1;
+			}
+			return 0;
+		}
+	};
+
+	private static int compare(long[] q, int i, int j) {
+		for (int k = 0; k < 3; ++k) {
+			long a = q[3*i+k], b = q[3*j+k];
+			if (a != b) return a < b ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Merge sort of vertex indices by their snapped coordinates, without boxing them.
+	 */
+	private static void sort(int[] order, long[] q) {
+		int[] from = order, to = new int[order.length];
+		for (int width = 1; width < order.length; width *= 2) {
+			for (int lo = 0; lo < order.length; lo += 2 * width) {
+				int mid = Math.min(lo + width, order.length), hi = Math.min(lo + 2 * width, order.length);
+				int a = lo, b = mid, k = lo;
+				while (a < mid && b < hi) to[k++] = compare(q, from[a], from[b]) <= 0 ? from[a++] : from[b++];
+				while (a < mid) to[k++] = from[a++];
+				while (b < hi) to[k++] = from[b++];
+			}
+			int[] t = from; from = to; to = t;
+		}
+		if (from != order) System.arraycopy(from, 0, order, 0, order.length);
+	}
+
+	/**
+	 * The 64-bit finalizer from MurmurHash3.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9a62c3f7e3bL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
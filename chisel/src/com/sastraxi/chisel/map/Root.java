@@ -1,9 +1,9 @@
 package com.sastraxi.chisel.map;
 
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.OrderedMap;
 import com.sastraxi.chisel.map.entities.Entity;
-import com.sastraxi.chisel.map.entities.PointEntity;
-
-import java.util.ArrayList;
+import com.sastraxi.chisel.map.vmf.VmfSource;
 
 public class Root {
 
@@ -12,7 +12,37 @@ public class Root {
 	// for now, follow hammer/VMF to a "T".
 	// make decisions to change when they provide a very tangible benefit.
 
-	private BrushContainer world;
+	private final BrushContainer world = new BrushContainer();
+	private final OrderedMap<String, String> worldProperties = new OrderedMap<String, String>();
+	private final Array<Entity> entities = new Array<Entity>();
+	private VmfSource source = null;
 	// private GameConfiguration config;
 
+	public BrushContainer getWorld() {
+		return world;
+	}
+
+	/**
+	 * Key/values of the world itself (worldspawn), e.g. "skyname"; in file order.
+	 */
+	public OrderedMap<String, String> getWorldProperties() {
+		return worldProperties;
+	}
+
+	public Array<Entity> getEntities() {
+		return entities;
+	}
+
+	/**
+	 * Where everything came from in the VMF it was last read from or saved to, so that saving
+	 * again only has to rewrite what changed. Null if there's no such file.
+	 */
+	public VmfSource getSource() {
+		return source;
+	}
+
+	public void setSource(VmfSource source) {
+		this.source = source;
+	}
+
 }
@@ -0,0 +1,59 @@
+package com.sastraxi.chisel.map;
+
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * How one side of a brush looks: its material, texture axes, lightmap scale and so on, kept
+ * as the key/values it was read with (e.g. from a VMF side) so they can be written back as
+ * they were. A surface knows which way its side faced, not which face it is; see
+ * Brush.getSurface().
+ *
+ * Immutable, so the brushes carved out of a brush can share its surfaces.
+ */
+public class Surface {
+
+	private final Vector3 normal;
+	private final String[] properties; // key, value, key, value...
+
+	/**
+	 * @param normal which way the side faced; kept, not copied.
+	 * @param properties keys and values, alternating; kept, not copied.
+	 */
+	public Surface(Vector3 normal, String[] properties) {
+		this.normal = normal;
+		this.properties = properties;
+	}
+
+	/**
+	 * Don't modify it.
+	 */
+	public Vector3 getNormal() {
+		return normal;
+	}
+
+	/**
+	 * @return the number of key/values.
+	 */
+	public int size() {
+		return properties.length / 2;
+	}
+
+	public String getKey(int i) {
+		return properties[2 * i];
+	}
+
+	public String getValue(int i) {
+		return properties[2 * i + 1];
+	}
+
+	/**
+	 * @return the value for the key, or null if there isn't one.
+	 */
+	public String get(String key) {
+		for (int i = 0; i < properties.length; i += 2) {
+			if (properties[i].equals(key)) return properties[i + 1];
+		}
+		return null;
+	}
+
+}
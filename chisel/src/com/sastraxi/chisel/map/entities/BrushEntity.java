@@ -6,4 +6,12 @@ public class BrushEntity extends Entity {
 
 	BrushContainer tiedBrushes;
 
+	public BrushEntity(BrushContainer tiedBrushes) {
+		this.tiedBrushes = tiedBrushes;
+	}
+
+	public BrushContainer getTiedBrushes() {
+		return tiedBrushes;
+	}
+
 }
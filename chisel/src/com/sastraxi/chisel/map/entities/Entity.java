@@ -1,5 +1,7 @@
 package com.sastraxi.chisel.map.entities;
 
+import com.badlogic.gdx.utils.OrderedMap;
+
 /**
  * A system that can react to inputs, send to outputs, and has a bunch of properties
  * that set in-game rules.
@@ -12,4 +14,28 @@ public class Entity {
 	// EntityClass entityClass;
 	// e.g. entityClass = GameConfiguration.getEntityClass("light_environment");
 
+	// every key/value, as they were in the VMF (including "id" and "classname")
+	private final OrderedMap<String, String> properties = new OrderedMap<String, String>();
+
+	public OrderedMap<String, String> getProperties() {
+		return properties;
+	}
+
+	public String getClassName() {
+		return properties.get("classname");
+	}
+
+	/**
+	 * @return the VMF id, or 0 if there isn't one.
+	 */
+	public int getId() {
+		String id = properties.get("id");
+		if (id == null) return 0;
+		try {
+			return Integer.parseInt(id);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
 }
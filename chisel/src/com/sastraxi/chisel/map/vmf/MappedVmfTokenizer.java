@@ -0,0 +1,314 @@
+package com.sastraxi.chisel.map.vmf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Tokenizes VMF text straight out of a ByteBuffer: a memory-mapped file (see open()), or
+ * one read onto the heap in one go (see load()).
+ *
+ * Nothing is copied: tokens are just ranges of the buffer. Numbers are parsed from the
+ * bytes themselves, and a String only gets made when someone calls toString() on getText()
+ * (i.e. for the key/values we actually keep). Bytes are treated as Latin-1, so offsets
+ * are in bytes and match StreamVmfTokenizer's for the same file.
+ */
+public class MappedVmfTokenizer extends VmfTokenizer {
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+		}
+	}
+
+	/**
+	 * Mantissas past this many digits don't fit exactly in a double.
+	 */
+	private static final int MAX_DIGITS = 15;
+
+	private final ByteBuffer buffer;
+	private final int limit;
+	private int position;
+
+	private int line = 1;
+	private int tokenStart = 0;
+	private int textStart = 0, textEnd = 0;
+
+	/**
+	 * getText(), without the copy.
+	 */
+	private final CharSequence text = new CharSequence() {
+		@Override
+		public int length() {
+			return textEnd - textStart;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buffer.get(textStart + index) & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().substring(start, end);
+		}
+
+		@Override
+		public String toString() {
+			char[] chars = new char[textEnd - textStart];
+			for (int i = 0; i < chars.length; ++i) {
+				chars[i] = (char) (buffer.get(textStart + i) & 0xFF);
+			}
+			return new String(chars);
+		}
+	};
+
+	/**
+	 * Tokenizes the buffer from its current position up to its limit.
+	 */
+	public MappedVmfTokenizer(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.position = buffer.position();
+		this.limit = buffer.limit();
+	}
+
+	/**
+	 * Map a whole file (which must be under 2GB). The mapping outlives the file handle, and
+	 * until it's garbage collected some systems (Windows) won't let the file be replaced or
+	 * deleted; use load() for a file that might be saved over.
+	 */
+	public static MappedVmfTokenizer open(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			return new MappedVmfTokenizer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Read a whole file (which must be under 2GB) onto the heap; nothing holds on to the
+	 * file once this returns.
+	 */
+	public static MappedVmfTokenizer load(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) throw new IOException(file + " got shorter while reading it");
+			}
+			buffer.flip();
+			return new MappedVmfTokenizer(buffer);
+		} finally {
+			in.close();
+		}
+	}
+
+	@Override
+	public int next() throws IOException {
+		// skip whitespace and // comments
+		while (true) {
+			if (position >= limit) {
+				tokenStart = textStart = textEnd = position;
+				return type = EOF;
+			}
+			byte c = buffer.get(position);
+			if (c == '\n') {
+				line++;
+				position++;
+			} else if (c >= 0 && c <= ' ') {
+				position++;
+			} else if (c == '/' && position + 1 < limit && buffer.get(position + 1) == '/') {
+				while (position < limit && buffer.get(position) != '\n') {
+					position++;
+				}
+			} else {
+				break;
+			}
+		}
+
+		tokenStart = position;
+		byte c = buffer.get(position++);
+		if (c == '{') return type = OPEN;
+		if (c == '}') return type = CLOSE;
+
+		if (c == '"') {
+			textStart = position;
+			while (position < limit && (c = buffer.get(position)) != '"') {
+				if (c == '\n') line++;
+				position++;
+			}
+			if (position >= limit) throw error("unterminated string");
+			textEnd = position++;
+			return type = STRING;
+		}
+
+		textStart = tokenStart;
+		while (position < limit) {
+			c = buffer.get(position);
+			if ((c >= 0 && c <= ' ') || c == '{' || c == '}' || c == '"') break;
+			position++;
+		}
+		textEnd = position;
+		return type = NAME;
+	}
+
+	@Override
+	public CharSequence getText() {
+		return text;
+	}
+
+	@Override
+	public boolean is(String s) {
+		if (textEnd - textStart != s.length()) return false;
+		for (int i = 0; i < s.length(); ++i) {
+			if ((buffer.get(textStart + i) & 0xFF) != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Parsed from the bytes. Integers (the usual case for plane points) come out exactly as
+	 * Float.parseFloat would have them; decimals to within one ulp of it.
+	 */
+	@Override
+	public int getNumbers(float[] out) {
+		int n = 0, i = textStart;
+		while (i < textEnd) {
+			int ch = buffer.get(i) & 0xFF;
+			if (isSeparator(ch)) {
+				i++;
+				continue;
+			}
+
+			int start = i;
+			boolean negative = false;
+			if (ch == '-' || ch == '+') {
+				negative = ch == '-';
+				i++;
+			}
+
+			long mantissa = 0;
+			int digits = 0, exponent = 0;
+			boolean any = false, exact = true;
+			for (; i < textEnd && isDigit(ch = buffer.get(i) & 0xFF); ++i) {
+				any = true;
+				if (digits < MAX_DIGITS) {
+					mantissa = mantissa * 10 + (ch - '0');
+					if (mantissa != 0) digits++;
+				} else {
+					exponent++;
+					exact = false;
+				}
+			}
+			if (i < textEnd && ch == '.') {
+				for (++i; i < textEnd && isDigit(ch = buffer.get(i) & 0xFF); ++i) {
+					any = true;
+					if (digits < MAX_DIGITS) {
+						mantissa = mantissa * 10 + (ch - '0');
+						if (mantissa != 0) digits++;
+						exponent--;
+					} else {
+						exact = false;
+					}
+				}
+			}
+			if (any && i < textEnd && (ch == 'e' || ch == 'E')) {
+				int e = 0, sign = 1;
+				i++;
+				if (i < textEnd && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+					sign = buffer.get(i) == '-' ? -1 : 1;
+					i++;
+				}
+				boolean expDigits = false;
+				for (; i < textEnd && isDigit(ch = buffer.get(i) & 0xFF); ++i) {
+					expDigits = true;
+					if (e < 10000) e = e * 10 + (ch - '0');
+				}
+				if (!expDigits) any = false;
+				exponent += sign * e;
+			}
+
+			if (!any || (i < textEnd && !isSeparator(buffer.get(i) & 0xFF))) {
+				// not something we understand; let the JDK have a go (and complain).
+				while (i < textEnd && !isSeparator(buffer.get(i) & 0xFF)) i++;
+				float value;
+				try {
+					value = Float.parseFloat(slice(start, i));
+				} catch (NumberFormatException e) {
+					return -1;
+				}
+				if (n < out.length) out[n] = value;
+				n++;
+				continue;
+			}
+
+			if (n < out.length) {
+				double value;
+				if (exact && exponent >= -22 && exponent <= 22) {
+					value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+				} else {
+					value = Double.parseDouble(slice(start, i));
+				}
+				out[n] = (float) (negative ? -value : value);
+			}
+			n++;
+		}
+		return n;
+	}
+
+	@Override
+	public int getInt() throws VmfException {
+		int i = textStart;
+		boolean negative = false;
+		if (i < textEnd && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+		if (i == textEnd) throw error("bad integer \"" + text + "\"");
+		long value = 0;
+		for (; i < textEnd; ++i) {
+			int ch = buffer.get(i) & 0xFF;
+			if (!isDigit(ch)) throw error("bad integer \"" + text + "\"");
+			value = value * 10 + (ch - '0');
+			if (value > Integer.MAX_VALUE + 1L) throw error("integer out of range \"" + text + "\"");
+		}
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) throw error("integer out of range \"" + text + "\"");
+		return (int) value;
+	}
+
+	private static boolean isDigit(int ch) {
+		return ch >= '0' && ch <= '9';
+	}
+
+	private String slice(int from, int to) {
+		char[] chars = new char[to - from];
+		for (int i = 0; i < chars.length; ++i) {
+			chars[i] = (char) (buffer.get(from + i) & 0xFF);
+		}
+		return new String(chars);
+	}
+
+	@Override
+	public long getTokenStart() {
+		return tokenStart;
+	}
+
+	@Override
+	public long getTokenEnd() {
+		return position;
+	}
+
+	@Override
+	public int getLine() {
+		return line;
+	}
+
+}
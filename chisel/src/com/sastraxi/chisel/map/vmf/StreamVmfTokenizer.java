@@ -0,0 +1,145 @@
+package com.sastraxi.chisel.map.vmf;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Tokenizes VMF text from a Reader, a buffer at a time, so a map never has to be in
+ * memory all at once. Offsets are in chars.
+ */
+public class StreamVmfTokenizer extends VmfTokenizer {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position = 0, limit = 0;
+	private long offset = 0; // of buffer[0] in the source, in chars
+
+	private int line = 1;
+	private long tokenStart = 0;
+	private final StringBuilder text = new StringBuilder();
+
+	public StreamVmfTokenizer(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * @return false at the end of the source.
+	 */
+	private boolean fill() throws IOException {
+		if (position < limit) return true;
+		offset += limit;
+		position = 0;
+		limit = 0;
+		int n;
+		do {
+			n = reader.read(buffer, 0, buffer.length);
+		} while (n == 0);
+		if (n < 0) return false;
+		limit = n;
+		return true;
+	}
+
+	@Override
+	public int next() throws IOException {
+		text.setLength(0);
+
+		// skip whitespace and // comments
+		while (true) {
+			if (!fill()) {
+				tokenStart = offset + position;
+				return type = EOF;
+			}
+			char c = buffer[position];
+			if (c == '\n') {
+				line++;
+				position++;
+			} else if (c <= ' ') {
+				position++;
+			} else if (c == '/' && peek(1) == '/') {
+				while (fill() && buffer[position] != '\n') {
+					position++;
+				}
+			} else {
+				break;
+			}
+		}
+
+		tokenStart = offset + position;
+		char c = buffer[position++];
+		if (c == '{') return type = OPEN;
+		if (c == '}') return type = CLOSE;
+
+		if (c == '"') {
+			while (true) {
+				if (!fill()) throw error("unterminated string");
+				int start = position;
+				while (position < limit && buffer[position] != '"') {
+					if (buffer[position] == '\n') line++;
+					position++;
+				}
+				text.append(buffer, start, position - start);
+				if (position < limit) {
+					position++; // closing quote
+					return type = STRING;
+				}
+			}
+		}
+
+		text.append(c);
+		while (fill()) {
+			c = buffer[position];
+			if (c <= ' ' || c == '{' || c == '}' || c == '"') break;
+			text.append(c);
+			position++;
+		}
+		return type = NAME;
+	}
+
+	/**
+	 * Look ahead without consuming anything; only ever needs to cross one buffer boundary.
+	 */
+	private int peek(int ahead) throws IOException {
+		if (position + ahead < limit) return buffer[position + ahead];
+		// shuffle what's left to the front and top the buffer up
+		int left = limit - position;
+		System.arraycopy(buffer, position, buffer, 0, left);
+		offset += position;
+		position = 0;
+		limit = left;
+		int n = reader.read(buffer, limit, buffer.length - limit);
+		if (n > 0) limit += n;
+		return ahead < limit ? buffer[ahead] : -1;
+	}
+
+	@Override
+	public CharSequence getText() {
+		return text;
+	}
+
+	@Override
+	public boolean is(String s) {
+		if (text.length() != s.length()) return false;
+		for (int i = 0; i < s.length(); ++i) {
+			if (text.charAt(i) != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public long getTokenStart() {
+		return tokenStart;
+	}
+
+	@Override
+	public long getTokenEnd() {
+		return offset + position;
+	}
+
+	@Override
+	public int getLine() {
+		return line;
+	}
+
+}
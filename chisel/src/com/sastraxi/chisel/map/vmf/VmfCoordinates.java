@@ -0,0 +1,45 @@
+package com.sastraxi.chisel.map.vmf;
+
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * Hammer is z-up; we're y-up (the grid is the x-z plane). This is a rotation, so
+ * handedness, winding and plane orientation all survive the trip.
+ */
+public class VmfCoordinates {
+
+	/**
+	 * (x, y, z) in VMF space -> (x, z, -y) in ours.
+	 */
+	public static Vector3 toWorld(Vector3 v) {
+		return v.set(v.x, v.z, -v.y);
+	}
+
+	/**
+	 * The inverse of toWorld.
+	 */
+	public static Vector3 toVmf(Vector3 v) {
+		return v.set(v.x, -v.z, v.y);
+	}
+
+	/**
+	 * Hammer's plane from three points: the normal is (a - b) x (c - b), pointing out of the solid.
+	 * The points must already be in our space.
+	 *
+	 * @return false if the points are (nearly) collinear, in which case out is left alone.
+	 */
+	public static boolean planeFromPoints(Vector3 a, Vector3 b, Vector3 c, Plane out) {
+		float ux = a.x - b.x, uy = a.y - b.y, uz = a.z - b.z;
+		float vx = c.x - b.x, vy = c.y - b.y, vz = c.z - b.z;
+		float nx = uy * vz - uz * vy;
+		float ny = uz * vx - ux * vz;
+		float nz = ux * vy - uy * vx;
+		float len = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (len < 1e-6f) return false;
+		out.normal.set(nx / len, ny / len, nz / len);
+		out.d = -out.normal.dot(b);
+		return true;
+	}
+
+}
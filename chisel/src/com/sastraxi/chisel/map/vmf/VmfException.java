@@ -0,0 +1,23 @@
+package com.sastraxi.chisel.map.vmf;
+
+import java.io.IOException;
+
+/**
+ * The VMF we were given doesn't make sense.
+ */
+public class VmfException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int line;
+
+	public VmfException(String message, int line) {
+		super("line " + line + ": " + message);
+		this.line = line;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+}
@@ -0,0 +1,434 @@
+package com.sastraxi.chisel.map.vmf;
+
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.OrderedMap;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.map.Root;
+import com.sastraxi.chisel.map.Surface;
+import com.sastraxi.chisel.map.entities.BrushEntity;
+import com.sastraxi.chisel.map.entities.Entity;
+import com.sastraxi.chisel.map.entities.PointEntity;
+import com.sastraxi.chisel.math.HalfspacePolygon;
+import com.sastraxi.chisel.tasks.Tasks;
+import com.sastraxi.chisel.trace.Trace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a VMF into a Root: the world's brushes and key/values, and every entity.
+ *
+ * The file is read once, front to back (see VmfTokenizer for the ways it can be read). Each
+ * solid's sides become an Array<Plane> as soon as they're parsed; solids are handed to the
+ * worker pool in batches to be turned into brushes (HalfspacePolygon.toConvex) while parsing
+ * carries on. Brushes end up in the same order as their solids were in the file.
+ *
+ * Geometry and key/values are kept, as is each side's look (its key/values bar "id" and
+ * "plane"; see Surface); displacements, editor and visgroup info etc. are skipped. Reading a
+ * File also records where everything was in it (see VmfSource), so that VmfWriter can leave
+ * the rest alone when saving.
+ */
+public class VmfReader {
+
+	/**
+	 * Solids per unit of work; a single solid is too little to be worth a trip to the pool.
+	 */
+	private static final int BATCH_SIZE = 32;
+
+	/**
+	 * A run of solids that all go into the same container.
+	 */
+	private static class Batch implements Callable<Brush[]> {
+		final BrushContainer target;
+		final Array<Array<Plane>> solids = new Array<Array<Plane>>(BATCH_SIZE);
+		final IntArray ids = new IntArray(BATCH_SIZE);
+		final Array<Array<Surface>> surfaces = new Array<Array<Surface>>(BATCH_SIZE);
+		final Array<VmfSource.Solid> spans = new Array<VmfSource.Solid>(BATCH_SIZE);
+		Future<Brush[]> result = null;
+
+		Batch(BrushContainer target) {
+			this.target = target;
+		}
+
+		@Override
+		public Brush[] call() {
+			Brush[] brushes = new Brush[solids.size];
+			for (int i = 0; i < solids.size; ++i) {
+				Array<Plane> planes = solids.get(i);
+				if (planes == null) continue; // had a bad side
+				// degenerate input can trip up (or trip assertions in) the enumeration fallback.
+				try {
+					brushes[i] = HalfspacePolygon.toConvex(planes);
+				} catch (RuntimeException e) {
+					failed(i, e);
+				} catch (AssertionError e) {
+					failed(i, e);
+				}
+				if (brushes[i] != null) {
+					brushes[i].setId(ids.get(i));
+					brushes[i].setSurfaces(surfaces.get(i));
+				}
+			}
+			return brushes;
+		}
+
+		private void failed(int i, Throwable e) {
+			if (Trace.enabled()) Trace.record(Trace.LOAD, "solid " + ids.get(i) + " failed: " + e);
+		}
+	}
+
+	private final VmfTokenizer tokens;
+	private final Root root = new Root();
+	private VmfSource source = null;
+
+	private final Array<Batch> batches = new Array<Batch>();
+	private Batch current = null;
+	private int numSolids = 0, numFailed = 0;
+
+	// side key/values repeat a lot (materials, "16", "0"...); keep one copy of each.
+	private final ObjectMap<String, String> strings = new ObjectMap<String, String>();
+	private final Array<String> properties = new Array<String>(String.class);
+
+	// scratch for parsing planes
+	private final float[] numbers = new float[9];
+	private final Vector3 a = new Vector3(), b = new Vector3(), c = new Vector3();
+
+	public VmfReader(Reader reader) {
+		this(new StreamVmfTokenizer(reader));
+	}
+
+	public VmfReader(VmfTokenizer tokens) {
+		this.tokens = tokens;
+	}
+
+	/**
+	 * Reads the file into memory in one go if it can, otherwise streams it. It isn't
+	 * memory-mapped, since VmfWriter will want to replace it when the map is saved.
+	 *
+	 * VMF is plain ASCII in practice; reading it as Latin-1 means anything else survives
+	 * the trip untouched, and one char is one byte.
+	 */
+	public static Root read(File file) throws IOException {
+		VmfSource source = new VmfSource(file);
+		if (file.length() <= Integer.MAX_VALUE) {
+			VmfReader reader = new VmfReader(MappedVmfTokenizer.load(file));
+			reader.source = source;
+			return reader.read();
+		}
+		Reader in = new InputStreamReader(new FileInputStream(file), "ISO-8859-1");
+		try {
+			VmfReader reader = new VmfReader(in);
+			reader.source = source;
+			return reader.read();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Parse everything, then wait for every brush to be built.
+	 */
+	public Root read() throws IOException {
+		long start = System.nanoTime();
+		parseBlocks(false);
+		flush();
+		collect();
+		root.setSource(source);
+
+		if (Trace.enabled()) {
+			Trace.record(Trace.LOAD, "read " + numSolids + " solids (" + numFailed + " failed) and "
+					+ root.getEntities().size + " entities in " + (System.nanoTime() - start) / 1000000 + "ms");
+		}
+		return root;
+	}
+
+	/**
+	 * @return the number of solids read so far.
+	 */
+	public int getNumSolids() {
+		return numSolids;
+	}
+
+	/**
+	 * @return the number of solids that couldn't be turned into brushes (and were left out).
+	 */
+	public int getNumFailed() {
+		return numFailed;
+	}
+
+	/**
+	 * Top-level blocks, until the end of the file (or, inside "hidden", the end of the block).
+	 */
+	private void parseBlocks(boolean inHidden) throws IOException {
+		while (true) {
+			int type = tokens.next();
+			if (type == VmfTokenizer.EOF && !inHidden) return;
+			if (type == VmfTokenizer.CLOSE && inHidden) return;
+			if (type != VmfTokenizer.NAME) throw tokens.error("expected a block name");
+
+			if (tokens.is("world")) {
+				VmfSource.Block block = startBlock(root.getWorld(), tokens.getTokenStart());
+				tokens.expect(VmfTokenizer.OPEN);
+				parseEntity(root.getWorldProperties(), root.getWorld(), block);
+				endBlock(block);
+			} else if (tokens.is("entity")) {
+				long start = tokens.getTokenStart();
+				tokens.expect(VmfTokenizer.OPEN);
+				parseEntity(start);
+			} else if (tokens.is("hidden")) {
+				tokens.expect(VmfTokenizer.OPEN);
+				parseBlocks(true);
+			} else {
+				// versioninfo, visgroups, viewsettings, cameras, cordon...
+				tokens.expect(VmfTokenizer.OPEN);
+				tokens.skipBlock();
+			}
+		}
+	}
+
+	/**
+	 * @param start where the entity's name was.
+	 */
+	private void parseEntity(long start) throws IOException {
+		OrderedMap<String, String> properties = new OrderedMap<String, String>();
+		BrushContainer brushes = new BrushContainer();
+		int solidsBefore = numSolids;
+		VmfSource.Block block = startBlock(brushes, start);
+		parseEntity(properties, brushes, block);
+
+		Entity entity = numSolids > solidsBefore ? new BrushEntity(brushes) : new PointEntity();
+		entity.getProperties().putAll(properties);
+		root.getEntities().add(entity);
+
+		if (block != null) {
+			block.entity = entity;
+			endBlock(block);
+		}
+	}
+
+	/**
+	 * @return a block starting at the given offset (its name), or null if we're not keeping track.
+	 */
+	private VmfSource.Block startBlock(BrushContainer brushes, long start) {
+		return source == null ? null : new VmfSource.Block(null, brushes, start);
+	}
+
+	/**
+	 * Call with the block's closing brace as the current token.
+	 */
+	private void endBlock(VmfSource.Block block) {
+		if (block == null) return;
+		block.close = tokens.getTokenStart();
+		block.end = tokens.getTokenEnd();
+		source.add(block);
+	}
+
+	private void seenId(int id) {
+		if (source != null && id > source.maxId) {
+			source.maxId = id;
+		}
+	}
+
+	/**
+	 * The body of the world or an entity: key/values, solids, and blocks we don't care about.
+	 */
+	private void parseEntity(OrderedMap<String, String> properties, BrushContainer brushes, VmfSource.Block block) throws IOException {
+		while (true) {
+			switch (tokens.next()) {
+				case VmfTokenizer.CLOSE:
+					return;
+				case VmfTokenizer.STRING:
+					String key = tokens.getText().toString();
+					tokens.expect(VmfTokenizer.STRING);
+					properties.put(key, tokens.getText().toString());
+					if (source != null && key.equals("id")) seenId(tokens.getInt());
+					break;
+				case VmfTokenizer.NAME:
+					boolean solid = tokens.is("solid"), hidden = tokens.is("hidden");
+					long start = tokens.getTokenStart();
+					tokens.expect(VmfTokenizer.OPEN);
+					if (solid) {
+						parseSolid(brushes, block, start);
+					} else if (hidden) {
+						parseEntity(properties, brushes, block);
+					} else {
+						tokens.skipBlock(); // editor, connections...
+					}
+					break;
+				default:
+					throw tokens.error("unexpected token in entity");
+			}
+		}
+	}
+
+	/**
+	 * @param start where the solid's name was.
+	 */
+	private void parseSolid(BrushContainer target, VmfSource.Block block, long start) throws IOException {
+		Array<Plane> planes = new Array<Plane>(6);
+		Array<Surface> surfaces = new Array<Surface>(6);
+		int id = 0;
+		boolean ok = true;
+		while (true) {
+			int type = tokens.next();
+			if (type == VmfTokenizer.CLOSE) break;
+			if (type == VmfTokenizer.STRING) {
+				boolean isId = tokens.is("id");
+				tokens.expect(VmfTokenizer.STRING);
+				if (isId) {
+					id = tokens.getInt();
+					seenId(id);
+				}
+			} else if (type == VmfTokenizer.NAME) {
+				boolean side = tokens.is("side");
+				tokens.expect(VmfTokenizer.OPEN);
+				if (side) {
+					ok &= parseSide(planes, surfaces);
+				} else {
+					tokens.skipBlock(); // editor
+				}
+			} else {
+				throw tokens.error("unexpected token in solid");
+			}
+		}
+		VmfSource.Solid span = block == null ? null : new VmfSource.Solid(block, start, tokens.getTokenEnd());
+		submit(target, id, ok ? planes : null, surfaces, span);
+	}
+
+	/**
+	 * @return false if the side's plane is degenerate.
+	 */
+	private boolean parseSide(Array<Plane> planes, Array<Surface> surfaces) throws IOException {
+		boolean ok = true;
+		Plane plane = null;
+		properties.clear();
+		while (true) {
+			int type = tokens.next();
+			if (type == VmfTokenizer.CLOSE) break;
+			if (type == VmfTokenizer.STRING) {
+				boolean isPlane = tokens.is("plane"), isId = tokens.is("id");
+				String key = isPlane || isId ? null : string(tokens.getText());
+				tokens.expect(VmfTokenizer.STRING);
+				if (isId) {
+					if (source != null) seenId(tokens.getInt());
+				} else if (isPlane) {
+					plane = new Plane(new Vector3(), 0f);
+					ok = parsePlane(plane);
+					planes.add(plane);
+				} else {
+					properties.add(key);
+					properties.add(string(tokens.getText()));
+				}
+			} else if (type == VmfTokenizer.NAME) {
+				tokens.expect(VmfTokenizer.OPEN);
+				tokens.skipBlock(); // dispinfo
+			} else {
+				throw tokens.error("unexpected token in side");
+			}
+		}
+		if (plane != null) {
+			surfaces.add(new Surface(plane.normal.cpy(), properties.toArray()));
+		}
+		return ok;
+	}
+
+	private String string(CharSequence text) {
+		String s = text.toString();
+		String seen = strings.get(s);
+		if (seen != null) return seen;
+		strings.put(s, s);
+		return s;
+	}
+
+	/**
+	 * The current token, "(x1 y1 z1) (x2 y2 z2) (x3 y3 z3)".
+	 */
+	private boolean parsePlane(Plane out) throws VmfException {
+		if (tokens.getNumbers(numbers) != 9) {
+			throw tokens.error("bad plane \"" + tokens.getText() + "\"");
+		}
+		VmfCoordinates.toWorld(a.set(numbers[0], numbers[1], numbers[2]));
+		VmfCoordinates.toWorld(b.set(numbers[3], numbers[4], numbers[5]));
+		VmfCoordinates.toWorld(c.set(numbers[6], numbers[7], numbers[8]));
+		return VmfCoordinates.planeFromPoints(a, b, c, out);
+	}
+
+	/**
+	 * @param planes null if the solid is already known to be bad.
+	 * @param surfaces how its sides look.
+	 * @param span where it was in the file, or null if we're not keeping track.
+	 */
+	private void submit(BrushContainer target, int id, Array<Plane> planes, Array<Surface> surfaces, VmfSource.Solid span) {
+		numSolids++;
+		if (current != null && current.target != target) {
+			flush();
+		}
+		if (current == null) {
+			current = new Batch(target);
+		}
+		current.solids.add(planes);
+		current.ids.add(id);
+		current.surfaces.add(surfaces);
+		current.spans.add(span);
+		if (current.solids.size == BATCH_SIZE) {
+			flush();
+		}
+	}
+
+	private void flush() {
+		if (current == null) return;
+		// a worker waiting on its own pool could wait forever; just do it here instead.
+		if (!Tasks.isWorker()) {
+			current.result = Tasks.pool().submit(current);
+		}
+		batches.add(current);
+		current = null;
+	}
+
+	/**
+	 * Wait for every batch, then hand the brushes over to their containers, in file order.
+	 */
+	private void collect() throws IOException {
+		for (Batch batch: batches) {
+			Brush[] brushes;
+			if (batch.result == null) {
+				brushes = batch.call();
+			} else {
+				try {
+					brushes = batch.result.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted while building brushes");
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+
+			for (int i = 0; i < brushes.length; ++i) {
+				Brush brush = brushes[i];
+				if (brush == null) {
+					numFailed++;
+				} else {
+					batch.target.add(brush);
+				}
+				if (batch.spans.get(i) != null) {
+					source.add(batch.spans.get(i), brush);
+				}
+			}
+		}
+		batches.clear();
+	}
+
+}
@@ -0,0 +1,472 @@
+package com.sastraxi.chisel.map.vmf;
+
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.OrderedMap;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.map.Root;
+import com.sastraxi.chisel.map.Surface;
+import com.sastraxi.chisel.map.entities.BrushEntity;
+import com.sastraxi.chisel.map.entities.Entity;
+import com.sastraxi.chisel.map.entities.PointEntity;
+import com.sastraxi.chisel.math.Face;
+import com.sastraxi.chisel.tasks.Tasks;
+import com.sastraxi.chisel.trace.Trace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A binary copy of a Root read from a VMF, kept next to it, so that opening the map again
+ * doesn't mean parsing text and running toConvex on every solid. Brushes come back exactly
+ * as they were enumerated (vertices, face loops and planes), along with every key/value and
+ * the VmfSource, so incremental saves keep working.
+ *
+ * A snapshot is only trusted while the VMF has the size and modification time it had when
+ * the snapshot was made; otherwise (or if it's from another version of this class) the VMF
+ * is read instead.
+ *
+ * Layout, all little-endian:
+ *  - header: MAGIC, VERSION, the VMF's length and modification time, its highest id,
+ *    the number of world brushes and the number of entities
+ *  - the number of brushes, then every brush's geometry, the world's and then each entity's
+ *    in turn: its vertices (a count, then xyz each), then its faces (a count, then for each
+ *    its plane as nx ny nz d, and its loop as a count and vertex indices)
+ *  - each brush's id
+ *  - each brush's surfaces: how many (-1 for none), then for each its normal and key/values
+ *  - the world's key/values, then for each entity its number of brushes (-1 for a point
+ *    entity) and key/values; strings are a length and then Latin-1 bytes
+ *  - VmfSource blocks (owner, start, close, end) and solids (block, start, end, brush)
+ */
+public class VmfSnapshot {
+
+	public static final int MAGIC = 0x4C534843; // "CHSL"
+	public static final int VERSION = 3;
+
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+	/**
+	 * Making a Brush out of stored geometry is just allocation; only worth spreading
+	 * across the workers in big lumps.
+	 */
+	private static final int BRUSH_GRAIN = 1024;
+
+	/**
+	 * @return where the snapshot for a VMF goes.
+	 */
+	public static File getFile(File vmf) {
+		return new File(vmf.getPath() + ".snapshot");
+	}
+
+	/**
+	 * Open a VMF from its snapshot if there's a good one, otherwise read it and make one.
+	 */
+	public static Root open(File vmf) throws IOException {
+		Root root = read(vmf);
+		if (root != null) return root;
+
+		root = VmfReader.read(vmf);
+		try {
+			write(root);
+		} catch (IOException e) {
+			// not being able to cache it isn't a reason not to open it.
+			if (Trace.enabled()) Trace.record(Trace.SAVE, "couldn't write snapshot of " + vmf + ": " + e);
+		}
+		return root;
+	}
+
+	/**
+	 * @return the map as of its snapshot, or null if there's no snapshot or it's out of date.
+	 */
+	public static Root read(File vmf) throws IOException {
+		File file = getFile(vmf);
+		if (!file.isFile()) return null;
+
+		// read, not mapped: a live mapping would stop write() replacing the file on some systems.
+		long start = System.nanoTime();
+		ByteBuffer in;
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			in = ByteBuffer.allocate((int) channel.size());
+			while (in.hasRemaining()) {
+				if (channel.read(in) < 0) break; // shorter than it was; it'll fail the checks below
+			}
+			in.flip();
+		} finally {
+			stream.close();
+		}
+		in.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+			return null;
+		}
+		if (in.getLong() != vmf.length() || in.getLong() != vmf.lastModified()) {
+			return null;
+		}
+
+		Root root;
+		try {
+			root = readBody(vmf, in);
+		} catch (RuntimeException e) {
+			// truncated or otherwise mangled; not worth more than a trace.
+			if (Trace.enabled()) Trace.record(Trace.LOAD, "bad snapshot " + file + ": " + e);
+			return null;
+		}
+
+		if (Trace.enabled()) {
+			Trace.record(Trace.LOAD, "read snapshot of " + vmf + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+		}
+		return root;
+	}
+
+	private static Root readBody(File vmf, final ByteBuffer in) {
+		int maxId = in.getInt(), numWorldBrushes = in.getInt(), numEntities = in.getInt();
+
+		// find where each brush starts, then build them all on the workers.
+		final Brush[] brushes = new Brush[in.getInt()];
+		final int[] starts = new int[brushes.length];
+		for (int i = 0; i < brushes.length; ++i) {
+			starts[i] = in.position();
+			skipGeometry(in);
+		}
+		Tasks.parallelFor(brushes.length, BRUSH_GRAIN, new Tasks.Range() {
+			@Override
+			public void run(int from, int to) {
+				ByteBuffer view = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+				for (int i = from; i < to; ++i) {
+					view.position(starts[i]);
+					brushes[i] = readGeometry(view);
+				}
+			}
+		});
+		for (Brush brush: brushes) {
+			brush.setId(in.getInt());
+		}
+		ObjectMap<String, String> strings = new ObjectMap<String, String>();
+		for (Brush brush: brushes) {
+			brush.setSurfaces(readSurfaces(in, strings));
+		}
+
+		Root root = new Root();
+		readProperties(in, root.getWorldProperties());
+		int next = 0;
+		for (; next < numWorldBrushes; ++next) {
+			root.getWorld().add(brushes[next]);
+		}
+		for (int e = 0; e < numEntities; ++e) {
+			int numBrushes = in.getInt();
+			Entity entity;
+			if (numBrushes < 0) {
+				entity = new PointEntity();
+			} else {
+				BrushContainer container = new BrushContainer();
+				for (int i = 0; i < numBrushes; ++i) {
+					container.add(brushes[next++]);
+				}
+				entity = new BrushEntity(container);
+			}
+			readProperties(in, entity.getProperties());
+			root.getEntities().add(entity);
+		}
+
+		VmfSource source = new VmfSource(vmf);
+		source.maxId = maxId;
+		VmfSource.Block[] blocks = new VmfSource.Block[in.getInt()];
+		for (int i = 0; i < blocks.length; ++i) {
+			int owner = in.getInt();
+			Entity entity = owner < 0 ? null : root.getEntities().get(owner);
+			BrushContainer container = owner < 0 ? root.getWorld()
+					: entity instanceof BrushEntity ? ((BrushEntity) entity).getTiedBrushes() : null;
+			blocks[i] = new VmfSource.Block(entity, container, in.getLong());
+			blocks[i].close = in.getLong();
+			blocks[i].end = in.getLong();
+			source.add(blocks[i]);
+		}
+		int numSolids = in.getInt();
+		for (int i = 0; i < numSolids; ++i) {
+			VmfSource.Block block = blocks[in.getInt()];
+			long start = in.getLong(), end = in.getLong();
+			int brush = in.getInt();
+			source.add(new VmfSource.Solid(block, start, end), brush < 0 ? null : brushes[brush]);
+		}
+		root.setSource(source);
+		return root;
+	}
+
+	/**
+	 * Snapshot a root that was just read from (or saved to) its VMF.
+	 *
+	 * @return false, having written nothing, if the root doesn't match a VMF on disk
+	 *         (it never came from one, it's been edited since, or the file has changed).
+	 */
+	public static boolean write(Root root) throws IOException {
+		VmfSource source = root.getSource();
+		if (source == null || !source.isCurrent()) return false;
+		for (VmfSource.Block block: source.blocks) {
+			for (VmfSource.Solid solid: block.solids) {
+				if (solid.brush != null && solid.brush.getRevision() != solid.revision) return false;
+			}
+		}
+
+		// every brush, world first, numbered in that order.
+		Array<Brush> all = new Array<Brush>(root.getWorld().brushes);
+		for (Entity entity: root.getEntities()) {
+			if (entity instanceof BrushEntity) {
+				all.addAll(((BrushEntity) entity).getTiedBrushes().brushes);
+			}
+		}
+		IdentityMap<Brush, Integer> index = new IdentityMap<Brush, Integer>(all.size);
+		IdentityMap<Entity, Integer> entities = new IdentityMap<Entity, Integer>(root.getEntities().size);
+		IdentityMap<VmfSource.Block, Integer> blocks = new IdentityMap<VmfSource.Block, Integer>(source.blocks.size);
+
+		int size = HEADER_SIZE + 4 + 4 * all.size;
+		for (Brush brush: all) {
+			size += sizeOfGeometry(brush);
+		}
+		size += sizeOf(root.getWorld().brushes);
+		for (Entity entity: root.getEntities()) {
+			if (entity instanceof BrushEntity) {
+				size += sizeOf(((BrushEntity) entity).getTiedBrushes().brushes);
+			}
+		}
+		size += sizeOf(root.getWorldProperties());
+		for (Entity entity: root.getEntities()) {
+			size += 4 + sizeOf(entity.getProperties());
+		}
+		int numSolids = 0;
+		for (VmfSource.Block block: source.blocks) {
+			numSolids += block.solids.size;
+		}
+		size += 4 + source.blocks.size * (4 + 3 * 8) + 4 + numSolids * (4 + 2 * 8 + 4);
+
+		ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		out.putInt(MAGIC).putInt(VERSION).putLong(source.length).putLong(source.lastModified);
+		out.putInt(source.maxId).putInt(root.getWorld().brushes.size).putInt(root.getEntities().size);
+		out.putInt(all.size);
+		for (Brush brush: all) {
+			writeGeometry(out, brush);
+		}
+		for (int n = 0; n < all.size; ++n) {
+			out.putInt(all.get(n).getId());
+			index.put(all.get(n), n);
+		}
+
+		writeSurfaces(out, root.getWorld().brushes);
+		for (Entity entity: root.getEntities()) {
+			if (entity instanceof BrushEntity) {
+				writeSurfaces(out, ((BrushEntity) entity).getTiedBrushes().brushes);
+			}
+		}
+
+		writeProperties(out, root.getWorldProperties());
+		for (int e = 0; e < root.getEntities().size; ++e) {
+			Entity entity = root.getEntities().get(e);
+			entities.put(entity, e);
+			out.putInt(entity instanceof BrushEntity ? ((BrushEntity) entity).getTiedBrushes().brushes.size : -1);
+			writeProperties(out, entity.getProperties());
+		}
+
+		out.putInt(source.blocks.size);
+		for (int i = 0; i < source.blocks.size; ++i) {
+			VmfSource.Block block = source.blocks.get(i);
+			blocks.put(block, i);
+			out.putInt(block.entity == null ? -1 : entities.get(block.entity, -1));
+			out.putLong(block.start).putLong(block.close).putLong(block.end);
+		}
+		out.putInt(numSolids);
+		for (VmfSource.Block block: source.blocks) {
+			for (VmfSource.Solid solid: block.solids) {
+				out.putInt(blocks.get(block));
+				out.putLong(solid.start).putLong(solid.end);
+				out.putInt(solid.brush == null ? -1 : index.get(solid.brush, -1));
+			}
+		}
+		assert !out.hasRemaining();
+		out.flip();
+
+		// write it somewhere else first; a half-written snapshot would just be thrown away, but still.
+		File file = getFile(source.getFile());
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		boolean done = false;
+		try {
+			FileChannel channel = stream.getChannel();
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+			done = true;
+		} finally {
+			stream.close();
+			if (!done) temp.delete();
+		}
+		VmfWriter.replace(temp, file);
+		return true;
+	}
+
+	private static int sizeOfGeometry(Brush brush) {
+		int size = 4 + 3 * 4 * brush.getVertices().size + 4;
+		for (Face face: brush.getFaces()) {
+			size += 4 * 4 + 4 + 4 * face.arity();
+		}
+		return size;
+	}
+
+	private static void writeGeometry(ByteBuffer out, Brush brush) {
+		out.putInt(brush.getVertices().size);
+		for (Vector3 v: brush.getVertices()) {
+			out.putFloat(v.x).putFloat(v.y).putFloat(v.z);
+		}
+		out.putInt(brush.getFaces().size);
+		for (Face face: brush.getFaces()) {
+			Plane plane = face.getPlane();
+			out.putFloat(plane.normal.x).putFloat(plane.normal.y).putFloat(plane.normal.z).putFloat(plane.d);
+			out.putInt(face.arity());
+			for (int id: face.getLoop()) {
+				out.putInt(id);
+			}
+		}
+	}
+
+	private static void skipGeometry(ByteBuffer in) {
+		int numVertices = in.getInt();
+		in.position(in.position() + 3 * 4 * numVertices);
+		int numFaces = in.getInt();
+		for (int f = 0; f < numFaces; ++f) {
+			in.position(in.position() + 4 * 4);
+			int arity = in.getInt();
+			in.position(in.position() + 4 * arity);
+		}
+	}
+
+	/**
+	 * Planes and all; nothing is worked out again.
+	 */
+	private static Brush readGeometry(ByteBuffer in) {
+		int numVertices = in.getInt();
+		Array<Vector3> vertices = new Array<Vector3>(numVertices);
+		for (int i = 0; i < numVertices; ++i) {
+			vertices.add(new Vector3(in.getFloat(), in.getFloat(), in.getFloat()));
+		}
+		int numFaces = in.getInt();
+		Array<Face> faces = new Array<Face>(numFaces);
+		float[] planes = new float[4 * numFaces];
+		for (int f = 0; f < numFaces; ++f) {
+			for (int k = 0; k < 4; ++k) {
+				planes[4*f+k] = in.getFloat();
+			}
+			int[] loop = new int[in.getInt()];
+			for (int i = 0; i < loop.length; ++i) {
+				loop[i] = in.getInt();
+			}
+			faces.add(new Face(loop));
+		}
+		return new Brush(vertices, faces, planes, 0);
+	}
+
+	private static int sizeOf(OrderedMap<String, String> properties) {
+		int size = 4;
+		for (ObjectMap.Entry<String, String> entry: properties.entries()) {
+			size += 4 + entry.key.length() + 4 + entry.value.length();
+		}
+		return size;
+	}
+
+	private static void writeProperties(ByteBuffer out, OrderedMap<String, String> properties) {
+		out.putInt(properties.size);
+		for (ObjectMap.Entry<String, String> entry: properties.entries()) {
+			writeString(out, entry.key);
+			writeString(out, entry.value);
+		}
+	}
+
+	private static void readProperties(ByteBuffer in, OrderedMap<String, String> out) {
+		int n = in.getInt();
+		for (int i = 0; i < n; ++i) {
+			String key = readString(in);
+			out.put(key, readString(in));
+		}
+	}
+
+	/**
+	 * @return the space the surfaces of all these brushes take up.
+	 */
+	private static int sizeOf(Array<Brush> brushes) {
+		int size = 0;
+		for (Brush brush: brushes) {
+			size += 4;
+			if (brush.getSurfaces() == null) continue;
+			for (Surface surface: brush.getSurfaces()) {
+				size += 3 * 4 + 4;
+				for (int i = 0; i < surface.size(); ++i) {
+					size += 4 + surface.getKey(i).length() + 4 + surface.getValue(i).length();
+				}
+			}
+		}
+		return size;
+	}
+
+	private static void writeSurfaces(ByteBuffer out, Array<Brush> brushes) {
+		for (Brush brush: brushes) {
+			Array<Surface> surfaces = brush.getSurfaces();
+			out.putInt(surfaces == null ? -1 : surfaces.size);
+			if (surfaces == null) continue;
+			for (Surface surface: surfaces) {
+				Vector3 normal = surface.getNormal();
+				out.putFloat(normal.x).putFloat(normal.y).putFloat(normal.z);
+				out.putInt(surface.size());
+				for (int i = 0; i < surface.size(); ++i) {
+					writeString(out, surface.getKey(i));
+					writeString(out, surface.getValue(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param strings the same few strings come up over and over; like VmfReader, keep one copy of each.
+	 */
+	private static Array<Surface> readSurfaces(ByteBuffer in, ObjectMap<String, String> strings) {
+		int n = in.getInt();
+		if (n < 0) return null;
+		Array<Surface> surfaces = new Array<Surface>(n);
+		for (int s = 0; s < n; ++s) {
+			Vector3 normal = new Vector3(in.getFloat(), in.getFloat(), in.getFloat());
+			String[] properties = new String[2 * in.getInt()];
+			for (int i = 0; i < properties.length; ++i) {
+				String string = readString(in);
+				String seen = strings.get(string);
+				if (seen == null) strings.put(string, seen = string);
+				properties[i] = seen;
+			}
+			surfaces.add(new Surface(normal, properties));
+		}
+		return surfaces;
+	}
+
+	private static void writeString(ByteBuffer out, String s) {
+		out.putInt(s.length());
+		for (int i = 0; i < s.length(); ++i) {
+			char ch = s.charAt(i);
+			out.put(ch < 256 ? (byte) ch : (byte) '?');
+		}
+	}
+
+	private static String readString(ByteBuffer in) {
+		char[] chars = new char[in.getInt()];
+		for (int i = 0; i < chars.length; ++i) {
+			chars[i] = (char) (in.get() & 0xFF);
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.sastraxi.chisel.map.vmf;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.map.entities.Entity;
+
+import java.io.File;
+
+/**
+ * Where each solid, the world and each entity live in a VMF file (as byte offsets), as of
+ * when it was read or last saved. VmfWriter uses this to copy everything that hasn't
+ * changed straight from the old file.
+ */
+public class VmfSource {
+
+	/**
+	 * A solid's bytes, from the "solid" up to and including its closing brace.
+	 */
+	static class Solid {
+		final Block block;
+		final long start, end;
+		Brush brush = null; // null if it couldn't be turned into one; it's kept as it was.
+		int revision = 0;   // brush.getRevision() as of the file
+
+		Solid(Block block, long start, long end) {
+			this.block = block;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * The world or an entity, from its name up to and including its closing brace.
+	 * Solids are in file order.
+	 */
+	static class Block {
+		Entity entity;               // null for the world
+		final BrushContainer brushes; // null (or empty) for point entities
+		final long start;
+		long close, end;
+		final Array<Solid> solids = new Array<Solid>();
+
+		Block(Entity entity, BrushContainer brushes, long start) {
+			this.entity = entity;
+			this.brushes = brushes;
+			this.start = start;
+		}
+	}
+
+	private final File file;
+	long length, lastModified;
+
+	final Array<Block> blocks = new Array<Block>();
+	final IdentityMap<Brush, Solid> solids = new IdentityMap<Brush, Solid>();
+	final IdentityMap<Entity, Block> entities = new IdentityMap<Entity, Block>();
+	int maxId = 0;
+
+	VmfSource(File file) {
+		this.file = file;
+		stat();
+	}
+
+	/**
+	 * Remember the file as it is right now.
+	 */
+	void stat() {
+		length = file.length();
+		lastModified = file.lastModified();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return false if the file has changed (or gone) since we last read or wrote it.
+	 */
+	public boolean isCurrent() {
+		return file.isFile() && file.length() == length && file.lastModified() == lastModified;
+	}
+
+	/**
+	 * @return the highest id (of anything: solids, sides, entities) in the file.
+	 */
+	public int getMaxId() {
+		return maxId;
+	}
+
+	boolean hasWorld() {
+		for (Block block: blocks) {
+			if (block.entity == null) return true;
+		}
+		return false;
+	}
+
+	void add(Block block) {
+		blocks.add(block);
+		if (block.entity != null) {
+			entities.put(block.entity, block);
+		}
+	}
+
+	void add(Solid solid, Brush brush) {
+		solid.brush = brush;
+		solid.block.solids.add(solid);
+		if (brush != null) {
+			solid.revision = brush.getRevision();
+			solids.put(brush, solid);
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.sastraxi.chisel.map.vmf;
+
+import java.io.IOException;
+
+/**
+ * Splits VMF text into tokens.
+ *
+ * VMF is a tree of named blocks ({@code solid { ... }}) holding quoted key/value pairs
+ * ({@code "id" "2"}). There's no escaping inside quoted strings.
+ *
+ * @see StreamVmfTokenizer reads from any Reader.
+ * @see MappedVmfTokenizer reads straight from the bytes of a (memory-mapped) file.
+ */
+public abstract class VmfTokenizer {
+
+	public static final int EOF = 0;
+	public static final int OPEN = 1;    // {
+	public static final int CLOSE = 2;   // }
+	public static final int STRING = 3;  // "quoted"
+	public static final int NAME = 4;    // bare word, i.e. a block name
+
+	protected int type = EOF;
+
+	/**
+	 * Move on to the next token.
+	 * @return its type.
+	 */
+	public abstract int next() throws IOException;
+
+	/**
+	 * @return the type of the current token.
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * @return the contents of the current STRING (without quotes) or NAME token.
+	 * Only valid until the next call to next(); call toString() on it to keep it.
+	 */
+	public abstract CharSequence getText();
+
+	/**
+	 * @return true if the current token is a STRING or NAME that matches exactly.
+	 */
+	public abstract boolean is(String s);
+
+	/**
+	 * Pull every number out of the current token, ignoring brackets and parentheses,
+	 * e.g. "(1 2 3) (4 5 6) (7 8 9)" or "[1 0 0 0] 0.25".
+	 *
+	 * @return how many there were (any more than out can hold are dropped), or -1 if
+	 * something in there wasn't a number.
+	 */
+	public int getNumbers(float[] out) {
+		return parseNumbers(getText(), out);
+	}
+
+	/**
+	 * @return the current token as an integer.
+	 */
+	public int getInt() throws VmfException {
+		try {
+			return Integer.parseInt(getText().toString());
+		} catch (NumberFormatException e) {
+			throw error("bad integer \"" + getText() + "\"");
+		}
+	}
+
+	/**
+	 * @return the offset of the first character of the current token from the start of the source.
+	 */
+	public abstract long getTokenStart();
+
+	/**
+	 * @return the offset just past the end of the current token.
+	 */
+	public abstract long getTokenEnd();
+
+	public abstract int getLine();
+
+	/**
+	 * Skip over the rest of a block whose OPEN we've just read, nested blocks and all.
+	 */
+	public void skipBlock() throws IOException {
+		int depth = 1;
+		while (depth > 0) {
+			switch (next()) {
+				case OPEN: depth++; break;
+				case CLOSE: depth--; break;
+				case EOF: throw error("unexpected end of file in block");
+			}
+		}
+	}
+
+	/**
+	 * Move on, and complain if the next token isn't of the given type.
+	 */
+	public void expect(int expected) throws IOException {
+		if (next() != expected) {
+			throw error("expected " + describe(expected) + ", found " + describe(type));
+		}
+	}
+
+	public VmfException error(String message) {
+		return new VmfException(message, getLine());
+	}
+
+	private String describe(int type) {
+		switch (type) {
+			case EOF: return "end of file";
+			case OPEN: return "'{'";
+			case CLOSE: return "'}'";
+			case STRING: return "\"" + getText() + "\"";
+			case NAME: return getText().toString();
+		}
+		return "?";
+	}
+
+	static boolean isSeparator(int ch) {
+		return ch == ' ' || ch == '\t' || ch == '(' || ch == ')' || ch == '[' || ch == ']';
+	}
+
+	/**
+	 * @see #getNumbers(float[])
+	 */
+	static int parseNumbers(CharSequence text, float[] out) {
+		int n = 0, i = 0, length = text.length();
+		while (i < length) {
+			if (isSeparator(text.charAt(i))) {
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < length && !isSeparator(text.charAt(i))) {
+				i++;
+			}
+			if (n < out.length) {
+				try {
+					out[n] = Float.parseFloat(text.subSequence(start, i).toString());
+				} catch (NumberFormatException e) {
+					return -1;
+				}
+			}
+			n++;
+		}
+		return n;
+	}
+
+}
@@ -0,0 +1,479 @@
+package com.sastraxi.chisel.map.vmf;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.OrderedMap;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.map.BrushContainer;
+import com.sastraxi.chisel.map.Root;
+import com.sastraxi.chisel.map.Surface;
+import com.sastraxi.chisel.map.entities.BrushEntity;
+import com.sastraxi.chisel.map.entities.Entity;
+import com.sastraxi.chisel.math.Face;
+import com.sastraxi.chisel.math.HalfspacePolygon;
+import com.sastraxi.chisel.trace.Trace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Saves a Root as a VMF.
+ *
+ * If the root still knows which file it came from (see VmfSource) and that file hasn't
+ * changed since, only what's changed gets written: solids whose brushes have been edited,
+ * added or removed, and entities that have been added or removed. Everything in between is
+ * copied straight from the old file with FileChannel.transferTo, so saving after an edit
+ * costs about as much as the edit, not the map. Otherwise the whole thing is written out.
+ * Either way, the root ends up with a VmfSource for the new file.
+ *
+ * Nothing edits key/values yet, so where the old file is copied they're left as they were.
+ * Solids that get written out keep the key/values of each side as it was read (material,
+ * texture axes and so on; see Brush.getSurface()). Faces with no surface to match, such
+ * as those of brushes made in the editor, are given DEFAULT_MATERIAL with world-aligned
+ * texture axes. Displacements aren't kept.
+ */
+public class VmfWriter {
+
+	public static final String DEFAULT_MATERIAL = "DEV/DEV_MEASUREGENERIC01B";
+
+	/**
+	 * Hammer's grid is integer; float noise shouldn't turn 64 into 63.99998.
+	 */
+	private static final float SNAP = 1e-3f;
+
+	private final Root root;
+
+	private VmfSource old, saved;
+	private FileChannel in, out;
+	private long position = 0; // in the old file; everything before this has been dealt with
+	private long written = 0;  // to the new file, not counting text
+	private int nextId = 0;
+
+	private int numSolids = 0;
+	private long numCopied = 0;
+
+	private final StringBuilder text = new StringBuilder();
+	private final ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+	private final ByteBuffer one = ByteBuffer.allocate(1);
+	private final Array<Brush> added = new Array<Brush>();
+
+	// which of the old file's blocks and solids are still there, as of this write; the old
+	// VmfSource itself is left alone, as others may still be holding on to it.
+	private final ObjectSet<VmfSource.Block> keptBlocks = new ObjectSet<VmfSource.Block>();
+	private final ObjectSet<VmfSource.Solid> keptSolids = new ObjectSet<VmfSource.Solid>();
+
+	// scratch for writing sides
+	private final Vector3 a = new Vector3(), b = new Vector3(), c = new Vector3();
+	private final Plane check = new Plane(new Vector3(), 0f);
+
+	public VmfWriter(Root root) {
+		this.root = root;
+	}
+
+	public static void save(Root root, File file) throws IOException {
+		new VmfWriter(root).write(file);
+	}
+
+	/**
+	 * Write to a temporary file next to the given one, then move it into place (the old
+	 * file may well be the one we're copying from); see replace().
+	 */
+	public void write(File file) throws IOException {
+		long begin = System.nanoTime();
+		old = root.getSource();
+		if (old != null && !old.hasWorld()) {
+			old = null; // nowhere to put the world's brushes
+		} else if (old != null && !old.isCurrent()) {
+			if (Trace.enabled()) Trace.record(Trace.SAVE, old.getFile() + " has changed since it was read; writing everything");
+			old = null;
+		}
+
+		File temp = new File(file.getPath() + ".tmp");
+		saved = new VmfSource(file);
+		boolean done = false;
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			out = stream.getChannel();
+			if (old == null) {
+				writeAll();
+			} else {
+				FileInputStream source = new FileInputStream(old.getFile());
+				try {
+					in = source.getChannel();
+					splice();
+				} finally {
+					source.close();
+				}
+			}
+			flushText();
+			done = true;
+		} finally {
+			stream.close();
+			if (!done) temp.delete();
+		}
+
+		replace(temp, file);
+		saved.stat();
+		saved.maxId = nextId;
+		root.setSource(saved);
+
+		if (Trace.enabled()) {
+			Trace.record(Trace.SAVE, "wrote " + numSolids + " solids and copied " + numCopied + " bytes in "
+					+ (System.nanoTime() - begin) / 1000000 + "ms");
+		}
+	}
+
+	/**
+	 * Move temp over file, without a moment where neither exists: the old file is moved
+	 * aside first, and only deleted once temp is in its place. If temp can't be moved, the
+	 * old file is put back and temp is left where it is.
+	 */
+	static void replace(File temp, File file) throws IOException {
+		File backup = new File(file.getPath() + ".bak");
+		boolean existed = file.exists();
+		if (existed) {
+			backup.delete(); // from a save that was interrupted after it had finished with it
+			if (!file.renameTo(backup)) {
+				throw new IOException("couldn't move " + file + " aside to replace it");
+			}
+		}
+		if (!temp.renameTo(file)) {
+			if (existed && !backup.renameTo(file)) {
+				throw new IOException("couldn't move " + temp + " to " + file + ", or put back the old file from " + backup);
+			}
+			throw new IOException("couldn't move " + temp + " to " + file);
+		}
+		if (existed && !backup.delete()) {
+			if (Trace.enabled()) Trace.record(Trace.SAVE, "couldn't delete " + backup);
+		}
+	}
+
+	/**
+	 * @return the number of solids written out (rather than copied) by the last write().
+	 */
+	public int getNumSolids() {
+		return numSolids;
+	}
+
+	/**
+	 * @return the number of bytes copied from the old file by the last write().
+	 */
+	public long getNumCopied() {
+		return numCopied;
+	}
+
+	/**
+	 * Walk the old file's blocks in order, copying what's still there and unchanged.
+	 */
+	private void splice() throws IOException {
+		nextId = old.maxId;
+		keptBlocks.clear();
+		keptSolids.clear();
+
+		Array<Entity> newEntities = new Array<Entity>();
+		for (Entity entity: root.getEntities()) {
+			VmfSource.Block block = old.entities.get(entity);
+			if (block == null) {
+				newEntities.add(entity);
+			} else {
+				keptBlocks.add(block);
+			}
+		}
+
+		for (VmfSource.Block block: old.blocks) {
+			if (block.entity != null && !keptBlocks.contains(block)) {
+				cut(block.start, block.end); // entity was removed
+				continue;
+			}
+			VmfSource.Block copy = new VmfSource.Block(block.entity, block.brushes, map(block.start));
+
+			if (block.brushes != null) {
+				// anything that isn't where the old file has it is new here.
+				added.clear();
+				for (Brush brush: block.brushes.brushes) {
+					VmfSource.Solid solid = old.solids.get(brush);
+					if (solid != null && solid.block == block) {
+						keptSolids.add(solid);
+					} else {
+						added.add(brush);
+					}
+				}
+
+				for (VmfSource.Solid solid: block.solids) {
+					if (solid.brush != null && !keptSolids.contains(solid)) {
+						cut(solid.start, solid.end);
+					} else if (solid.brush == null || solid.brush.getRevision() == solid.revision) {
+						// unchanged (or never understood in the first place); copy it.
+						saved.add(new VmfSource.Solid(copy, map(solid.start), map(solid.end)), solid.brush);
+					} else {
+						copyTo(solid.start);
+						position = solid.end;
+						long start = offset();
+						solid(solid.brush);
+						saved.add(new VmfSource.Solid(copy, start, offset()), solid.brush);
+					}
+				}
+
+				copyTo(block.close);
+				for (Brush brush: added) {
+					text.append('\t');
+					long start = offset();
+					solid(brush);
+					saved.add(new VmfSource.Solid(copy, start, offset()), brush);
+					text.append('\n');
+				}
+			}
+
+			copy.close = map(block.close);
+			copy.end = map(block.end);
+			saved.add(copy);
+		}
+
+		// new entities go after the last of the old ones.
+		if (newEntities.size > 0) {
+			copyTo(old.blocks.size > 0 ? old.blocks.peek().end : in.size());
+			for (Entity entity: newEntities) {
+				text.append('\n');
+				entity(entity);
+			}
+		}
+		copyTo(in.size());
+	}
+
+	private void writeAll() throws IOException {
+		nextId = 0;
+		for (Brush brush: root.getWorld().brushes) {
+			nextId = Math.max(nextId, brush.getId());
+		}
+		for (Entity entity: root.getEntities()) {
+			nextId = Math.max(nextId, entity.getId());
+			if (entity instanceof BrushEntity) {
+				for (Brush brush: ((BrushEntity) entity).getTiedBrushes().brushes) {
+					nextId = Math.max(nextId, brush.getId());
+				}
+			}
+		}
+
+		OrderedMap<String, String> properties = root.getWorldProperties();
+		VmfSource.Block world = new VmfSource.Block(null, root.getWorld(), offset());
+		text.append("world\n{\n");
+		if (!properties.containsKey("id")) property("id", Integer.toString(++nextId));
+		if (!properties.containsKey("classname")) property("classname", "worldspawn");
+		body(properties, root.getWorld(), world);
+		text.append('\n');
+
+		for (Entity entity: root.getEntities()) {
+			entity(entity);
+			text.append('\n');
+		}
+	}
+
+	private void entity(Entity entity) throws IOException {
+		BrushContainer brushes = entity instanceof BrushEntity ? ((BrushEntity) entity).getTiedBrushes() : null;
+		VmfSource.Block block = new VmfSource.Block(entity, brushes, offset());
+		text.append("entity\n{\n");
+		body(entity.getProperties(), brushes, block);
+	}
+
+	/**
+	 * Key/values and solids of a block we've just opened, and its closing brace.
+	 */
+	private void body(OrderedMap<String, String> properties, BrushContainer brushes, VmfSource.Block block) throws IOException {
+		for (ObjectMap.Entry<String, String> entry: properties.entries()) {
+			property(entry.key, entry.value);
+		}
+		if (brushes != null) {
+			for (Brush brush: brushes.brushes) {
+				text.append('\t');
+				long start = offset();
+				solid(brush);
+				saved.add(new VmfSource.Solid(block, start, offset()), brush);
+				text.append('\n');
+			}
+		}
+		block.close = offset();
+		text.append('}');
+		block.end = offset();
+		saved.add(block);
+	}
+
+	private void property(String key, String value) {
+		text.append("\t\"").append(key).append("\" \"").append(value).append("\"\n");
+	}
+
+	/**
+	 * From "solid" to its closing brace; the caller looks after whatever's either side.
+	 */
+	private void solid(Brush brush) throws IOException {
+		if (brush.getId() == 0) {
+			brush.setId(++nextId);
+		}
+		ArrayList<Plane> planes = HalfspacePolygon.fromConvex(brush);
+
+		text.append("solid\n\t{\n\t\t\"id\" \"").append(brush.getId()).append("\"\n");
+		for (int i = 0; i < planes.size(); ++i) {
+			side(brush, i, planes.get(i));
+		}
+		Color colour = brush.getColour();
+		text.append("\t\teditor\n\t\t{\n\t\t\t\"color\" \"").append((int) (colour.r * 255f)).append(' ')
+				.append((int) (colour.g * 255f)).append(' ').append((int) (colour.b * 255f)).append("\"\n");
+		text.append("\t\t\t\"visgroupshown\" \"1\"\n\t\t\t\"visgroupautoshown\" \"1\"\n\t\t}\n");
+		text.append("\t}");
+		numSolids++;
+
+		if (text.length() > bytes.capacity()) {
+			flushText();
+		}
+	}
+
+	private void side(Brush brush, int f, Plane plane) {
+		Face face = brush.getFaces().get(f);
+		// three corners spread around the face. Hammer's normal is (a - b) x (c - b), which
+		// for a counter-clockwise loop means going backwards.
+		int n = face.arity();
+		Array<Vector3> vertices = brush.getVertices();
+		a.set(vertices.get(face.get(2 * n / 3)));
+		b.set(vertices.get(face.get(n / 3)));
+		c.set(vertices.get(face.get(0)));
+		if (VmfCoordinates.planeFromPoints(a, b, c, check) && check.normal.dot(plane.normal) < 0f) {
+			a.set(vertices.get(face.get(0)));
+			c.set(vertices.get(face.get(2 * n / 3)));
+		}
+
+		text.append("\t\tside\n\t\t{\n\t\t\t\"id\" \"").append(++nextId).append("\"\n");
+		text.append("\t\t\t\"plane\" \"");
+		point(VmfCoordinates.toVmf(a)); text.append(' ');
+		point(VmfCoordinates.toVmf(b)); text.append(' ');
+		point(VmfCoordinates.toVmf(c));
+		text.append("\"\n");
+
+		Surface surface = brush.getSurface(f);
+		if (surface != null) {
+			for (int i = 0; i < surface.size(); ++i) {
+				text.append("\t\t\t\"").append(surface.getKey(i)).append("\" \"").append(surface.getValue(i)).append("\"\n");
+			}
+			text.append("\t\t}\n");
+			return;
+		}
+
+		text.append("\t\t\t\"material\" \"").append(DEFAULT_MATERIAL).append("\"\n");
+
+		// default texture axes, by whichever axis the face mostly faces.
+		Vector3 normal = VmfCoordinates.toVmf(a.set(plane.normal));
+		float x = Math.abs(normal.x), y = Math.abs(normal.y), z = Math.abs(normal.z);
+		String u, v;
+		if (z >= x && z >= y) {
+			u = "[1 0 0 0] 0.25"; v = "[0 -1 0 0] 0.25";
+		} else if (x >= y) {
+			u = "[0 1 0 0] 0.25"; v = "[0 0 -1 0] 0.25";
+		} else {
+			u = "[1 0 0 0] 0.25"; v = "[0 0 -1 0] 0.25";
+		}
+		text.append("\t\t\t\"uaxis\" \"").append(u).append("\"\n");
+		text.append("\t\t\t\"vaxis\" \"").append(v).append("\"\n");
+		text.append("\t\t\t\"rotation\" \"0\"\n\t\t\t\"lightmapscale\" \"16\"\n\t\t\t\"smoothing_groups\" \"0\"\n");
+		text.append("\t\t}\n");
+	}
+
+	private void point(Vector3 p) {
+		text.append('(');
+		number(p.x); text.append(' ');
+		number(p.y); text.append(' ');
+		number(p.z);
+		text.append(')');
+	}
+
+	private void number(float x) {
+		float rounded = Math.round(x);
+		if (Math.abs(x - rounded) < SNAP) {
+			text.append((long) rounded);
+			return;
+		}
+		String s = Float.toString(x);
+		if (s.indexOf('E') >= 0) {
+			s = new BigDecimal(s).toPlainString();
+		}
+		text.append(s);
+	}
+
+	/**
+	 * @return where the next byte will go in the new file.
+	 */
+	private long offset() {
+		return written + text.length();
+	}
+
+	/**
+	 * @return where a byte from the old file will end up in the new one, as long as nothing
+	 *         is written or cut between here and there.
+	 */
+	private long map(long offset) {
+		return offset() + (offset - position);
+	}
+
+	private void flushText() throws IOException {
+		int i = 0;
+		while (i < text.length()) {
+			bytes.clear();
+			for (; i < text.length() && bytes.hasRemaining(); ++i) {
+				char ch = text.charAt(i);
+				bytes.put(ch < 256 ? (byte) ch : (byte) '?');
+			}
+			bytes.flip();
+			while (bytes.hasRemaining()) {
+				written += out.write(bytes);
+			}
+		}
+		text.setLength(0);
+	}
+
+	/**
+	 * Copy the old file from where we're up to, to the given offset.
+	 */
+	private void copyTo(long offset) throws IOException {
+		flushText();
+		while (position < offset) {
+			long n = in.transferTo(position, offset - position, out);
+			if (n <= 0) throw new IOException(old.getFile() + " is shorter than it should be");
+			position += n;
+			written += n;
+			numCopied += n;
+		}
+	}
+
+	/**
+	 * Leave something out. If it's alone on its lines, the lines go with it.
+	 */
+	private void cut(long start, long end) throws IOException {
+		long from = start, to = end, size = in.size();
+		while (from > position && isBlank(byteAt(from - 1))) from--;
+		while (to < size && isBlank(byteAt(to))) to++;
+		if ((from == 0 || byteAt(from - 1) == '\n') && (to == size || byteAt(to) == '\n')) {
+			start = from;
+			end = Math.min(to + 1, size);
+		}
+		copyTo(start);
+		position = end;
+	}
+
+	private static boolean isBlank(int ch) {
+		return ch == ' ' || ch == '\t' || ch == '\r';
+	}
+
+	private int byteAt(long offset) throws IOException {
+		one.clear();
+		if (in.read(one, offset) < 1) return -1;
+		return one.get(0) & 0xFF;
+	}
+
+}
@@ -0,0 +1,462 @@
+package com.sastraxi.chisel.math;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * A bounding volume hierarchy over axis-aligned boxes that can be changed one item at a
+ * time: insert, remove and update are all O(log n), as the tree is kept balanced by
+ * rotations (an AVL-style dynamic AABB tree, as in Box2D).
+ *
+ * Items are identified by the proxy id returned from insert(), which stays the same
+ * through update(). Nodes live in flat arrays; freed nodes are recycled.
+ *
+ * Not thread-safe; queries share a scratch stack.
+ */
+public class BoundsTree<T> {
+
+	/**
+	 * Exact ray test for an item, once the ray is known to hit its box.
+	 */
+	public interface RayTest<T> {
+		/**
+		 * @return the distance along the ray to the item, or Float.POSITIVE_INFINITY for a miss.
+		 */
+		float intersect(T item, Ray ray);
+	}
+
+	private static final int NULL = -1;
+
+	private int root = NULL;
+	private int freeList = NULL;
+	private int numNodes = 0;
+	private int size = 0;
+
+	private float[] boxes = new float[16 * 6];
+	private int[] parent = new int[16];   // doubles as the next pointer for free nodes
+	private int[] left = new int[16];     // NULL for leaves
+	private int[] right = new int[16];
+	private int[] height = new int[16];   // leaves are 0, free nodes are -1
+	private Object[] items = new Object[16];
+
+	private final IntArray stack = new IntArray();
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return a proxy id for the item.
+	 */
+	public int insert(BoundingBox box, T item) {
+		int leaf = allocate();
+		setBox(leaf, box);
+		items[leaf] = item;
+		height[leaf] = 0;
+		insertLeaf(leaf);
+		size++;
+		return leaf;
+	}
+
+	public void remove(int proxy) {
+		assert(isLeaf(proxy));
+		removeLeaf(proxy);
+		items[proxy] = null;
+		free(proxy);
+		size--;
+	}
+
+	/**
+	 * The item's box has changed.
+	 */
+	public void update(int proxy, BoundingBox box) {
+		assert(isLeaf(proxy));
+		removeLeaf(proxy);
+		setBox(proxy, box);
+		insertLeaf(proxy);
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(int proxy) {
+		return (T) items[proxy];
+	}
+
+	public void clear() {
+		root = NULL;
+		freeList = NULL;
+		numNodes = 0;
+		size = 0;
+		for (int i = 0; i < items.length; ++i) {
+			items[i] = null;
+		}
+	}
+
+	/**
+	 * @return the height of the tree (0 for a single leaf, -1 when empty).
+	 */
+	public int getHeight() {
+		return root == NULL ? -1 : height[root];
+	}
+
+	/**
+	 * Adds every item whose box overlaps the given box to out.
+	 */
+	@SuppressWarnings("unchecked")
+	public void query(BoundingBox box, Array<T> out) {
+		if (root == NULL) return;
+		stack.clear();
+		stack.add(root);
+		while (stack.size > 0) {
+			int node = stack.pop();
+			int b = node * 6;
+			if (boxes[b] > box.max.x || boxes[b+3] < box.min.x ||
+			    boxes[b+1] > box.max.y || boxes[b+4] < box.min.y ||
+			    boxes[b+2] > box.max.z || boxes[b+5] < box.min.z) continue;
+			if (isLeaf(node)) {
+				out.add((T) items[node]);
+			} else {
+				stack.add(left[node]);
+				stack.add(right[node]);
+			}
+		}
+	}
+
+	/**
+	 * Adds every item whose box reaches into the frustum to out.
+	 */
+	@SuppressWarnings("unchecked")
+	public void query(Frustum frustum, Array<T> out) {
+		if (root == NULL) return;
+		stack.clear();
+		stack.add(root);
+		while (stack.size > 0) {
+			int node = stack.pop();
+			int b = node * 6;
+			if (!LocalMath.boxInFrustum(frustum, boxes[b], boxes[b+1], boxes[b+2],
+			                                     boxes[b+3], boxes[b+4], boxes[b+5])) continue;
+			if (isLeaf(node)) {
+				out.add((T) items[node]);
+			} else {
+				stack.add(left[node]);
+				stack.add(right[node]);
+			}
+		}
+	}
+
+	/**
+	 * Find the closest item hit by a ray.
+	 *
+	 * @param test the exact test, run only on items whose boxes the ray hits.
+	 * @param hit if not null, hit[0] receives the distance along the ray.
+	 * @return the item, or null if nothing was hit.
+	 */
+	@SuppressWarnings("unchecked")
+	public T raycast(Ray ray, RayTest<T> test, float[] hit) {
+		T best = null;
+		float bestDistance = Float.POSITIVE_INFINITY;
+		if (root == NULL) return null;
+
+		stack.clear();
+		stack.add(root);
+		while (stack.size > 0) {
+			int node = stack.pop();
+			if (rayEntry(node, ray) >= bestDistance) continue;
+			if (isLeaf(node)) {
+				float distance = test.intersect((T) items[node], ray);
+				if (distance < bestDistance) {
+					bestDistance = distance;
+					best = (T) items[node];
+				}
+			} else {
+				stack.add(left[node]);
+				stack.add(right[node]);
+			}
+		}
+
+		if (hit != null && best != null) hit[0] = bestDistance;
+		return best;
+	}
+
+	/**
+	 * Find the item whose box is closest to a point (0 if the point is inside the box).
+	 */
+	@SuppressWarnings("unchecked")
+	public T nearest(Vector3 point) {
+		T best = null;
+		float bestDistance = Float.POSITIVE_INFINITY;
+		if (root == NULL) return null;
+
+		stack.clear();
+		stack.add(root);
+		while (stack.size > 0) {
+			int node = stack.pop();
+			float distance = distance2(node, point);
+			if (distance >= bestDistance) continue;
+			if (isLeaf(node)) {
+				bestDistance = distance;
+				best = (T) items[node];
+			} else {
+				// visit the closer child first so the other is more likely to be pruned.
+				int near = left[node], far = right[node];
+				if (distance2(near, point) > distance2(far, point)) {
+					near = right[node];
+					far = left[node];
+				}
+				stack.add(far);
+				stack.add(near);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return where the ray enters the node's box, or +infinity if it misses.
+	 */
+	private float rayEntry(int node, Ray ray) {
+		int b = node * 6;
+		float enter = 0f, exit = Float.POSITIVE_INFINITY;
+		for (int axis = 0; axis < 3; ++axis) {
+			float o = axis == 0 ? ray.origin.x : axis == 1 ? ray.origin.y : ray.origin.z;
+			float d = axis == 0 ? ray.direction.x : axis == 1 ? ray.direction.y : ray.direction.z;
+			float lo = boxes[b + axis], hi = boxes[b + 3 + axis];
+			if (d == 0f) {
+				if (o < lo || o > hi) return Float.POSITIVE_INFINITY;
+				continue;
+			}
+			float t0 = (lo - o) / d, t1 = (hi - o) / d;
+			enter = Math.max(enter, Math.min(t0, t1));
+			exit = Math.min(exit, Math.max(t0, t1));
+			if (enter > exit) return Float.POSITIVE_INFINITY;
+		}
+		return enter;
+	}
+
+	private float distance2(int node, Vector3 point) {
+		int b = node * 6;
+		float dx = Math.max(0f, Math.max(boxes[b] - point.x, point.x - boxes[b+3]));
+		float dy = Math.max(0f, Math.max(boxes[b+1] - point.y, point.y - boxes[b+4]));
+		float dz = Math.max(0f, Math.max(boxes[b+2] - point.z, point.z - boxes[b+5]));
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private boolean isLeaf(int node) {
+		return left[node] == NULL;
+	}
+
+	private void setBox(int node, BoundingBox box) {
+		int b = node * 6;
+		boxes[b] = box.min.x; boxes[b+1] = box.min.y; boxes[b+2] = box.min.z;
+		boxes[b+3] = box.max.x; boxes[b+4] = box.max.y; boxes[b+5] = box.max.z;
+	}
+
+	/**
+	 * node's box = union of the boxes of a and b.
+	 */
+	private void combine(int node, int a, int b) {
+		int n = node * 6, i = a * 6, j = b * 6;
+		for (int k = 0; k < 3; ++k) {
+			boxes[n+k] = Math.min(boxes[i+k], boxes[j+k]);
+			boxes[n+3+k] = Math.max(boxes[i+3+k], boxes[j+3+k]);
+		}
+	}
+
+	private float area(int node) {
+		int b = node * 6;
+		float dx = boxes[b+3] - boxes[b], dy = boxes[b+4] - boxes[b+1], dz = boxes[b+5] - boxes[b+2];
+		return 2f * (dx * dy + dy * dz + dz * dx);
+	}
+
+	/**
+	 * Surface area of the union of a and b's boxes.
+	 */
+	private float combinedArea(int a, int b) {
+		int i = a * 6, j = b * 6;
+		float dx = Math.max(boxes[i+3], boxes[j+3]) - Math.min(boxes[i], boxes[j]);
+		float dy = Math.max(boxes[i+4], boxes[j+4]) - Math.min(boxes[i+1], boxes[j+1]);
+		float dz = Math.max(boxes[i+5], boxes[j+5]) - Math.min(boxes[i+2], boxes[j+2]);
+		return 2f * (dx * dy + dy * dz + dz * dx);
+	}
+
+	private int allocate() {
+		int node;
+		if (freeList != NULL) {
+			node = freeList;
+			freeList = parent[node];
+		} else {
+			if (numNodes == parent.length) {
+				int capacity = numNodes * 2;
+				float[] b = new float[capacity * 6];
+				System.arraycopy(boxes, 0, b, 0, boxes.length);
+				boxes = b;
+				parent = grow(parent, capacity);
+				left = grow(left, capacity);
+				right = grow(right, capacity);
+				height = grow(height, capacity);
+				Object[] it = new Object[capacity];
+				System.arraycopy(items, 0, it, 0, items.length);
+				items = it;
+			}
+			node = numNodes++;
+		}
+		parent[node] = NULL;
+		left[node] = NULL;
+		right[node] = NULL;
+		height[node] = 0;
+		return node;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] result = new int[capacity];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	private void free(int node) {
+		parent[node] = freeList;
+		height[node] = -1;
+		freeList = node;
+	}
+
+	private void insertLeaf(int leaf) {
+		if (root == NULL) {
+			root = leaf;
+			parent[leaf] = NULL;
+			return;
+		}
+
+		// find the best sibling, going down the cheapest branch (surface area heuristic).
+		int index = root;
+		while (!isLeaf(index)) {
+			int child1 = left[index], child2 = right[index];
+			float area = area(index);
+			float combined = combinedArea(index, leaf);
+
+			// cost of making a new parent for this node and the new leaf
+			float cost = 2f * combined;
+			// minimum cost of pushing the leaf further down the tree
+			float inheritance = 2f * (combined - area);
+
+			float cost1 = combinedArea(leaf, child1) + inheritance;
+			if (!isLeaf(child1)) cost1 -= area(child1);
+			float cost2 = combinedArea(leaf, child2) + inheritance;
+			if (!isLeaf(child2)) cost2 -= area(child2);
+
+			if (cost < cost1 && cost < cost2) break;
+			index = cost1 < cost2 ? child1 : child2;
+		}
+		int sibling = index;
+
+		// new parent for the sibling and the leaf.
+		int oldParent = parent[sibling];
+		int newParent = allocate();
+		parent[newParent] = oldParent;
+		items[newParent] = null;
+		combine(newParent, leaf, sibling);
+		height[newParent] = height[sibling] + 1;
+		left[newParent] = sibling;
+		right[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+		if (oldParent != NULL) {
+			if (left[oldParent] == sibling) left[oldParent] = newParent;
+			else right[oldParent] = newParent;
+		} else {
+			root = newParent;
+		}
+
+		refit(parent[leaf]);
+	}
+
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NULL;
+			return;
+		}
+
+		int p = parent[leaf];
+		int grandParent = parent[p];
+		int sibling = left[p] == leaf ? right[p] : left[p];
+
+		if (grandParent != NULL) {
+			if (left[grandParent] == p) left[grandParent] = sibling;
+			else right[grandParent] = sibling;
+			parent[sibling] = grandParent;
+			free(p);
+			refit(grandParent);
+		} else {
+			root = sibling;
+			parent[sibling] = NULL;
+			free(p);
+		}
+	}
+
+	/**
+	 * Walk back up to the root, re-balancing and fixing boxes and heights.
+	 */
+	private void refit(int index) {
+		while (index != NULL) {
+			index = balance(index);
+			int child1 = left[index], child2 = right[index];
+			height[index] = 1 + Math.max(height[child1], height[child2]);
+			combine(index, child1, child2);
+			index = parent[index];
+		}
+	}
+
+	/**
+	 * If a's subtrees differ in height by more than one, rotate the taller one up.
+	 * @return the index of the node now in a's place.
+	 */
+	private int balance(int a) {
+		if (isLeaf(a) || height[a] < 2) return a;
+
+		int b = left[a], c = right[a];
+		int difference = height[c] - height[b];
+
+		if (difference > 1) {
+			return rotateUp(a, c, b, false);
+		}
+		if (difference < -1) {
+			return rotateUp(a, b, c, true);
+		}
+		return a;
+	}
+
+	/**
+	 * Swap a with its taller child (up); a keeps the other child (stay) and
+	 * takes the shorter of up's children.
+	 */
+	private int rotateUp(int a, int up, int stay, boolean upIsLeft) {
+		int f = left[up], g = right[up];
+
+		// up takes a's place
+		left[up] = a;
+		parent[up] = parent[a];
+		parent[a] = up;
+		if (parent[up] != NULL) {
+			if (left[parent[up]] == a) left[parent[up]] = up;
+			else right[parent[up]] = up;
+		} else {
+			root = up;
+		}
+
+		// the taller grandchild stays with up, the shorter goes to a.
+		int keep = height[f] > height[g] ? f : g;
+		int give = keep == f ? g : f;
+		right[up] = keep;
+		if (upIsLeft) left[a] = give;
+		else right[a] = give;
+		parent[give] = a;
+
+		combine(a, stay, give);
+		combine(up, a, keep);
+		height[a] = 1 + Math.max(height[stay], height[give]);
+		height[up] = 1 + Math.max(height[a], height[keep]);
+		return up;
+	}
+
+}
@@ -0,0 +1,558 @@
+package com.sastraxi.chisel.math;
+
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.sastraxi.chisel.map.Brush;
+
+/**
+ * A convex polytope that starts out as a huge box and is cut down one plane at a time.
+ * Faces are counter-clockwise loops of vertex indices (seen from outside), each tagged with
+ * the plane that made it. Working coordinates are doubles so that the far-away box corners
+ * don't eat into our precision.
+ *
+ * Each vertex also remembers three planes that meet there, so whenever its coordinates are
+ * too close to a cutting plane to tell which side it's on, Predicates can decide exactly.
+ * That keeps every cut consistent, even where four or more planes meet at a vertex.
+ *
+ * Each cut only visits the faces that are still alive, and only rebuilds the faces the plane
+ * actually crosses; so the cost of the whole thing grows with the size of the output rather
+ * than with the number of plane triples.
+ */
+class ClippingPolytope {
+
+	/**
+	 * Half-size of the initial box; comfortably larger than any map Hammer will make (+/-16384).
+	 */
+	static final double EXTENT = 1e6;
+
+	/**
+	 * The initial box's planes come first; planes given to clip() are numbered after them.
+	 */
+	private static final int BOX_PLANES = 6;
+
+	private static final int INSIDE = -1, ON = 0, OUTSIDE = 1;
+
+	// the initial box's faces; never modified, so every reset can share them.
+	private static final int[][] BOX_LOOPS = {
+		{ 0, 3, 2, 1 }, { 4, 5, 6, 7 }, { 0, 4, 7, 3 }, { 1, 2, 6, 5 }, { 0, 1, 5, 4 }, { 3, 7, 6, 2 }
+	};
+
+	private double[] planes;
+	private final IntArray planeIndices = new IntArray(); // what clip() was told, for each of ours
+	private int numPlanes = 0;
+
+	private double[] coords = new double[3 * 32];
+	private double[] radius = new double[32];      // how far coords may be from the real vertex
+	private int[] vertexPlanes = new int[3 * 32]; // three planes that meet at each vertex
+	private int[] side = new int[32];
+	private int[] stamp = new int[32];
+	private int numVertices = 0;
+	private double maxRadius = 0.0;
+	private int cut = 0;
+
+	// every face's loop lives in loopData, at loopStart for loopLength; faces that get cut
+	// are written out again at the end, and the space is only reclaimed by reset().
+	private int[] loopData = new int[256];
+	private int loopDataSize = 0;
+	private final IntArray loopStart = new IntArray(), loopLength = new IntArray();
+	private final IntArray loopPlanes = new IntArray();
+
+	// scratch, reused between cuts
+	private final IntArray clipped = new IntArray();
+	private final IntIntMap edgeVertex = new IntIntMap();
+	private final IntIntMap capNext = new IntIntMap();
+
+	// scratch for toBrush
+	private int[] byPlane = new int[32]; // face for each plane, or -1
+	private int[] remap = new int[32], offsets = new int[33], incident = new int[96], fill = new int[32];
+	private final IntArray incidence = new IntArray();
+
+	ClippingPolytope() {
+		this(32);
+	}
+
+	/**
+	 * @param numPlanes how many times clip() will be called, so we only need one plane array.
+	 */
+	ClippingPolytope(int numPlanes) {
+		planes = new double[Predicates.DOUBLES_PER_PLANE * (BOX_PLANES + numPlanes)];
+		reset();
+	}
+
+	/**
+	 * Go back to the initial box, making room for numPlanes calls to clip().
+	 */
+	void reset(int numPlanes) {
+		int needed = Predicates.DOUBLES_PER_PLANE * (BOX_PLANES + numPlanes);
+		if (planes.length < needed) {
+			planes = new double[needed];
+		}
+		reset();
+	}
+
+	/**
+	 * Go back to the initial box.
+	 */
+	void reset() {
+		if (cut > Integer.MAX_VALUE / 2) {
+			// stamps are compared against cut; start over long before it could wrap around.
+			java.util.Arrays.fill(stamp, 0);
+			cut = 0;
+		}
+		numVertices = 0;
+		maxRadius = 0.0;
+		numPlanes = 0;
+		planeIndices.clear();
+		loopDataSize = 0;
+		loopStart.clear();
+		loopLength.clear();
+		loopPlanes.clear();
+
+		final double e = EXTENT;
+		addPlane( 0.0,  0.0, -1.0, -e, -1); // 0: -z
+		addPlane( 0.0,  0.0,  1.0, -e, -1); // 1: +z
+		addPlane(-1.0,  0.0,  0.0, -e, -1); // 2: -x
+		addPlane( 1.0,  0.0,  0.0, -e, -1); // 3: +x
+		addPlane( 0.0, -1.0,  0.0, -e, -1); // 4: -y
+		addPlane( 0.0,  1.0,  0.0, -e, -1); // 5: +y
+
+		addVertex(-e, -e, -e, 2, 4, 0); addVertex( e, -e, -e, 3, 4, 0);
+		addVertex( e,  e, -e, 3, 5, 0); addVertex(-e,  e, -e, 2, 5, 0);
+		addVertex(-e, -e,  e, 2, 4, 1); addVertex( e, -e,  e, 3, 4, 1);
+		addVertex( e,  e,  e, 3, 5, 1); addVertex(-e,  e,  e, 2, 5, 1);
+
+		for (int f = 0; f < BOX_LOOPS.length; ++f) {
+			addLoop(BOX_LOOPS[f], BOX_LOOPS[f].length, f);
+		}
+	}
+
+	boolean isEmpty() {
+		return loopStart.size == 0;
+	}
+
+	/**
+	 * @return true if some face of the initial box survived every cut so far.
+	 */
+	boolean isUnbounded() {
+		for (int f = 0; f < loopPlanes.size; ++f) {
+			if (loopPlanes.get(f) < BOX_PLANES) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Keep only the part of the polytope behind the given plane (plane.distance(v) <= 0).
+	 *
+	 * @param plane the cutting plane; its normal points out of the resulting solid.
+	 * @param planeIndex tag for the new face, if one is made.
+	 * @return false if the cut could not be made consistently. With exact classification
+	 *         that shouldn't happen, but the polytope is garbage if it does and should be reset.
+	 */
+	boolean clip(Plane plane, int planeIndex) {
+
+		// classify every live vertex exactly once. Coordinates are within maxRadius of the real
+		// thing and no bigger than the initial box, so one bound covers every vertex; only
+		// the few closer to the plane than that need a closer look.
+		cut++;
+		boolean anyInside = false, anyOutside = false;
+		final int q = addPlane(plane.normal.x, plane.normal.y, plane.normal.z, plane.d, planeIndex);
+		final double nx = plane.normal.x, ny = plane.normal.y, nz = plane.normal.z, d = plane.d;
+		final double norm = Math.abs(nx) + Math.abs(ny) + Math.abs(nz);
+		final double bound = norm * (maxRadius + Predicates.FILTER * EXTENT) + Predicates.FILTER * Math.abs(d);
+		for (int f = 0; f < loopStart.size; ++f) {
+			for (int k = loopStart.get(f), end = k + loopLength.get(f); k < end; ++k) {
+				int v = loopData[k];
+				if (stamp[v] == cut) continue;
+				stamp[v] = cut;
+				double dist = nx * coords[3*v] + ny * coords[3*v+1] + nz * coords[3*v+2] + d;
+				int s;
+				if (dist > bound) {
+					s = OUTSIDE;
+				} else if (dist < -bound) {
+					s = INSIDE;
+				} else {
+					s = classify(v, q, dist);
+				}
+				side[v] = s;
+				if (s == OUTSIDE) anyOutside = true;
+				else if (s == INSIDE) anyInside = true;
+			}
+		}
+
+		if (!anyOutside) return true;  // the plane doesn't touch us; it won't make a face.
+		if (!anyInside) {              // nothing with any volume is left.
+			loopStart.clear();
+			loopLength.clear();
+			loopPlanes.clear();
+			return true;
+		}
+
+		edgeVertex.clear();
+		capNext.clear();
+		int firstNew = numVertices;
+		int kept = 0;
+		for (int f = 0; f < loopStart.size; ++f) {
+			int start = loopStart.get(f), n = loopLength.get(f);
+			int plane_f = loopPlanes.get(f);
+
+			boolean crossed = false;
+			for (int k = start; k < start + n; ++k) {
+				if (side[loopData[k]] == OUTSIDE) {
+					crossed = true;
+					break;
+				}
+			}
+
+			if (crossed) {
+				clipped.clear();
+				for (int i = 0; i < n; ++i) {
+					int a = loopData[start + i], b = loopData[start + (i+1)%n];
+					if (side[a] != OUTSIDE) clipped.add(a);
+					if (side[a] * side[b] < 0) {
+						int v = splitEdge(a, b, plane_f, q);
+						if (v < 0) return false;
+						clipped.add(v);
+					}
+				}
+				if (clipped.size < 3) continue; // face is gone (or only touches the plane).
+				start = appendLoop(clipped.items, clipped.size);
+				n = clipped.size;
+			}
+
+			// any edge lying on the plane borders the new face; in a consistently-wound
+			// solid the new face walks that edge in the opposite direction.
+			for (int i = 0; i < n; ++i) {
+				int a = loopData[start + i], b = loopData[start + (i+1)%n];
+				if (side[a] == ON && side[b] == ON) {
+					if (capNext.containsKey(b)) return false;
+					capNext.put(b, a);
+				}
+			}
+
+			loopStart.set(kept, start);
+			loopLength.set(kept, n);
+			loopPlanes.set(kept, plane_f);
+			kept++;
+		}
+		loopStart.truncate(kept);
+		loopLength.truncate(kept);
+		loopPlanes.truncate(kept);
+
+		// new vertices now know both faces along the edges they split, so we can place them.
+		for (int v = firstNew; v < numVertices; ++v) {
+			if (vertexPlanes[3*v+1] < 0) return false;
+			radius[v] = Predicates.intersect(planes, vertexPlanes[3*v], vertexPlanes[3*v+1], vertexPlanes[3*v+2], coords, 3*v);
+			if (radius[v] == Double.POSITIVE_INFINITY) return false;
+			maxRadius = Math.max(maxRadius, radius[v]);
+		}
+
+		// chain the new face together.
+		if (capNext.size < 3) return false;
+		int length = capNext.size;
+		ensureLoopData(length);
+		// start from the lowest vertex, so the result doesn't depend on the map's history.
+		int start = Integer.MAX_VALUE;
+		for (IntIntMap.Keys keys = capNext.keys(); keys.hasNext;) {
+			start = Math.min(start, keys.next());
+		}
+		int v = start, k = 0;
+		do {
+			if (k == length) return false;
+			loopData[loopDataSize + k++] = v;
+			v = capNext.get(v, -1);
+			if (v < 0) return false;
+		} while (v != start);
+		if (k != length) return false;
+
+		loopStart.add(loopDataSize);
+		loopLength.add(length);
+		loopPlanes.add(q);
+		loopDataSize += length;
+		return true;
+	}
+
+	/**
+	 * Which side of plane q is vertex v on, given that it's too close to call at a glance?
+	 * Try again with the vertex's own error bound, then exactly.
+	 */
+	private int classify(int v, int q, double dist) {
+		int p = q * Predicates.DOUBLES_PER_PLANE;
+		double nx = planes[p], ny = planes[p+1], nz = planes[p+2], d = planes[p+3];
+		double bound = (Math.abs(nx) + Math.abs(ny) + Math.abs(nz)) * radius[v] + Predicates.FILTER
+				* (Math.abs(nx * coords[3*v]) + Math.abs(ny * coords[3*v+1]) + Math.abs(nz * coords[3*v+2]) + Math.abs(d));
+		if (dist > bound) return OUTSIDE;
+		if (dist < -bound) return INSIDE;
+		return Predicates.side(planes, q, vertexPlanes[3*v], vertexPlanes[3*v+1], vertexPlanes[3*v+2]);
+	}
+
+	/**
+	 * Returns (creating the first time) the vertex where the cutting plane crosses edge a-b.
+	 * It's where the two faces along the edge meet the cutting plane; each face tells us
+	 * its own plane as it gets here, and clip() places the vertex once both have.
+	 */
+	private int splitEdge(int a, int b, int face, int cutting) {
+		int lo = Math.min(a, b), hi = Math.max(a, b);
+		if (hi > 0xffff) return -1;
+		int key = (lo << 16) | hi;
+		int existing = edgeVertex.get(key, -1);
+		if (existing >= 0) {
+			if (vertexPlanes[3*existing] != face) vertexPlanes[3*existing+1] = face;
+			return existing;
+		}
+
+		int v = addVertex(0.0, 0.0, 0.0, face, -1, cutting);
+		side[v] = ON;
+		stamp[v] = cut;
+		edgeVertex.put(key, v);
+		return v;
+	}
+
+	private int addPlane(double nx, double ny, double nz, double d, int planeIndex) {
+		if ((numPlanes + 1) * Predicates.DOUBLES_PER_PLANE > planes.length) {
+			double[] p = new double[planes.length * 2];
+			System.arraycopy(planes, 0, p, 0, numPlanes * Predicates.DOUBLES_PER_PLANE);
+			planes = p;
+		}
+		Predicates.set(planes, numPlanes, nx, ny, nz, d);
+		planeIndices.add(planeIndex);
+		return numPlanes++;
+	}
+
+	private int addVertex(double x, double y, double z, int plane_a, int plane_b, int plane_c) {
+		if (numVertices == side.length) {
+			int capacity = numVertices * 2;
+			double[] c = new double[capacity * 3];
+			System.arraycopy(coords, 0, c, 0, numVertices * 3);
+			coords = c;
+			double[] r = new double[capacity];
+			System.arraycopy(radius, 0, r, 0, numVertices);
+			radius = r;
+			int[] vp = new int[capacity * 3];
+			System.arraycopy(vertexPlanes, 0, vp, 0, numVertices * 3);
+			vertexPlanes = vp;
+			int[] s = new int[capacity];
+			System.arraycopy(side, 0, s, 0, numVertices);
+			side = s;
+			int[] st = new int[capacity];
+			System.arraycopy(stamp, 0, st, 0, numVertices);
+			stamp = st;
+		}
+		coords[3*numVertices] = x;
+		coords[3*numVertices+1] = y;
+		coords[3*numVertices+2] = z;
+		radius[numVertices] = 0.0;
+		vertexPlanes[3*numVertices] = plane_a;
+		vertexPlanes[3*numVertices+1] = plane_b;
+		vertexPlanes[3*numVertices+2] = plane_c;
+		stamp[numVertices] = 0;
+		return numVertices++;
+	}
+
+	private void addLoop(int[] loop, int length, int planeIndex) {
+		loopStart.add(appendLoop(loop, length));
+		loopLength.add(length);
+		loopPlanes.add(planeIndex);
+	}
+
+	/**
+	 * Copy a loop to the end of loopData.
+	 *
+	 * @return where it starts.
+	 */
+	private int appendLoop(int[] loop, int length) {
+		ensureLoopData(length);
+		System.arraycopy(loop, 0, loopData, loopDataSize, length);
+		loopDataSize += length;
+		return loopDataSize - length;
+	}
+
+	private void ensureLoopData(int extra) {
+		if (loopDataSize + extra > loopData.length) {
+			int[] d = new int[Math.max(loopData.length * 2, loopDataSize + extra)];
+			System.arraycopy(loopData, 0, d, 0, loopDataSize);
+			loopData = d;
+		}
+	}
+
+	/**
+	 * Turn what's left into a Brush. Faces come out in plane order, one per plane that
+	 * contributed to the solid; each vertex is recomputed from the planes that meet there,
+	 * exactly as HalfspacePolygon's vertex enumeration would have found it.
+	 *
+	 * @param planes the planes that were passed to clip(), addressed by planeIndex.
+	 * @return a new Brush, or null if the polytope is empty or unbounded.
+	 */
+	Brush toBrush(Array<Plane> planes) {
+		if (isEmpty() || isUnbounded()) return null;
+
+		if (byPlane.length < planes.size) byPlane = new int[planes.size * 2];
+		java.util.Arrays.fill(byPlane, 0, planes.size, -1);
+		for (int f = 0; f < loopStart.size; ++f) {
+			byPlane[planeIndices.get(loopPlanes.get(f))] = f;
+		}
+
+		// compact vertices in order of appearance, counting the faces that meet at each.
+		if (remap.length < numVertices) remap = new int[numVertices * 2];
+		java.util.Arrays.fill(remap, 0, numVertices, -1);
+		incidence.clear();
+		int n = 0;
+		for (int p = 0; p < planes.size; ++p) {
+			int f = byPlane[p];
+			if (f < 0) continue;
+			for (int k = loopStart.get(f), end = k + loopLength.get(f); k < end; ++k) {
+				int v = loopData[k];
+				if (remap[v] < 0) {
+					remap[v] = n++;
+					incidence.add(0);
+				}
+				incidence.incr(remap[v], 1);
+			}
+		}
+
+		// compressed lists of incident planes per output vertex, in ascending plane order.
+		if (offsets.length < n + 1) {
+			offsets = new int[n * 2 + 1];
+			fill = new int[n * 2];
+		}
+		for (int i = 0; i < n; ++i) {
+			offsets[i+1] = offsets[i] + incidence.get(i);
+		}
+		if (incident.length < offsets[n]) incident = new int[offsets[n] * 2];
+		java.util.Arrays.fill(fill, 0, n, 0);
+		for (int p = 0; p < planes.size; ++p) {
+			int f = byPlane[p];
+			if (f < 0) continue;
+			for (int k = loopStart.get(f), end = k + loopLength.get(f); k < end; ++k) {
+				int i = remap[loopData[k]];
+				incident[offsets[i] + fill[i]++] = p;
+			}
+		}
+
+		Array<Vector3> vertices = new Array<Vector3>(n);
+		for (int i = 0; i < n; ++i) {
+			vertices.add(null);
+		}
+		for (int v = 0; v < numVertices; ++v) {
+			int i = remap[v];
+			if (i < 0) continue;
+			Vector3 p = new Vector3();
+			if (!snap(planes, incident, offsets[i], offsets[i+1], p)) {
+				p.set((float) coords[3*v], (float) coords[3*v+1], (float) coords[3*v+2]);
+			}
+			vertices.set(i, p);
+		}
+
+		Array<int[]> faceLoops = new Array<int[]>();
+		boolean shortEdges = false;
+		for (int p = 0; p < planes.size; ++p) {
+			int f = byPlane[p];
+			if (f < 0) continue;
+			int start = loopStart.get(f);
+			int[] face = new int[loopLength.get(f)];
+			for (int k = 0; k < face.length; ++k) {
+				face[k] = remap[loopData[start + k]];
+			}
+			for (int k = 0; k < face.length && !shortEdges; ++k) {
+				float tolerance = VertexWelder.DEFAULT_TOLERANCE;
+				shortEdges = vertices.get(face[k]).dst2(vertices.get(face[(k+1)%face.length])) < tolerance * tolerance;
+			}
+			faceLoops.add(face);
+		}
+
+		// where planes nearly (but not exactly) meet at a point there can be slivers, too small
+		// to see; weld them away, as long as that leaves a closed solid.
+		if (shortEdges) {
+			weld(vertices, faceLoops);
+		}
+
+		Array<Face> faces = new Array<Face>(faceLoops.size);
+		for (int[] loop: faceLoops) {
+			faces.add(new Face(loop));
+		}
+		return new Brush(vertices, faces);
+	}
+
+	/**
+	 * Merge vertices within VertexWelder.DEFAULT_TOLERANCE of each other, dropping faces that
+	 * collapse, in place. Leaves everything as it was if the result wouldn't be closed.
+	 */
+	private static void weld(Array<Vector3> vertices, Array<int[]> loops) {
+		VertexWelder welder = new VertexWelder(VertexWelder.DEFAULT_TOLERANCE, vertices.size);
+		int[] target = new int[vertices.size];
+		for (int i = 0; i < vertices.size; ++i) {
+			target[i] = welder.add(vertices.get(i)); // numbered in order, so the first of each group
+		}
+
+		Array<int[]> welded = new Array<int[]>(loops.size);
+		IntArray loop = new IntArray();
+		for (int[] original: loops) {
+			loop.clear();
+			for (int v: original) {
+				int w = target[v];
+				if (loop.size == 0 || loop.peek() != w) loop.add(w);
+			}
+			while (loop.size > 1 && loop.first() == loop.peek()) loop.pop();
+			if (loop.size >= 3) welded.add(loop.toArray());
+		}
+		if (welded.size < 4 || !isClosed(welded, welder.size())) return;
+
+		Array<Vector3> kept = new Array<Vector3>(welder.size());
+		for (int i = 0; i < vertices.size; ++i) {
+			if (target[i] == kept.size) kept.add(vertices.get(i));
+		}
+		vertices.clear();
+		vertices.addAll(kept);
+		loops.clear();
+		loops.addAll(welded);
+	}
+
+	/**
+	 * @return true if every edge is walked once in each direction, every vertex is used, and
+	 *         there are as many edges as a closed solid with that many vertices and faces has.
+	 */
+	private static boolean isClosed(Array<int[]> loops, int numVertices) {
+		int n = 0;
+		for (int[] loop: loops) n += loop.length;
+		long[] edges = new long[n];
+		boolean[] used = new boolean[numVertices];
+		n = 0;
+		for (int[] loop: loops) {
+			for (int k = 0; k < loop.length; ++k) {
+				edges[n++] = ((long) loop[k] << 32) | loop[(k+1) % loop.length];
+				used[loop[k]] = true;
+			}
+		}
+		java.util.Arrays.sort(edges);
+		for (int i = 0; i < n; ++i) {
+			if (i > 0 && edges[i] == edges[i-1]) return false;
+			long reverse = (edges[i] << 32) | (edges[i] >>> 32);
+			if (java.util.Arrays.binarySearch(edges, reverse) < 0) return false;
+		}
+		for (boolean u: used) {
+			if (!u) return false;
+		}
+		return numVertices - n / 2 + loops.size == 2;
+	}
+
+	/**
+	 * Intersect the first plane triple (in enumeration order: a > b > c, then lexicographically)
+	 * that meets at a single point.
+	 */
+	private static boolean snap(Array<Plane> planes, int[] incident, int from, int to, Vector3 out) {
+		for (int a = from + 2; a < to; ++a) {
+			for (int b = from + 1; b < a; ++b) {
+				for (int c = from; c < b; ++c) {
+					if (LocalMath.intersect(planes.get(incident[a]), planes.get(incident[b]),
+					                        planes.get(incident[c]), out)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.sastraxi.chisel.math;
+
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.utils.Array;
+import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.trace.Trace;
+
+/**
+ * Everything HalfspacePolygon.toConvex needs between calls: the clipping polytope and all
+ * of its scratch arrays, which only ever grow. Past the first few brushes, the only things
+ * allocated are the Brush that comes out and its faces.
+ *
+ * Not thread-safe; use one per thread. get() hands out the calling thread's own, so any
+ * worker in the pool (or the render thread) can call toConvex without sharing anything.
+ */
+public class ConvexSolver {
+
+	private static final ThreadLocal<ConvexSolver> perThread = new ThreadLocal<ConvexSolver>() {
+		@Override
+		protected ConvexSolver initialValue() {
+			return new ConvexSolver();
+		}
+	};
+
+	/**
+	 * @return this thread's solver.
+	 */
+	public static ConvexSolver get() {
+		return perThread.get();
+	}
+
+	private final ClippingPolytope polytope = new ClippingPolytope();
+
+	/**
+	 * See {@link HalfspacePolygon#toConvex(Array)}.
+	 */
+	public Brush toConvex(Array<Plane> planes) {
+		polytope.reset(planes.size);
+		for (int a = 0; a < planes.size; ++a) {
+			if (!polytope.clip(planes.get(a), a)) {
+				if (Trace.enabled()) Trace.record(Trace.CONVEX, "clipping by plane " + a + " failed; enumerating instead");
+				return HalfspacePolygon.enumerateConvex(planes);
+			}
+		}
+		Brush brush = polytope.toBrush(planes);
+		if (brush == null) {
+			if (Trace.enabled()) Trace.record(Trace.CONVEX, "clipped solid is empty or unbounded; enumerating instead");
+			return HalfspacePolygon.enumerateConvex(planes);
+		}
+		return brush;
+	}
+
+}
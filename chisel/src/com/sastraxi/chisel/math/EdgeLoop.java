@@ -0,0 +1,133 @@
+package com.sastraxi.chisel.math;
+
+import com.badlogic.gdx.utils.Array;
+
+import java.util.Arrays;
+
+/**
+ * Puts an unordered set of edges (as they come out of plane intersection) in order around
+ * a face, in time proportional to the number of edges. Each vertex's two neighbours are
+ * looked up in a small hash table, then the ring is walked once.
+ *
+ * Edge sets that don't make a single ring are never fatal here; the result just says what
+ * was wrong with them, and it's up to the caller what to do.
+ */
+public class EdgeLoop {
+
+	public enum Status {
+		/** one ring through every vertex, visiting each once */
+		CLOSED,
+		/** no edges at all (e.g. a plane that doesn't touch the solid) */
+		EMPTY,
+		/** fewer than three edges, an edge from a vertex to itself, or the same edge twice */
+		DEGENERATE,
+		/** some vertex is on only one edge */
+		OPEN,
+		/** some vertex is on three or more edges */
+		BRANCHED,
+		/** every vertex is on two edges, but they make more than one ring */
+		SPLIT
+	}
+
+	private static final int EMPTY_SLOT = -1; // vertex indices are >= 0
+
+	private final Status status;
+	private final int[] loop;
+
+	private EdgeLoop(Status status, int[] loop) {
+		this.status = status;
+		this.loop = loop;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean isClosed() {
+		return status == Status.CLOSED;
+	}
+
+	/**
+	 * @return the vertices in order around the ring, starting with the first edge (and in
+	 *         its direction); null unless closed.
+	 */
+	public int[] getLoop() {
+		return loop;
+	}
+
+	/**
+	 * Each edge is an int[] {index_start_vertex, index_end_vertex}, in any order and
+	 * either direction.
+	 */
+	public static EdgeLoop order(Array<int[]> edges) {
+		int n = edges.size;
+		if (n == 0) return new EdgeLoop(Status.EMPTY, null);
+		if (n < 3) return new EdgeLoop(Status.DEGENERATE, null);
+
+		// vertex -> its (up to) two neighbours
+		int mask = (Integer.highestOneBit(n * 4 - 1) << 1) - 1;
+		int[] keys = new int[mask + 1];
+		int[] first = new int[mask + 1], second = new int[mask + 1];
+		Arrays.fill(keys, EMPTY_SLOT);
+		for (int i = 0; i < n; ++i) {
+			int s = edges.get(i)[LocalMath.EDGE_START], e = edges.get(i)[LocalMath.EDGE_END];
+			if (s == e) return new EdgeLoop(Status.DEGENERATE, null);
+			for (int k = 0; k < 2; ++k) {
+				int v = k == 0 ? s : e, other = k == 0 ? e : s;
+				int slot = slot(keys, mask, v);
+				if (keys[slot] == EMPTY_SLOT) {
+					keys[slot] = v;
+					first[slot] = other;
+					second[slot] = EMPTY_SLOT;
+				} else if (first[slot] == other || second[slot] == other) {
+					return new EdgeLoop(Status.DEGENERATE, null);
+				} else if (second[slot] == EMPTY_SLOT) {
+					second[slot] = other;
+				} else {
+					return new EdgeLoop(Status.BRANCHED, null);
+				}
+			}
+		}
+		for (int slot = 0; slot <= mask; ++slot) {
+			if (keys[slot] != EMPTY_SLOT && second[slot] == EMPTY_SLOT) return new EdgeLoop(Status.OPEN, null);
+		}
+
+		// everything is on exactly two edges; walk the ring the first edge is on.
+		int start = edges.get(0)[LocalMath.EDGE_START];
+		int[] loop = new int[n];
+		int length = 0;
+		int prev = start, current = edges.get(0)[LocalMath.EDGE_END];
+		loop[length++] = start;
+		while (current != start) {
+			loop[length++] = current;
+			int slot = slot(keys, mask, current);
+			int next = first[slot] == prev ? second[slot] : first[slot];
+			prev = current;
+			current = next;
+		}
+		if (length < n) return new EdgeLoop(Status.SPLIT, null);
+		return new EdgeLoop(Status.CLOSED, loop);
+	}
+
+	/**
+	 * @return the same loop, wound the other way, still starting from the same vertex.
+	 */
+	public static int[] reverse(int[] loop) {
+		int[] reversed = new int[loop.length];
+		reversed[0] = loop[0];
+		for (int i = 1; i < loop.length; ++i) {
+			reversed[i] = loop[loop.length - i];
+		}
+		return reversed;
+	}
+
+	private static int slot(int[] keys, int mask, int v) {
+		int h = v * 0x9E3779B9;
+		int slot = (h ^ (h >>> 16)) & mask;
+		while (keys[slot] != EMPTY_SLOT && keys[slot] != v) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+}
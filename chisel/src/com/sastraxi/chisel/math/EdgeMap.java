@@ -0,0 +1,99 @@
+package com.sastraxi.chisel.math;
+
+import java.util.Arrays;
+
+/**
+ * Edges between two vertices, each with an int attached (where it was split, say): the
+ * vertex pair is packed into a long, in either order, so an edge is found from either of
+ * the faces it's on. Nothing is boxed, and there's no limit on the vertex indices.
+ */
+public class EdgeMap {
+
+	private static final long EMPTY = -1L; // no pair packs to this
+
+	private long[] keys;
+	private int[] values;
+	private int size = 0;
+
+	public EdgeMap() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity how many edges to make room for up front.
+	 */
+	public EdgeMap(int capacity) {
+		int tableSize = Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) << 1;
+		keys = new long[tableSize];
+		values = new int[tableSize];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * @return the number of edges.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * Adds the edge from a to b (or b to a), unless it's already there.
+	 *
+	 * @return false if it was already there, in which case its value is left alone.
+	 */
+	public boolean add(int a, int b, int value) {
+		long key = PlanePairMap.key(a, b);
+		int slot = slot(key);
+		if (keys[slot] == key) return false;
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size * 2 > keys.length) grow();
+		return true;
+	}
+
+	public boolean contains(int a, int b) {
+		long key = PlanePairMap.key(a, b);
+		return keys[slot(key)] == key;
+	}
+
+	/**
+	 * @return the edge's value, or missing if there's no such edge.
+	 */
+	public int get(int a, int b, int missing) {
+		long key = PlanePairMap.key(a, b);
+		int slot = slot(key);
+		return keys[slot] == key ? values[slot] : missing;
+	}
+
+	/**
+	 * @return where key is in the table, or the empty slot where it would go.
+	 */
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[keys.length];
+		Arrays.fill(keys, EMPTY);
+		for (int s = 0; s < oldKeys.length; ++s) {
+			if (oldKeys[s] == EMPTY) continue;
+			int slot = slot(oldKeys[s]);
+			keys[slot] = oldKeys[s];
+			values[slot] = oldValues[s];
+		}
+	}
+
+}
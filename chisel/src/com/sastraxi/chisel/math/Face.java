@@ -1,78 +1,107 @@
 package com.sastraxi.chisel.math;
 
+import com.badlogic.gdx.math.Plane;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
 
 import java.util.Arrays;
-import java.util.Iterator;
 
 /**
- * Light-weight edges structure for a face.
- * Each edge is an int[] {index_start_vertex, index_end_vertex}.
+ * Light-weight loop of vertex indices for a face, packed in a single int[].
+ * Edge i runs from vertex get(i) to vertex get((i+1) % arity()).
+ *
+ * Faces are immutable; the set of vertices used (as a bitset) is worked out once when the
+ * face is made, and the plane by the owning Brush, whenever its vertices move. Nothing in
+ * here allocates after that, except the getEdges() adapter (once, on first use).
  *
  * Vertex indices are always >= 0; this is an implementation detail.
  */
 public class Face {
-	private static final int INITIAL_CAPACITY = 3;
 
+	private final int[] loop;
+	private final long[] members;
+	private final boolean ordered;
+
+	private final Plane plane = new Plane(new Vector3(), 0f);
+	private Array<int[]> edges = null;
+
+	/**
+	 * The edges must already be in order: each starts where the previous one ended.
+	 * Each edge is an int[] {index_start_vertex, index_end_vertex}.
+	 */
 	public Face(Array<int[]> edges) {
-		this.edges = edges;
+		this.loop = new int[edges.size];
+		boolean ordered = edges.size > 0;
+		for (int i = 0; i < edges.size; ++i) {
+			loop[i] = edges.get(i)[LocalMath.EDGE_START];
+			if (edges.get(i)[LocalMath.EDGE_END] != edges.get((i+1) % edges.size)[LocalMath.EDGE_START]) {
+				ordered = false;
+			}
+		}
+		this.ordered = ordered;
+		this.members = generateMembers(loop);
 	}
 
-	private Array<int[]> edges;
-	private Integer largest = 32; // FIXME: fix this!! this caps the max # of vertices/face!
-
 	/**
-	 * Faces must be wound counter-clockwise.
+	 * Faces must be wound counter-clockwise. The face keeps (and never modifies) the array.
 	 */
 	public Face(int[] faces) {
-		this.edges = new Array<int[]>();
-		for (int i = 0; i < faces.length; ++i) {
-			edges.add(new int[] {
-				faces[i],
-				faces[(i+1)%faces.length]
-			});
-		}
+		this.loop = faces;
+		this.ordered = faces.length > 0;
+		this.members = generateMembers(faces);
 	}
 
 	/**
-	 * Counts how many time each vertex is linked to.
-	 * @return an array of counts, addressed by vertex index.
+	 * @return a bitset of the vertex indices mentioned in the loop.
 	 */
-	private int[] generateCounts() {
-		int[] counts = new int[largest+1];
-		Arrays.fill(counts, 0);
-		for (int[] edge: edges) {
-			counts[edge[LocalMath.EDGE_START]]++;
-			counts[edge[LocalMath.EDGE_END]]++;
+	private static long[] generateMembers(int[] loop) {
+		int largest = 0;
+		for (int v: loop) {
+			largest = Math.max(largest, v);
+		}
+		long[] bits = new long[(largest >> 6) + 1];
+		for (int v: loop) {
+			bits[v >> 6] |= 1L << (v & 63);
 		}
-		return counts;
+		return bits;
+	}
+
+	private int numMembers() {
+		int n = 0;
+		for (long word: members) {
+			n += Long.bitCount(word);
+		}
+		return n;
 	}
 
 	public boolean isClosed() {
-		// the only valid face has a ring of edges around it.
-		// in such a ring, each vertex is visited exactly twice.
-		int num_twos = 0;
-		int counts[] = generateCounts();
-		for (int count: counts) {
-			if (count == 2) num_twos++;
+		// the only valid face has a ring of edges around it, visiting each vertex once.
+		return ordered && numMembers() == loop.length;
+	}
+
+	/**
+	 * Does a (possibly unordered) set of edges form a ring?
+	 * In such a ring, each vertex is visited exactly twice, and there are as many edges as vertices.
+	 */
+	public static boolean isClosed(Array<int[]> edges) {
+		int[] ends = new int[edges.size * 2];
+		for (int i = 0; i < edges.size; ++i) {
+			ends[2*i] = edges.get(i)[LocalMath.EDGE_START];
+			ends[2*i+1] = edges.get(i)[LocalMath.EDGE_END];
 		}
-		// in such a ring, there are as many edges as vertices.
-		return num_twos == edges.size;
+		Arrays.sort(ends);
+		for (int i = 0; i < ends.length; i += 2) {
+			if (ends[i] != ends[i+1]) return false;
+			if (i + 2 < ends.length && ends[i+2] == ends[i]) return false;
+		}
+		return true;
 	}
 
 	/**
 	 * Does this face form a loop?
 	 */
 	public boolean isOrdered() {
-		Integer last = null;
-		for (int[] edge: edges) {
-			if (last != null && last != edge[LocalMath.EDGE_START]) {
-				return false;
-			}
-			last = edge[LocalMath.EDGE_END];
-		}
-		return (edges.get(0)[LocalMath.EDGE_START] == edges.get(edges.size - 1)[LocalMath.EDGE_END]);
+		return ordered;
 	}
 
 	public boolean isConvex(Array<Vector3> vertices) {
@@ -80,6 +109,56 @@ public class Face {
 		return true;
 	}
 
+	public boolean contains(int vertex) {
+		int word = vertex >> 6;
+		return vertex >= 0 && word < members.length && (members[word] & (1L << (vertex & 63))) != 0;
+	}
+
+	/**
+	 * Work out (and keep) the plane of this face; see computePlane().
+	 */
+	public void updatePlane(Array<Vector3> vertices) {
+		computePlane(vertices, plane);
+	}
+
+	/**
+	 * Work out the plane of this face, using Newell's method so that nearly-collinear
+	 * corners don't throw the normal off. The plane this face keeps is left alone.
+	 * The normal points out of the face, assuming counter-clockwise winding.
+	 *
+	 * @return out.
+	 */
+	public Plane computePlane(Array<Vector3> vertices, Plane out) {
+		float nx = 0f, ny = 0f, nz = 0f;
+		float cx = 0f, cy = 0f, cz = 0f;
+		for (int i = 0; i < loop.length; ++i) {
+			Vector3 p = vertices.get(loop[i]);
+			Vector3 q = vertices.get(loop[(i+1) % loop.length]);
+			nx += (p.y - q.y) * (p.z + q.z);
+			ny += (p.z - q.z) * (p.x + q.x);
+			nz += (p.x - q.x) * (p.y + q.y);
+			cx += p.x; cy += p.y; cz += p.z;
+		}
+		out.normal.set(nx, ny, nz).nor();
+		out.d = -(out.normal.x * cx + out.normal.y * cy + out.normal.z * cz) / loop.length;
+		return out;
+	}
+
+	/**
+	 * Take the plane as given, e.g. when it was worked out once already and stored.
+	 */
+	public void setPlane(float nx, float ny, float nz, float d) {
+		plane.normal.set(nx, ny, nz);
+		plane.d = d;
+	}
+
+	/**
+	 * @return the plane of this face, as of the last updatePlane(). Don't modify it.
+	 */
+	public Plane getPlane() {
+		return plane;
+	}
+
 	/**
 	 * Assumes counter-clockwise polygon winding.
 	 *
@@ -89,9 +168,9 @@ public class Face {
 	public Vector3 getNormal(Array<Vector3> vertices) {
 	   	assert(arity() >= 3);
 
-		Vector3 p_a = vertices.get(edges.get(0)[LocalMath.EDGE_START]);
-		Vector3 p_b = vertices.get(edges.get(1)[LocalMath.EDGE_START]);
-		Vector3 p_c = vertices.get(edges.get(2)[LocalMath.EDGE_START]);
+		Vector3 p_a = vertices.get(loop[0]);
+		Vector3 p_b = vertices.get(loop[1]);
+		Vector3 p_c = vertices.get(loop[2]);
 
 		Vector3 l1 = p_b.cpy().sub(p_a);
 		Vector3 l2 = p_c.cpy().sub(p_a);
@@ -99,10 +178,35 @@ public class Face {
 	}
 
 	public int arity() {
-		return this.edges.size;
+		return loop.length;
 	}
 
+	/**
+	 * @return the index of the i'th vertex around the face.
+	 */
+	public int get(int i) {
+		return loop[i];
+	}
+
+	/**
+	 * @return the vertex loop itself. Don't modify it.
+	 */
+	public int[] getLoop() {
+		return loop;
+	}
+
+	/**
+	 * For older callers; prefer get(i) / getLoop().
+	 * Each edge is an int[] {index_start_vertex, index_end_vertex}. Don't modify them.
+	 */
 	public Array<int[]> getEdges() {
+		if (edges == null) {
+			Array<int[]> e = new Array<int[]>(loop.length);
+			for (int i = 0; i < loop.length; ++i) {
+				e.add(new int[] { loop[i], loop[(i+1) % loop.length] });
+			}
+			edges = e;
+		}
 		return edges;
 	}
 
@@ -116,25 +220,39 @@ public class Face {
 		// the two must mention the same vertices the same number of times.
 		// as convexity is a requirement, we won't equal anything wacky.
 		// XXX: do we check for winding here?
-		if (!Arrays.equals(generateCounts(), face.generateCounts())) {
-			return false;
+		if (loop.length != face.loop.length) return false;
+		int shared = Math.min(members.length, face.members.length);
+		for (int i = 0; i < shared; ++i) {
+			if (members[i] != face.members[i]) return false;
+		}
+		for (int i = shared; i < members.length; ++i) {
+			if (members[i] != 0) return false;
+		}
+		for (int i = shared; i < face.members.length; ++i) {
+			if (face.members[i] != 0) return false;
 		}
-
 		return true;
 	}
 
 	@Override
 	public int hashCode() {
-		return edges.hashCode();
+		// trailing zero words don't count, just like in equals.
+		int result = 0;
+		for (int i = 0; i < members.length; ++i) {
+			if (members[i] != 0) {
+				result = 31 * result + (int) (members[i] ^ (members[i] >>> 32)) + i;
+			}
+		}
+		return result;
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder b = new StringBuilder();
 		b.append("Face(" + arity() + "): ");
-		for (int[] edge: edges) {
+		for (int v: loop) {
 			b.append("(");
-			b.append(edge[LocalMath.EDGE_START]);
+			b.append(v);
 			b.append(")-");
 		}
 		return b.toString();
@@ -143,9 +261,9 @@ public class Face {
 	public String toString(Array<Vector3> vertices) {
 		StringBuilder b = new StringBuilder();
 		b.append("Face(" + arity() + "): ");
-		for (int[] edge: edges) {
+		for (int v: loop) {
 			b.append("(");
-			b.append(vertices.get(edge[LocalMath.EDGE_START]));
+			b.append(vertices.get(v));
 			b.append(")-");
 		}
 		return b.toString();
@@ -154,9 +272,9 @@ public class Face {
 	public String toString2(Array<Vector3> vertices) {
 		StringBuilder b = new StringBuilder();
 		b.append("Face(" + arity() + "):\n");
-		for (int[] edge: edges) {
-			b.append(" ~ (" + vertices.get(edge[LocalMath.EDGE_START]) + ")");
-			b.append("-(" + vertices.get(edge[LocalMath.EDGE_END]) + ")\n");
+		for (int i = 0; i < loop.length; ++i) {
+			b.append(" ~ (" + vertices.get(loop[i]) + ")");
+			b.append("-(" + vertices.get(loop[(i+1) % loop.length]) + ")\n");
 		}
 		return b.toString();
 	}
@@ -3,15 +3,13 @@ package com.sastraxi.chisel.math;
 import com.badlogic.gdx.math.*;
 import com.badlogic.gdx.utils.Array;
 import com.sastraxi.chisel.map.Brush;
+import com.sastraxi.chisel.trace.Trace;
 
 import java.util.*;
 
 
 public class HalfspacePolygon {
 
-	// TODO: somehow let static classes like this be "tasks" to be taken on by worker threads.
-	// idea guy: Tasks.ConcurrentLinkedQueue<Runnable>
-
 	/**
 	 * Create a Matrix3 as if (a,b,c) were its columns.
 	 * @param a the first column (a.x is top-left, a.y is middle-left, a.z is bottom-left)
@@ -27,8 +25,30 @@ public class HalfspacePolygon {
 		return mat;
 	}
 
+	/**
+	 * Take a list of planes that denote half-spaces and turn it into a list of vertices and faces
+	 * (each plane that touches the solid becomes a face).
+	 *
+	 * Starts from a huge box and clips it by each plane in turn, so the cost grows with the
+	 * number of faces and vertices actually produced rather than with every triple of planes.
+	 * Which side of a plane each vertex is on is decided exactly (see Predicates), so vertices
+	 * where four or more planes meet come out right. If the clipping can't come to an answer
+	 * (empty or unbounded input) this falls back to {@link #enumerateConvex(Array)}.
+	 *
+	 * Safe to call from any thread; each one reuses its own {@link ConvexSolver}.
+	 *
+	 * @param planes the list of planes.
+	 * @return a Brush that can be used to render the convex polytope.
+	 */
+	public static Brush toConvex(Array<Plane> planes) {
+		return ConvexSolver.get().toConvex(planes);
+	}
+
 	/**
 	 * Take a list of planes that denote half-spaces and turn it into a list of vertices and faces.
+	 * This is the brute-force path: every plane triple is intersected, then every candidate
+	 * vertex is tested against every plane. Kept as the reference for toConvex.
+	 *
 	 * This solves the Vertex enumeration problem and then goes one step further, turning the vertices
 	 * into faces based on the original planes (each plane becomes a face)
 	 *
@@ -37,8 +57,10 @@ public class HalfspacePolygon {
 	 *
 	 * @param planes the list of planes.
 	 * @return a Brush that can be used to render the convex polytope.
+	 * @throws IllegalArgumentException if some plane's edges don't come out as a single loop,
+	 *         or there's no solid at all.
 	 */
-	public static Brush toConvex(Array<Plane> planes) {
+	public static Brush enumerateConvex(Array<Plane> planes) {
 
 		// 3 planes intersect at a point (vertex), as long as they are not visible from an outside face.
 		// 2 planes intersect at a line segment.
@@ -48,18 +70,16 @@ public class HalfspacePolygon {
 		// todo optimize out inner-loop object creation w/object pools
 
 		Array<Vector3> vertices = new Array<Vector3>();
+		VertexWelder welder = new VertexWelder(VertexWelder.DEFAULT_TOLERANCE, planes.size * 2);
 
 		// create arrays
-		Array<Array<Integer>> vertexList = new Array<Array<Integer>>();
+		PlanePairMap lines = new PlanePairMap(planes.size * 4);
 		Array<Array<int[]>> edgeList = new Array<Array<int[]>>();
 		for (int x = 0; x < planes.size; ++x) {
 			edgeList.add(new Array<int[]>());
-			for (int y = 0; y < planes.size; ++y) {
-				vertexList.add(new Array<Integer>());
-			}
 		}
 
-		// gather [plane_index, plane_index] -> ArrayList<Integer>
+		// gather [plane_index, plane_index] -> vertex indices
 		for (int a = 0; a < planes.size; ++a) {
 			Plane plane_a = planes.get(a);
 
@@ -69,57 +89,35 @@ public class HalfspacePolygon {
 				for (int c = 0; c < b; ++c) {
 					Plane plane_c = planes.get(c);
 
-					// here I used the following:
-					// http://geomalgorithms.com/a05-_intersect-1.html#Intersection-of-3%20Planes
-					// todo factor plane-plane-plane intersection into helper class
-
-					Vector3 cp_a = plane_b.normal.cpy().crs(plane_c.normal);
-
-					float determinant = plane_a.normal.dot(cp_a);
-					if (Math.abs(determinant) < LocalMath.EPSILON) {
+					// the point where all planes intersect
+					Vector3 intersection = new Vector3();
+					if (!LocalMath.intersect(plane_a, plane_b, plane_c, intersection)) {
 						// the planes do not intersect.
-						System.out.println("(" + a + ", " + b + ", " + c + "): --");
+						if (Trace.enabled()) Trace.record(Trace.CONVEX, "(" + a + ", " + b + ", " + c + "): --");
 						continue;
 					}
 
-					Vector3 cp_b = plane_c.normal.cpy().crs(plane_a.normal);
-					Vector3 cp_c = plane_a.normal.cpy().crs(plane_b.normal);
-
-					// the point where all planes intersect
-					Vector3 intersection = new Vector3(0f, 0f, 0f)
-							.add(cp_a.scl(-plane_a.getD()))
-							.add(cp_b.scl(-plane_b.getD()))
-							.add(cp_c.scl(-plane_c.getD()))
-							.scl(1f / determinant);
-
 					// add this vertex to the master list
 					// but don't add it if it's a duplicate of an existing vertex
-					boolean found = false;
-					int v_i;
-					for (v_i = 0; v_i < vertices.size; ++v_i) {
-						float dst = vertices.get(v_i).dst2(intersection);
-						if (dst < LocalMath.EPSILON) {
-							found = true;
-							break;
+					int v_i = welder.add(intersection);
+					if (v_i == vertices.size) {
+						if (Trace.enabled()) {
+							Trace.record(Trace.CONVEX, "planes [" + a + ", " + b + ", " + c + "]; new vertex (" + intersection + ")");
 						}
-					}
-					if (!found) {
-						assert(v_i == vertices.size);
-						System.out.println("planes [" + a + ", " + b + ", " + c + "]; new vertex (" + intersection + ")");
 						vertices.add(intersection);
 					}
 
 					// add to per-edge vertex lists
-					vertexListPush(vertexList, a * planes.size + b, v_i);
-					vertexListPush(vertexList, a * planes.size + c, v_i);
-					vertexListPush(vertexList, b * planes.size + c, v_i);
+					lines.add(a, b, v_i);
+					lines.add(a, c, v_i);
+					lines.add(b, c, v_i);
 
 				}
 			}
 		}
 
 		// try to discard each vertex with each plane
-		Integer[] _map = new Integer[vertices.size];
+		int[] _map = new int[vertices.size];
 		Array<Vector3> final_vertices = new Array<Vector3>();
 		for (int i = 0; i < vertices.size; ++i) {
 			Vector3 vertex = vertices.get(i);
@@ -130,7 +128,9 @@ public class HalfspacePolygon {
 				if (plane_a.distance(vertex) > LocalMath.EPSILON) {
 					// vertex on plane side; that is, an outward face on the polyhedron can see this point.
 					// however, this would make the polyhedron concave, so discard the point.
-					System.out.println("Plane " + a + " [" + plane_a + "] rejected the vertex: " + vertex);
+					if (Trace.enabled()) {
+						Trace.record(Trace.CONVEX, "Plane " + a + " [" + plane_a + "] rejected the vertex: " + vertex);
+					}
 					vertices.set(i, null);
 				}
 			}
@@ -140,41 +140,39 @@ public class HalfspacePolygon {
 				_map[i] = final_vertices.size;
 				final_vertices.add(vertex);
 			} else {
-				_map[i] = null;
+				_map[i] = -1;
 			}
 		}
 		vertices.clear();
 		vertices = final_vertices;
 		final_vertices = null;
 
-		// gather edges
-		for (int a = 0; a < planes.size; ++a) {
+		// gather edges; only pairs of planes that met at a vertex are in the map.
+		// sorted keys visit them in the same (a, then b) order as a nested loop would.
+		for (long key: lines.sortedKeys()) {
+			int a = PlanePairMap.high(key), b = PlanePairMap.low(key);
 			Plane plane_a = planes.get(a);
+			Plane plane_b = planes.get(b);
+
+			// skip the vertices that were discarded above
+			int[] edge = new int[2];
+			int count = 0;
+			for (int e = lines.first(key); e >= 0; e = lines.next(e)) {
+				int v = _map[lines.value(e)];
+				if (v < 0) continue;
+				if (count < 2) edge[count] = v;
+				count++;
+			}
 
-			for (int b = 0; b < a; ++b) {
-				Plane plane_b = planes.get(b);
-
-				Array<Integer> lineVertices = vertexList.get(a * planes.size + b);
-
-				// remove all vertices that have been discarded in the previous nested loop (impl.: null)
-				// todo could do this a lot faster by adding to edge[] things that aren't null and asserting there are no more non-nulls in the list
-				for (Iterator<Integer> x = lineVertices.iterator(); x.hasNext();) {
-					int v_i = x.next();
-					if (_map[v_i] == null) {
-						x.remove();
-					}
-				}
-
-				if (lineVertices.size == 0) continue; // the two planes don't meet (are parallel)
-				if (lineVertices.size == 1) {
-					System.out.println(a + "," + b + ": one vertex (no edge); 3+ faces join here.");
-					continue;
-				}
-				assert(lineVertices.size == 2);
-
-				int[] edge = new int[] {_map[lineVertices.get(LocalMath.EDGE_START)],
-						                _map[lineVertices.get(LocalMath.EDGE_END)]};
+			if (count == 0) continue; // the line where the planes meet is outside the polytope
+			if (count == 1) {
+				if (Trace.enabled()) Trace.record(Trace.CONVEX, a + "," + b + ": one vertex (no edge); 3+ faces join here.");
+				continue;
+			}
+			assert(count == 2);
 
+			// the line where the planes meet is only of interest to someone reading the trace.
+			if (Trace.enabled()) {
 				// todo factor plane-plane intersection into helper class
 				// Once again, http://geomalgorithms.com/a05-_intersect-1.html
 				Vector3 u = plane_a.normal.cpy().crs(plane_b.normal);
@@ -203,105 +201,79 @@ public class HalfspacePolygon {
 						pt.x = (plane_a.normal.y * plane_b.d - plane_b.normal.y * plane_a.d) / den;
 						pt.y = (plane_b.normal.x * plane_a.d - plane_a.normal.x * plane_b.d) / den;
 					}
-					System.out.println("Planes (" + a + "," + b + ") intersect at: (" + pt + ") + t(" + u + ")");
+					Trace.record(Trace.CONVEX, "Planes (" + a + "," + b + ") intersect at: (" + pt + ") + t(" + u + ")");
 
 				} else {
-					System.out.println("Planes (" + a + "," + b + ") do not intersect!");
+					Trace.record(Trace.CONVEX, "Planes (" + a + "," + b + ") do not intersect!");
 				}
-				System.out.println(" - discovered edge: (" + vertices.get(edge[LocalMath.EDGE_START]) + ")-("
-						                                   + vertices.get(edge[LocalMath.EDGE_END]) + ")");
-
-				// add to per-plane edge lists
-				edgeList.get(a).add(edge);
-				edgeList.get(b).add(edge);
-
+				Trace.record(Trace.CONVEX, " - discovered edge: (" + vertices.get(edge[LocalMath.EDGE_START]) + ")-("
+						                           + vertices.get(edge[LocalMath.EDGE_END]) + ")");
 			}
+
+			// add to per-plane edge lists
+			edgeList.get(a).add(edge);
+			edgeList.get(b).add(edge);
 		}
 
 		// gather faces
 		Array<Face> faces = new Array<Face>();
 		for (int a = 0; a < planes.size; ++a) {
 
-			// make sure we have a closed set of edges
+			// put the edges in order around the face. a plane that doesn't touch the solid has none.
 			Array<int[]> edges = edgeList.get(a);
-			assert(new Face(edges).isClosed());
-			System.out.println("Plane " + a);
-			for (int[] edge: edges) {
-				System.out.print(" ~ (" + vertices.get(edge[LocalMath.EDGE_START]) + ")");
-				System.out.println("-(" + vertices.get(edge[LocalMath.EDGE_END]) + ")");
-			}
-
-			// sort edges; pick whatever is first to start with and add adjoining until we get back to the start.
-			// claim: because we have asserted the edge loop is closed, this loop will eventually finish
-			Array<int[]> sortedEdges = new Array<int[]>();
-			sortedEdges.add(edges.get(0));
-			int i = 1;
-			while (sortedEdges.size < edges.size) {
-				if (edges.get(i)[LocalMath.EDGE_START] == sortedEdges.peek()[LocalMath.EDGE_END]) {
-					sortedEdges.add(edges.get(i));
-				} else if (edges.get(i)[LocalMath.EDGE_END] == sortedEdges.peek()[LocalMath.EDGE_END]) {
-					// in opposite order; flip it
-					sortedEdges.add(new int[] {
-						edges.get(i)[LocalMath.EDGE_END],
-						edges.get(i)[LocalMath.EDGE_START]
-					});
-				}
-				i = (i + 1) % edges.size;
+			if (Trace.enabled()) Trace.record(Trace.CONVEX, "Plane " + a + "\n" + edgesToString(edges, vertices));
+			EdgeLoop ordered = EdgeLoop.order(edges);
+			if (ordered.getStatus() == EdgeLoop.Status.EMPTY) continue;
+			if (!ordered.isClosed()) {
+				throw new IllegalArgumentException("plane " + a + ": edges don't form a loop (" + ordered.getStatus() + ")");
 			}
 
 			// correct polygon winding xxx do this implicitly somehow
-			Face candidate = new Face(sortedEdges);
+			Face candidate = new Face(ordered.getLoop());
 			if (candidate.getNormal(vertices).dot(planes.get(a).normal) < 0) {
 				// the normals are facing away from each other; flip the edge order.
-				assert(candidate.getEdges() == sortedEdges);
-				for (int k = 0; k < sortedEdges.size; ++k) {
-					sortedEdges.set(k, new int[] {
-						sortedEdges.get(k)[LocalMath.EDGE_END],
-						sortedEdges.get(k)[LocalMath.EDGE_START]
-					});
-				}
-				sortedEdges.reverse();
+				candidate = new Face(EdgeLoop.reverse(ordered.getLoop()));
 			}
 
-			System.out.println("to...");
-			for (int[] edge: sortedEdges) {
-				System.out.print(" ~ (" + vertices.get(edge[LocalMath.EDGE_START]) + ")");
-				System.out.println("-(" + vertices.get(edge[LocalMath.EDGE_END]) + ")");
-			}
-			System.out.println("");
+			if (Trace.enabled()) Trace.record(Trace.CONVEX, "to...\n" + candidate.toString2(vertices));
 
 			// create the face with the correct normal.
 			assert(candidate.isClosed());
-			assert(candidate.isOrdered()); // what we just did
 			faces.add(candidate);
 		}
+		if (faces.size < 4) {
+			throw new IllegalArgumentException("only " + faces.size + " faces; the planes don't enclose anything");
+		}
 
 		return new Brush(vertices, faces);
 	}
 
-	/**
-	 * Add a vertex index to the plane-plane intersection's list
-	 * @param vertexList
-	 * @return true if the candidate was added to the plane-plane intersection list, false if it was already there.
-	 */
-	private static boolean vertexListPush(Array<Array<Integer>> vertexList, int coord_plane_plane, int v_i) {
-		Array<Integer> l = vertexList.get(coord_plane_plane);
-		if (l == null) {
-			l = new Array<Integer>();
-			vertexList.set(coord_plane_plane, l);
-		}
-		if (!l.contains(v_i, false)) {
-			l.add(v_i);
-			return true;
-		} else {
-			return false;
+	private static String edgesToString(Array<int[]> edges, Array<Vector3> vertices) {
+		StringBuilder b = new StringBuilder();
+		for (int[] edge: edges) {
+			b.append(" ~ (").append(vertices.get(edge[LocalMath.EDGE_START])).append(")");
+			b.append("-(").append(vertices.get(edge[LocalMath.EDGE_END])).append(")\n");
 		}
+		return b.toString();
 	}
 
+	/**
+	 * The inverse of toConvex: one outward-facing plane per face, in the same order as
+	 * brush.getFaces(). Planes are worked out from the vertices as they are now.
+	 *
+	 * @throws IllegalArgumentException if any face isn't convex (or has too few vertices).
+	 */
 	public static ArrayList<Plane> fromConvex(Brush brush) {
-		// todo take each face and turn it into a cutting plane
-		// if any faces aren't convex throw a NonConvexFaceException
-		return null;
+		Array<Vector3> vertices = brush.getVertices();
+		ArrayList<Plane> planes = new ArrayList<Plane>(brush.getFaces().size);
+		for (int i = 0; i < brush.getFaces().size; ++i) {
+			Face face = brush.getFaces().get(i);
+			if (face.arity() < 3 || !face.isConvex(vertices)) {
+				throw new IllegalArgumentException("face " + i + " isn't convex");
+			}
+			planes.add(face.computePlane(vertices, new Plane(new Vector3(), 0f)));
+		}
+		return planes;
 	}
 
 }
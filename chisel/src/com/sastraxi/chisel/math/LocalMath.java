@@ -1,7 +1,9 @@
 package com.sastraxi.chisel.math;
 
+import com.badlogic.gdx.math.Frustum;
 import com.badlogic.gdx.math.Plane;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
 
 public class LocalMath {
 
@@ -20,5 +22,73 @@ public class LocalMath {
 		return p;
 	}
 
+	/**
+	 * Finds the point where three planes meet. The arithmetic is done in exactly the same order
+	 * as the original vertex enumeration, so every caller gets bit-identical vertices.
+	 * See http://geomalgorithms.com/a05-_intersect-1.html#Intersection-of-3%20Planes
+	 *
+	 * @param out receives the intersection point; untouched if there isn't one.
+	 * @return false if the planes do not meet at a single point.
+	 */
+	public static boolean intersect(Plane a, Plane b, Plane c, Vector3 out) {
+		Vector3 n_a = a.normal, n_b = b.normal, n_c = c.normal;
+
+		// cp_a = n_b x n_c
+		float cp_ax = n_b.y * n_c.z - n_b.z * n_c.y;
+		float cp_ay = n_b.z * n_c.x - n_b.x * n_c.z;
+		float cp_az = n_b.x * n_c.y - n_b.y * n_c.x;
+
+		float determinant = n_a.x * cp_ax + n_a.y * cp_ay + n_a.z * cp_az;
+		if (Math.abs(determinant) < EPSILON) {
+			return false;
+		}
+
+		// cp_b = n_c x n_a, cp_c = n_a x n_b
+		float cp_bx = n_c.y * n_a.z - n_c.z * n_a.y;
+		float cp_by = n_c.z * n_a.x - n_c.x * n_a.z;
+		float cp_bz = n_c.x * n_a.y - n_c.y * n_a.x;
+		float cp_cx = n_a.y * n_b.z - n_a.z * n_b.y;
+		float cp_cy = n_a.z * n_b.x - n_a.x * n_b.z;
+		float cp_cz = n_a.x * n_b.y - n_a.y * n_b.x;
+
+		float s_a = -a.d, s_b = -b.d, s_c = -c.d;
+		float inv = 1f / determinant;
+		out.x = (0f + cp_ax * s_a + cp_bx * s_b + cp_cx * s_c) * inv;
+		out.y = (0f + cp_ay * s_a + cp_by * s_b + cp_cy * s_c) * inv;
+		out.z = (0f + cp_az * s_a + cp_bz * s_b + cp_cz * s_c) * inv;
+		return true;
+	}
+
+	/**
+	 * Does an axis-aligned box reach into the frustum? Conservative: a box near a corner of
+	 * the frustum may be reported as inside when it isn't, but never the other way around.
+	 * Unlike Frustum.boundsInFrustum, this doesn't touch the box's corners array.
+	 */
+	public static boolean boxInFrustum(Frustum frustum, float minX, float minY, float minZ,
+	                                   float maxX, float maxY, float maxZ) {
+		// frustum planes face inwards; test the corner that's furthest along each normal.
+		for (Plane plane: frustum.planes) {
+			Vector3 n = plane.normal;
+			float x = n.x >= 0f ? maxX : minX;
+			float y = n.y >= 0f ? maxY : minY;
+			float z = n.z >= 0f ? maxZ : minZ;
+			if (n.x * x + n.y * y + n.z * z + plane.d < 0f) return false;
+		}
+		return true;
+	}
+
+	public static boolean boxInFrustum(Frustum frustum, BoundingBox box) {
+		return boxInFrustum(frustum, box.min.x, box.min.y, box.min.z, box.max.x, box.max.y, box.max.z);
+	}
+
+	/**
+	 * @return the squared distance from the point to the nearest point of the box (0 if it's inside).
+	 */
+	public static float boxDistance2(BoundingBox box, Vector3 point) {
+		float dx = Math.max(0f, Math.max(box.min.x - point.x, point.x - box.max.x));
+		float dy = Math.max(0f, Math.max(box.min.y - point.y, point.y - box.max.y));
+		float dz = Math.max(0f, Math.max(box.min.z - point.z, point.z - box.max.z));
+		return dx * dx + dy * dy + dz * dz;
+	}
 
 }
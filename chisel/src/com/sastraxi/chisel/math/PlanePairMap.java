@@ -0,0 +1,185 @@
+package com.sastraxi.chisel.math;
+
+import java.util.Arrays;
+
+/**
+ * For pairs of planes, the vertices that lie on both: a sparse map from the pair (packed into
+ * a long) to a short list of ints, kept in the order they were added. Only pairs that actually
+ * have vertices take up any room, and nothing is boxed.
+ *
+ * Walk a pair's list with first(), next() and value():
+ *
+ *   for (int e = map.first(a, b); e >= 0; e = map.next(e)) { ... map.value(e) ... }
+ */
+public class PlanePairMap {
+
+	private static final long EMPTY = -1L; // no pair packs to this
+
+	// open addressing: pair -> its list
+	private long[] keys;
+	private int[] heads, tails, counts;
+	private int size = 0;
+
+	// every list's entries, linked together
+	private int[] values, next;
+	private int numValues = 0;
+
+	public PlanePairMap() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity how many pairs to make room for up front.
+	 */
+	public PlanePairMap(int capacity) {
+		int tableSize = Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) << 1;
+		keys = new long[tableSize];
+		heads = new int[tableSize];
+		tails = new int[tableSize];
+		counts = new int[tableSize];
+		Arrays.fill(keys, EMPTY);
+		values = new int[tableSize];
+		next = new int[tableSize];
+	}
+
+	/**
+	 * The same key for (a, b) and (b, a); the larger index is in the high word.
+	 */
+	public static long key(int a, int b) {
+		return a > b ? ((long) a << 32) | b : ((long) b << 32) | a;
+	}
+
+	public static int high(long key) {
+		return (int) (key >>> 32);
+	}
+
+	public static int low(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * @return the number of pairs with at least one value.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+		numValues = 0;
+	}
+
+	/**
+	 * Add a value to the pair's list, unless it's already there.
+	 *
+	 * @return false if it was already there.
+	 */
+	public boolean add(int a, int b, int value) {
+		long key = key(a, b);
+		int slot = slot(key);
+		if (keys[slot] == key) {
+			for (int e = heads[slot]; e >= 0; e = next[e]) {
+				if (values[e] == value) return false;
+			}
+			int e = newEntry(value);
+			next[tails[slot]] = e;
+			tails[slot] = e;
+			counts[slot]++;
+			return true;
+		}
+
+		int e = newEntry(value);
+		keys[slot] = key;
+		heads[slot] = tails[slot] = e;
+		counts[slot] = 1;
+		if (++size * 2 > keys.length) grow();
+		return true;
+	}
+
+	/**
+	 * @return how many values the pair has.
+	 */
+	public int count(int a, int b) {
+		long key = key(a, b);
+		int slot = slot(key);
+		return keys[slot] == key ? counts[slot] : 0;
+	}
+
+	/**
+	 * @return the pair's first entry, or -1 if it has none.
+	 */
+	public int first(int a, int b) {
+		return first(key(a, b));
+	}
+
+	public int first(long key) {
+		int slot = slot(key);
+		return keys[slot] == key ? heads[slot] : -1;
+	}
+
+	/**
+	 * @return the entry after this one in the same list, or -1.
+	 */
+	public int next(int entry) {
+		return next[entry];
+	}
+
+	public int value(int entry) {
+		return values[entry];
+	}
+
+	/**
+	 * @return every pair with a value, in ascending order (by larger index, then smaller).
+	 */
+	public long[] sortedKeys() {
+		long[] out = new long[size];
+		int n = 0;
+		for (long key: keys) {
+			if (key != EMPTY) out[n++] = key;
+		}
+		Arrays.sort(out);
+		return out;
+	}
+
+	private int newEntry(int value) {
+		if (numValues == values.length) {
+			values = Arrays.copyOf(values, numValues * 2);
+			next = Arrays.copyOf(next, numValues * 2);
+		}
+		values[numValues] = value;
+		next[numValues] = -1;
+		return numValues++;
+	}
+
+	/**
+	 * @return where key is in the table, or the empty slot where it would go.
+	 */
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldHeads = heads, oldTails = tails, oldCounts = counts;
+		keys = new long[oldKeys.length * 2];
+		heads = new int[keys.length];
+		tails = new int[keys.length];
+		counts = new int[keys.length];
+		Arrays.fill(keys, EMPTY);
+		for (int s = 0; s < oldKeys.length; ++s) {
+			if (oldKeys[s] == EMPTY) continue;
+			int slot = slot(oldKeys[s]);
+			keys[slot] = oldKeys[s];
+			heads[slot] = oldHeads[s];
+			tails[slot] = oldTails[s];
+			counts[slot] = oldCounts[s];
+		}
+	}
+
+}
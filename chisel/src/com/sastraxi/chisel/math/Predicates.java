@@ -0,0 +1,167 @@
+package com.sastraxi.chisel.math;
+
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.utils.Array;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact signs for geometry made out of planes. Planes are (nx, ny, nz, d), packed four to
+ * a double[]; the coefficients are the floats we were given, so a sign of zero here really
+ * means zero (four planes that meet at one point, two that are parallel...), rather than
+ * "smaller than EPSILON".
+ *
+ * Every test is done in plain double arithmetic first, along with a bound on how wrong that
+ * could be. Only when the result is too close to call is it worked out again exactly (with
+ * BigDecimal), which only happens on (nearly) degenerate input.
+ */
+public class Predicates {
+
+	public static final int DOUBLES_PER_PLANE = 4;
+
+	/**
+	 * Relative error bound for the double-precision filters, a comfortable ~90 ulps; the
+	 * deepest expression here is a product of four coefficients, summed over 24 terms.
+	 */
+	static final double FILTER = 1e-14;
+
+	public static double[] pack(Array<Plane> planes) {
+		double[] p = new double[planes.size * DOUBLES_PER_PLANE];
+		for (int i = 0; i < planes.size; ++i) {
+			set(p, i, planes.get(i));
+		}
+		return p;
+	}
+
+	public static void set(double[] p, int i, Plane plane) {
+		set(p, i, plane.normal.x, plane.normal.y, plane.normal.z, plane.d);
+	}
+
+	public static void set(double[] p, int i, double nx, double ny, double nz, double d) {
+		int o = i * DOUBLES_PER_PLANE;
+		p[o] = nx;
+		p[o+1] = ny;
+		p[o+2] = nz;
+		p[o+3] = d;
+	}
+
+	/**
+	 * @return the sign of n_a . (n_b x n_c); zero exactly when the three planes don't meet
+	 *         at a single point.
+	 */
+	public static int orient(double[] p, int a, int b, int c) {
+		double det = det3(p, a, b, c);
+		double bound = FILTER * perm3(p, a, b, c);
+		if (det > bound) return 1;
+		if (det < -bound) return -1;
+		return exactDet3(p, a, b, c).signum();
+	}
+
+	/**
+	 * Which side of plane q is the point where planes a, b and c meet?
+	 *
+	 * @return 1 if it's in front of q (q.distance() > 0), -1 if behind, 0 if exactly on it.
+	 *         Also 0 if a, b and c don't meet at a point.
+	 */
+	public static int side(double[] p, int q, int a, int b, int c) {
+		int orient = orient(p, a, b, c);
+		if (orient == 0) return 0;
+
+		// with D = n_a . (n_b x n_c), the point is -(d_a (n_b x n_c) + d_b (n_c x n_a) + d_c (n_a x n_b)) / D,
+		// so its distance from q is E / D, with E as below.
+		double d_q = p[q*4+3], d_a = p[a*4+3], d_b = p[b*4+3], d_c = p[c*4+3];
+		double e = d_q * det3(p, a, b, c) - d_a * det3(p, q, b, c) - d_b * det3(p, q, c, a) - d_c * det3(p, q, a, b);
+		double bound = FILTER * (Math.abs(d_q) * perm3(p, a, b, c) + Math.abs(d_a) * perm3(p, q, b, c)
+				+ Math.abs(d_b) * perm3(p, q, c, a) + Math.abs(d_c) * perm3(p, q, a, b));
+		if (e > bound) return orient;
+		if (e < -bound) return -orient;
+
+		BigDecimal exact = exactDet3(p, a, b, c).multiply(exact(d_q))
+				.subtract(exactDet3(p, q, b, c).multiply(exact(d_a)))
+				.subtract(exactDet3(p, q, c, a).multiply(exact(d_b)))
+				.subtract(exactDet3(p, q, a, b).multiply(exact(d_c)));
+		return exact.signum() * orient;
+	}
+
+	/**
+	 * The point where planes a, b and c meet, in double precision.
+	 *
+	 * @param out receives x, y, z starting at offset.
+	 * @return how far (at most) any coordinate is from the true point; infinite if the
+	 *         planes are too close to parallel to say, or don't meet at all.
+	 */
+	public static double intersect(double[] p, int a, int b, int c, double[] out, int offset) {
+		int ia = a*4, ib = b*4, ic = c*4;
+		double ax = p[ia], ay = p[ia+1], az = p[ia+2], da = p[ia+3];
+		double bx = p[ib], by = p[ib+1], bz = p[ib+2], db = p[ib+3];
+		double cx = p[ic], cy = p[ic+1], cz = p[ic+2], dc = p[ic+3];
+
+		// n_b x n_c, n_c x n_a, n_a x n_b
+		double bcx = by * cz - bz * cy, bcy = bz * cx - bx * cz, bcz = bx * cy - by * cx;
+		double cax = cy * az - cz * ay, cay = cz * ax - cx * az, caz = cx * ay - cy * ax;
+		double abx = ay * bz - az * by, aby = az * bx - ax * bz, abz = ax * by - ay * bx;
+
+		double det = ax * bcx + ay * bcy + az * bcz;
+		double detError = FILTER * perm3(p, a, b, c);
+		if (Math.abs(det) <= 2.0 * detError) {
+			out[offset] = out[offset+1] = out[offset+2] = 0.0;
+			return Double.POSITIVE_INFINITY;
+		}
+
+		double nx = -(da * bcx + db * cax + dc * abx);
+		double ny = -(da * bcy + db * cay + dc * aby);
+		double nz = -(da * bcz + db * caz + dc * abz);
+		out[offset]   = nx / det;
+		out[offset+1] = ny / det;
+		out[offset+2] = nz / det;
+
+		// |n/det - x| <= (error in n + |x| * error in det) / (|det| - error in det), plus a bit for the division.
+		double absDa = Math.abs(da), absDb = Math.abs(db), absDc = Math.abs(dc);
+		double px = absDa * (Math.abs(by * cz) + Math.abs(bz * cy)) + absDb * (Math.abs(cy * az) + Math.abs(cz * ay))
+				+ absDc * (Math.abs(ay * bz) + Math.abs(az * by));
+		double py = absDa * (Math.abs(bz * cx) + Math.abs(bx * cz)) + absDb * (Math.abs(cz * ax) + Math.abs(cx * az))
+				+ absDc * (Math.abs(az * bx) + Math.abs(ax * bz));
+		double pz = absDa * (Math.abs(bx * cy) + Math.abs(by * cx)) + absDb * (Math.abs(cx * ay) + Math.abs(cy * ax))
+				+ absDc * (Math.abs(ax * by) + Math.abs(ay * bx));
+		double scale = 1.0 / (Math.abs(det) - detError);
+		double rx = (FILTER * px + Math.abs(out[offset])   * detError) * scale + FILTER * Math.abs(out[offset]);
+		double ry = (FILTER * py + Math.abs(out[offset+1]) * detError) * scale + FILTER * Math.abs(out[offset+1]);
+		double rz = (FILTER * pz + Math.abs(out[offset+2]) * detError) * scale + FILTER * Math.abs(out[offset+2]);
+		return Math.max(rx, Math.max(ry, rz));
+	}
+
+	/**
+	 * n_a . (n_b x n_c)
+	 */
+	private static double det3(double[] p, int a, int b, int c) {
+		int ia = a*4, ib = b*4, ic = c*4;
+		return p[ia]   * (p[ib+1] * p[ic+2] - p[ib+2] * p[ic+1])
+		     + p[ia+1] * (p[ib+2] * p[ic]   - p[ib]   * p[ic+2])
+		     + p[ia+2] * (p[ib]   * p[ic+1] - p[ib+1] * p[ic]);
+	}
+
+	/**
+	 * det3, but with every term made positive; the size of the numbers det3 adds up.
+	 */
+	private static double perm3(double[] p, int a, int b, int c) {
+		int ia = a*4, ib = b*4, ic = c*4;
+		return Math.abs(p[ia])   * (Math.abs(p[ib+1] * p[ic+2]) + Math.abs(p[ib+2] * p[ic+1]))
+		     + Math.abs(p[ia+1]) * (Math.abs(p[ib+2] * p[ic])   + Math.abs(p[ib]   * p[ic+2]))
+		     + Math.abs(p[ia+2]) * (Math.abs(p[ib]   * p[ic+1]) + Math.abs(p[ib+1] * p[ic]));
+	}
+
+	private static BigDecimal exactDet3(double[] p, int a, int b, int c) {
+		int ia = a*4, ib = b*4, ic = c*4;
+		BigDecimal ax = exact(p[ia]), ay = exact(p[ia+1]), az = exact(p[ia+2]);
+		BigDecimal bx = exact(p[ib]), by = exact(p[ib+1]), bz = exact(p[ib+2]);
+		BigDecimal cx = exact(p[ic]), cy = exact(p[ic+1]), cz = exact(p[ic+2]);
+		return ax.multiply(by.multiply(cz).subtract(bz.multiply(cy)))
+				.add(ay.multiply(bz.multiply(cx).subtract(bx.multiply(cz))))
+				.add(az.multiply(bx.multiply(cy).subtract(by.multiply(cx))));
+	}
+
+	private static BigDecimal exact(double x) {
+		return new BigDecimal(x);
+	}
+
+}
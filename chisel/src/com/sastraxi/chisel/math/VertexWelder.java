@@ -0,0 +1,184 @@
+package com.sastraxi.chisel.math;
+
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * Merges points that are within a tolerance of each other, in O(1) per point. Space is cut
+ * into cubes twice the tolerance across, hashed by their integer coordinates, so anything
+ * close enough to a new point is in one of the (at most 8) cubes that its tolerance box
+ * touches.
+ *
+ * Points are numbered in the order they were first added. A point that's close to several
+ * earlier ones gets the lowest-numbered of them, just as a linear scan would.
+ */
+public class VertexWelder {
+
+	/**
+	 * The distance toConvex has always merged vertices at (dst2 < EPSILON).
+	 */
+	public static final float DEFAULT_TOLERANCE = (float) Math.sqrt(LocalMath.EPSILON);
+
+	private static final int CELL_BITS = 21, CELL_MASK = (1 << CELL_BITS) - 1;
+	private static final long EMPTY = Long.MIN_VALUE; // no cell packs to this
+
+	private final float tolerance, tolerance2;
+	private final double inverseCell;
+
+	private float[] coords;
+	private int[] next; // next point in the same cell, or -1
+	private int size = 0;
+
+	// open addressing: cell -> most recent point in it
+	private long[] keys;
+	private int[] heads;
+	private int numCells = 0;
+
+	public VertexWelder() {
+		this(DEFAULT_TOLERANCE, 16);
+	}
+
+	public VertexWelder(float tolerance) {
+		this(tolerance, 16);
+	}
+
+	/**
+	 * @param capacity how many points to make room for up front.
+	 */
+	public VertexWelder(float tolerance, int capacity) {
+		if (!(tolerance > 0f)) throw new IllegalArgumentException("tolerance must be positive");
+		this.tolerance = tolerance;
+		this.tolerance2 = tolerance * tolerance;
+		this.inverseCell = 0.5 / tolerance;
+		capacity = Math.max(capacity, 4);
+		coords = new float[capacity * 3];
+		next = new int[capacity];
+		int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		keys = new long[tableSize];
+		heads = new int[tableSize];
+		java.util.Arrays.fill(keys, EMPTY);
+	}
+
+	public float getTolerance() {
+		return tolerance;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+		numCells = 0;
+		java.util.Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * @return the index of the first point added within tolerance of (x, y, z); or, if there
+	 *         isn't one, the index of (x, y, z) itself, which is added as a new point.
+	 */
+	public int add(float x, float y, float z) {
+		int found = find(x, y, z);
+		if (found >= 0) return found;
+
+		if (size == next.length) {
+			float[] c = new float[size * 6];
+			System.arraycopy(coords, 0, c, 0, size * 3);
+			coords = c;
+			int[] n = new int[size * 2];
+			System.arraycopy(next, 0, n, 0, size);
+			next = n;
+		}
+		int i = size++;
+		coords[3*i] = x;
+		coords[3*i+1] = y;
+		coords[3*i+2] = z;
+
+		long key = key(cell(x), cell(y), cell(z));
+		int slot = slot(key);
+		if (keys[slot] == EMPTY) {
+			keys[slot] = key;
+			heads[slot] = i;
+			next[i] = -1;
+			if (++numCells * 2 > keys.length) grow();
+		} else {
+			next[i] = heads[slot];
+			heads[slot] = i;
+		}
+		return i;
+	}
+
+	public int add(Vector3 v) {
+		return add(v.x, v.y, v.z);
+	}
+
+	/**
+	 * @return the index of the first point added within tolerance of (x, y, z), or -1.
+	 */
+	public int find(float x, float y, float z) {
+		long x0 = cell(x - tolerance), x1 = cell(x + tolerance);
+		long y0 = cell(y - tolerance), y1 = cell(y + tolerance);
+		long z0 = cell(z - tolerance), z1 = cell(z + tolerance);
+		int best = -1;
+		for (long cx = x0; cx <= x1; ++cx) {
+			for (long cy = y0; cy <= y1; ++cy) {
+				for (long cz = z0; cz <= z1; ++cz) {
+					long key = key(cx, cy, cz);
+					int slot = slot(key);
+					if (keys[slot] != key) continue;
+					for (int i = heads[slot]; i >= 0; i = next[i]) {
+						if (best >= 0 && i > best) continue;
+						float dx = coords[3*i] - x, dy = coords[3*i+1] - y, dz = coords[3*i+2] - z;
+						if (dx * dx + dy * dy + dz * dz < tolerance2) best = i;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	public int find(Vector3 v) {
+		return find(v.x, v.y, v.z);
+	}
+
+	public Vector3 get(int i, Vector3 out) {
+		return out.set(coords[3*i], coords[3*i+1], coords[3*i+2]);
+	}
+
+	private long cell(float x) {
+		return (long) Math.floor(x * inverseCell);
+	}
+
+	/**
+	 * Cells far enough apart wrap onto each other; that only costs a few extra distance tests.
+	 */
+	private static long key(long cx, long cy, long cz) {
+		return ((cx & CELL_MASK) << (2 * CELL_BITS)) | ((cy & CELL_MASK) << CELL_BITS) | (cz & CELL_MASK);
+	}
+
+	/**
+	 * @return where key is in the table, or the empty slot where it would go.
+	 */
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldHeads = heads;
+		keys = new long[oldKeys.length * 2];
+		heads = new int[oldKeys.length * 2];
+		java.util.Arrays.fill(keys, EMPTY);
+		for (int s = 0; s < oldKeys.length; ++s) {
+			if (oldKeys[s] == EMPTY) continue;
+			int slot = slot(oldKeys[s]);
+			keys[slot] = oldKeys[s];
+			heads[slot] = oldHeads[s];
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.sastraxi.chisel.shaders;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.Shader;
+import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
+import com.badlogic.gdx.graphics.g3d.utils.RenderContext;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * Draws Brush meshes with their selection showing: faces flagged as selected (in the
+ * a_selection vertex attribute) are tinted when drawn as triangles, and vertices when
+ * drawn as points. Flipping a flag is just a write into the vertex buffer; nothing here
+ * needs rebuilding.
+ */
+public class BrushShader implements Shader {
+	ShaderProgram program;
+	Camera camera;
+	RenderContext context;
+	int u_projTrans;
+	int u_worldTrans;
+	int u_colour;
+	int u_selectionMask;
+
+	@Override
+	public void init() {
+		String vert = Gdx.files.classpath("com/sastraxi/chisel/shaders/brush.vert").readString();
+		String frag = Gdx.files.classpath("com/sastraxi/chisel/shaders/brush.frag").readString();
+		program = new ShaderProgram(vert, frag);
+		if (!program.isCompiled())
+			throw new GdxRuntimeException(program.getLog());
+		u_projTrans = program.getUniformLocation("u_projTrans");
+		u_worldTrans = program.getUniformLocation("u_worldTrans");
+		u_colour = program.getUniformLocation("u_colour");
+		u_selectionMask = program.getUniformLocation("u_selectionMask");
+	}
+
+	@Override
+	public void dispose() {
+		program.dispose();
+	}
+
+	@Override
+	public void begin(Camera camera, RenderContext context) {
+		this.camera = camera;
+		this.context = context;
+		program.begin();
+		program.setUniformMatrix(u_projTrans, camera.combined);
+		context.setDepthTest(GL20.GL_LEQUAL);
+		context.setCullFace(GL10.GL_BACK);
+		Gdx.gl.glEnable(GL20.GL_VERTEX_PROGRAM_POINT_SIZE); // or desktop GL ignores gl_PointSize
+	}
+
+	@Override
+	public void render(Renderable renderable) {
+		program.setUniformMatrix(u_worldTrans, renderable.worldTransform);
+
+		ColorAttribute diffuse = (ColorAttribute) renderable.material.get(ColorAttribute.Diffuse);
+		Color colour = diffuse != null ? diffuse.color : Color.WHITE;
+		program.setUniformf(u_colour, colour);
+
+		// which of the two flags applies: the face's for triangles, the vertex's for points.
+		switch (renderable.primitiveType) {
+			case GL10.GL_TRIANGLES: program.setUniformf(u_selectionMask, 1f, 0f); break;
+			case GL10.GL_POINTS:    program.setUniformf(u_selectionMask, 0f, 1f); break;
+			default:                program.setUniformf(u_selectionMask, 0f, 0f); break;
+		}
+
+		renderable.mesh.render(program,
+				renderable.primitiveType,
+				renderable.meshPartOffset,
+				renderable.meshPartSize);
+	}
+
+	@Override
+	public void end() {
+		Gdx.gl.glDisable(GL20.GL_VERTEX_PROGRAM_POINT_SIZE);
+		program.end();
+	}
+
+	@Override
+	public int compareTo(Shader other) {
+		return 0;
+	}
+	@Override
+	public boolean canRender(Renderable instance) {
+		return instance.mesh.getVertexAttribute(VertexAttributes.Usage.Generic) != null;
+	}
+}
@@ -0,0 +1,24 @@
+#ifdef GL_ES
+precision mediump float;
+#endif
+
+const vec3 lightDirection = vec3(-1.0, -0.8, -0.2);
+const float ambient = 0.4;
+const float diffuse = 0.8;
+
+const vec4 highlightColour = vec4(1.0, 0.55, 0.1, 1.0);
+const float highlightAmount = 0.6;
+
+uniform vec4 u_colour;
+
+varying vec3 v_normal;
+varying float v_selected;
+
+void main(void)
+{
+
+	float light = ambient + diffuse * max(0.0, dot(normalize(v_normal), -normalize(lightDirection)));
+	vec4 shaded = vec4(u_colour.rgb * min(light, 1.0), u_colour.a);
+	gl_FragColor = mix(shaded, highlightColour, highlightAmount * v_selected);
+
+}
@@ -0,0 +1,17 @@
+attribute vec4 a_position;
+attribute vec3 a_normal;
+attribute vec2 a_selection;
+uniform mat4 u_projTrans;
+uniform mat4 u_worldTrans;
+uniform vec2 u_selectionMask;
+
+varying vec3 v_normal;
+varying float v_selected;
+
+void main()
+{
+	v_normal = normalize((u_worldTrans * vec4(a_normal, 0.0)).xyz);
+	v_selected = dot(a_selection, u_selectionMask);
+	gl_Position = u_projTrans * u_worldTrans * a_position;
+	gl_PointSize = 6.0;
+}
@@ -1,53 +1,192 @@
 package com.sastraxi.chisel.state;
 
-import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Pool;
 
+import java.util.BitSet;
+
 /**
- * Current editor selection on a Brush.
+ * Current editor selection on a Brush: which of its faces and vertices are picked, as one bit
+ * per index. Membership tests and single changes are constant time, and the bulk operations
+ * work a word at a time, so box-selecting thousands of vertices stays linear.
+ *
+ * Anything that changes the selection tells the listener (if there is one) which half of it
+ * changed, and which face or vertex if it was just the one; Brush uses this to rewrite only
+ * the selection flags of the corners involved.
  */
 public class Selection implements Pool.Poolable {
 
-    private Array<Integer> selectedFaces;
-    private Array<Integer> selectedVertices;
+    public static final int FACES = 1;
+    public static final int VERTICES = 2;
+
+    /**
+     * More than one face or vertex may have changed.
+     */
+    public static final int MANY = -1;
+
+    public interface Listener {
+        /**
+         * @param parts FACES, VERTICES, or both or'd together.
+         * @param index the one face or vertex that changed, or MANY.
+         */
+        void selectionChanged(Selection selection, int parts, int index);
+    }
+
+    private final BitSet selectedFaces = new BitSet();
+    private final BitSet selectedVertices = new BitSet();
+    private Listener listener = null;
 
     public Selection() {
-        this.selectedFaces = new Array<Integer>();
-        this.selectedVertices = new Array<Integer>();
     }
 
-    public Array<Integer> getSelectedFaces() {
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * Read-only; go through the methods below to change it, so the listener hears about it.
+     */
+    public BitSet getSelectedFaces() {
         return selectedFaces;
     }
 
-    public Array<Integer> getSelectedVertices() {
+    /**
+     * Read-only; go through the methods below to change it, so the listener hears about it.
+     */
+    public BitSet getSelectedVertices() {
         return selectedVertices;
     }
 
+    public boolean isEmpty() {
+        return selectedFaces.isEmpty() && selectedVertices.isEmpty();
+    }
+
+    /**
+     * Clears everything and forgets the listener, without telling it.
+     */
     @Override
     public void reset() {
         this.selectedFaces.clear();
         this.selectedVertices.clear();
+        this.listener = null;
+    }
+
+    public void clear() {
+        int parts = (selectedFaces.isEmpty() ? 0 : FACES) | (selectedVertices.isEmpty() ? 0 : VERTICES);
+        selectedFaces.clear();
+        selectedVertices.clear();
+        changed(parts, MANY);
+    }
+
+    // faces
+
+    public boolean isFaceSelected(int face) {
+        return selectedFaces.get(face);
+    }
+
+    public int getNumSelectedFaces() {
+        return selectedFaces.cardinality();
     }
 
     public void selectFace(int face) {
-        if (!selectedFaces.contains(face, true)) {
-            selectedFaces.add(face);
+        if (!selectedFaces.get(face)) {
+            selectedFaces.set(face);
+            changed(FACES, face);
         }
     }
 
     public void clearFace(int face) {
-        selectedFaces.removeValue(face, true);
+        if (selectedFaces.get(face)) {
+            selectedFaces.clear(face);
+            changed(FACES, face);
+        }
+    }
+
+    /**
+     * Adds every face in faces to the selection.
+     */
+    public void selectFaces(BitSet faces) {
+        if (faces.isEmpty()) return;
+        selectedFaces.or(faces);
+        changed(FACES, MANY);
+    }
+
+    /**
+     * Keeps only the selected faces that are also in faces.
+     */
+    public void intersectFaces(BitSet faces) {
+        if (selectedFaces.isEmpty()) return;
+        selectedFaces.and(faces);
+        changed(FACES, MANY);
+    }
+
+    /**
+     * Selects exactly the faces that weren't, out of the first numFaces.
+     */
+    public void invertFaces(int numFaces) {
+        selectedFaces.flip(0, numFaces);
+        selectedFaces.clear(numFaces, Math.max(numFaces, selectedFaces.length()));
+        changed(FACES, MANY);
+    }
+
+    // vertices
+
+    public boolean isVertexSelected(int vertex) {
+        return selectedVertices.get(vertex);
+    }
+
+    public int getNumSelectedVertices() {
+        return selectedVertices.cardinality();
     }
 
     public void selectVertex(int vertex) {
-        if (!selectedVertices.contains(vertex, true)) {
-            selectedVertices.add(vertex);
+        if (!selectedVertices.get(vertex)) {
+            selectedVertices.set(vertex);
+            changed(VERTICES, vertex);
         }
     }
 
     public void clearVertex(int vertex) {
-        selectedVertices.removeValue(vertex, true);
+        if (selectedVertices.get(vertex)) {
+            selectedVertices.clear(vertex);
+            changed(VERTICES, vertex);
+        }
+    }
+
+    /**
+     * Adds every vertex in vertices to the selection.
+     */
+    public void selectVertices(BitSet vertices) {
+        if (vertices.isEmpty()) return;
+        selectedVertices.or(vertices);
+        changed(VERTICES, MANY);
+    }
+
+    /**
+     * Keeps only the selected vertices that are also in vertices.
+     */
+    public void intersectVertices(BitSet vertices) {
+        if (selectedVertices.isEmpty()) return;
+        selectedVertices.and(vertices);
+        changed(VERTICES, MANY);
+    }
+
+    /**
+     * Selects exactly the vertices that weren't, out of the first numVertices.
+     */
+    public void invertVertices(int numVertices) {
+        selectedVertices.flip(0, numVertices);
+        selectedVertices.clear(numVertices, Math.max(numVertices, selectedVertices.length()));
+        changed(VERTICES, MANY);
+    }
+
+    private void changed(int parts, int index) {
+        if (parts != 0 && listener != null) {
+            listener.selectionChanged(this, parts, index);
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,181 @@
+package com.sastraxi.chisel.state;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+import com.badlogic.gdx.utils.Pool;
+import com.sastraxi.chisel.map.Brush;
+
+/**
+ * Which brushes in the world are selected, in the order they were picked. Each selected brush
+ * gets its own (pooled) Selection for its faces and vertices, and gives it back when it's
+ * deselected.
+ *
+ * Brushes are told apart by identity, as everywhere else: two brushes of the same shape can
+ * be selected independently.
+ */
+public class WorldSelection {
+
+	public interface Listener {
+		/**
+		 * Brushes were selected or deselected (but not for changes within a brush's own
+		 * Selection; those go to the brush).
+		 */
+		void selectionChanged(WorldSelection selection);
+	}
+
+	private final Pool<Selection> pool = new Pool<Selection>() {
+		@Override
+		protected Selection newObject() {
+			return new Selection();
+		}
+	};
+
+	private final IdentityMap<Brush, Selection> selections = new IdentityMap<Brush, Selection>();
+	private final Array<Brush> order = new Array<Brush>();
+	private Listener listener = null;
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	public int size() {
+		return order.size;
+	}
+
+	public boolean isEmpty() {
+		return order.size == 0;
+	}
+
+	public boolean isSelected(Brush brush) {
+		return selections.containsKey(brush);
+	}
+
+	/**
+	 * @return the brush's face/vertex selection, or null if it isn't selected.
+	 */
+	public Selection get(Brush brush) {
+		return selections.get(brush);
+	}
+
+	/**
+	 * The selected brushes, oldest first. Read-only.
+	 */
+	public Array<Brush> getBrushes() {
+		return order;
+	}
+
+	/**
+	 * @return the brush's (possibly new, empty) selection.
+	 */
+	public Selection select(Brush brush) {
+		Selection s = selections.get(brush);
+		if (s == null) {
+			s = add(brush);
+			changed();
+		}
+		return s;
+	}
+
+	public void deselect(Brush brush) {
+		if (remove(brush)) {
+			order.removeValue(brush, true);
+			changed();
+		}
+	}
+
+	/**
+	 * Adds every one of brushes to the selection.
+	 */
+	public void selectAll(Array<Brush> brushes) {
+		boolean any = false;
+		for (Brush brush: brushes) {
+			if (!selections.containsKey(brush)) {
+				add(brush);
+				any = true;
+			}
+		}
+		if (any) changed();
+	}
+
+	/**
+	 * Keeps only the selected brushes that are also in brushes.
+	 */
+	public void intersect(Array<Brush> brushes) {
+		if (order.size == 0) return;
+		IdentityMap<Brush, Selection> keep = new IdentityMap<Brush, Selection>(brushes.size);
+		for (Brush brush: brushes) {
+			Selection s = selections.get(brush);
+			if (s != null) keep.put(brush, s);
+		}
+		if (keep.size == order.size) return;
+		for (Brush brush: order) {
+			if (!keep.containsKey(brush)) remove(brush);
+		}
+		compact();
+		changed();
+	}
+
+	/**
+	 * Out of brushes, selects exactly the ones that weren't. Selected brushes that aren't
+	 * in brushes stay selected.
+	 */
+	public void invert(Array<Brush> brushes) {
+		if (brushes.size == 0) return;
+		Array<Brush> added = new Array<Brush>();
+		for (Brush brush: brushes) {
+			if (!remove(brush)) {
+				added.add(brush);
+			}
+		}
+		compact();
+		for (Brush brush: added) {
+			if (!selections.containsKey(brush)) add(brush); // brushes may list one twice
+		}
+		changed();
+	}
+
+	public void clear() {
+		if (order.size == 0) return;
+		for (Brush brush: order) {
+			remove(brush);
+		}
+		order.clear();
+		changed();
+	}
+
+	private Selection add(Brush brush) {
+		Selection s = pool.obtain();
+		selections.put(brush, s);
+		order.add(brush);
+		brush.setSelection(s);
+		return s;
+	}
+
+	/**
+	 * Leaves order alone; see compact().
+	 */
+	private boolean remove(Brush brush) {
+		if (selections.remove(brush) == null) return false;
+		brush.removeSelection(pool);
+		return true;
+	}
+
+	/**
+	 * Drops the brushes that remove() took out of the map from order, in one pass.
+	 */
+	private void compact() {
+		int k = 0;
+		for (int i = 0; i < order.size; ++i) {
+			Brush brush = order.get(i);
+			if (selections.containsKey(brush)) order.set(k++, brush);
+		}
+		order.truncate(k);
+	}
+
+	private void changed() {
+		if (listener != null) {
+			listener.selectionChanged(this);
+		}
+	}
+
+}
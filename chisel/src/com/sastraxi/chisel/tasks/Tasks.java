@@ -0,0 +1,105 @@
+package com.sastraxi.chisel.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A shared pool of worker threads for the heavy lifting (geometry, loading, meshing),
+ * so none of it has to happen on the render thread.
+ *
+ * Plain java.util.concurrent executors only; Android (API 15) has no fork-join pool.
+ */
+public class Tasks {
+
+	/**
+	 * Work on the range [from, to) of some indexed collection.
+	 */
+	public interface Range {
+		void run(int from, int to);
+	}
+
+	private static final int NUM_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	private static ExecutorService pool = null;
+
+	/**
+	 * @return the shared worker pool, starting it the first time it's asked for.
+	 */
+	public static synchronized ExecutorService pool() {
+		if (pool == null) {
+			final AtomicInteger count = new AtomicInteger(0);
+			pool = Executors.newFixedThreadPool(NUM_WORKERS, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					return new Worker(runnable, "chisel-worker-" + count.incrementAndGet());
+				}
+			});
+		}
+		return pool;
+	}
+
+	public static int numWorkers() {
+		return NUM_WORKERS;
+	}
+
+	/**
+	 * @return true if called from one of the pool's own threads.
+	 */
+	public static boolean isWorker() {
+		return Thread.currentThread() instanceof Worker;
+	}
+
+	/**
+	 * Split [0, n) into one chunk per worker (but no chunk smaller than grain) and run them
+	 * on the pool. Blocks until every chunk is done. Small ranges, and calls made from a worker
+	 * (which would otherwise wait on its own queue), run on the calling thread.
+	 *
+	 * @throws RuntimeException wrapping the first exception thrown by any chunk.
+	 */
+	public static void parallelFor(int n, int grain, final Range body) {
+		if (n <= 0) return;
+		int chunk = Math.max(grain, (n + NUM_WORKERS - 1) / NUM_WORKERS);
+		if (chunk >= n || isWorker()) {
+			body.run(0, n);
+			return;
+		}
+
+		List<Callable<Void>> work = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < n; start += chunk) {
+			final int from = start, to = Math.min(n, start + chunk);
+			work.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					body.run(from, to);
+					return null;
+				}
+			});
+		}
+
+		try {
+			for (Future<Void> future: pool().invokeAll(work)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private static class Worker extends Thread {
+		Worker(Runnable runnable, String name) {
+			super(runnable, name);
+			setDaemon(true);
+		}
+	}
+
+}
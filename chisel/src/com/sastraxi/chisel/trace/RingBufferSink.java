@@ -0,0 +1,70 @@
+package com.sastraxi.chisel.trace;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Keeps the last few trace events in memory, overwriting the oldest.
+ */
+public class RingBufferSink implements TraceSink {
+
+	private final long[] times;
+	private final String[] categories;
+	private final String[] messages;
+	private int next = 0;
+	private long total = 0;
+
+	public RingBufferSink(int capacity) {
+		assert(capacity > 0);
+		this.times = new long[capacity];
+		this.categories = new String[capacity];
+		this.messages = new String[capacity];
+	}
+
+	@Override
+	public synchronized void record(long time, String category, String message) {
+		times[next] = time;
+		categories[next] = category;
+		messages[next] = message;
+		next = (next + 1) % times.length;
+		total++;
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * @return how many events have been recorded, including those since overwritten.
+	 */
+	public synchronized long getTotal() {
+		return total;
+	}
+
+	public synchronized int size() {
+		return (int) Math.min(total, times.length);
+	}
+
+	/**
+	 * @return the buffered events, oldest first, as "category: message".
+	 */
+	public synchronized Array<String> getMessages() {
+		int size = size();
+		Array<String> result = new Array<String>(size);
+		int start = (next - size + times.length) % times.length;
+		for (int k = 0; k < size; ++k) {
+			int i = (start + k) % times.length;
+			result.add(categories[i] + ": " + messages[i]);
+		}
+		return result;
+	}
+
+	public synchronized void clear() {
+		for (int i = 0; i < times.length; ++i) {
+			categories[i] = null;
+			messages[i] = null;
+		}
+		next = 0;
+		total = 0;
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.sastraxi.chisel.trace;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes trace events as tab-separated lines: nanoseconds, category, message.
+ * Output is buffered; it only reaches the writer on flush() or close().
+ */
+public class StreamSink implements TraceSink {
+
+	private final Writer out;
+	private boolean failed = false;
+
+	public StreamSink(Writer out) {
+		this.out = new BufferedWriter(out, 1 << 16);
+	}
+
+	public static StreamSink toFile(File file) throws IOException {
+		return new StreamSink(new FileWriter(file));
+	}
+
+	@Override
+	public synchronized void record(long time, String category, String message) {
+		if (failed) return;
+		try {
+			out.write(Long.toString(time));
+			out.write('\t');
+			out.write(category);
+			out.write('\t');
+			out.write(message);
+			out.write('\n');
+		} catch (IOException e) {
+			// tracing must never take the editor down with it.
+			failed = true;
+		}
+	}
+
+	@Override
+	public synchronized void flush() {
+		if (failed) return;
+		try {
+			out.flush();
+		} catch (IOException e) {
+			failed = true;
+		}
+	}
+
+	/**
+	 * Anything recorded after this is dropped.
+	 */
+	public synchronized void close() throws IOException {
+		failed = true;
+		out.close();
+	}
+
+}
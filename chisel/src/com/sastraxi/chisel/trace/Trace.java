@@ -0,0 +1,49 @@
+package com.sastraxi.chisel.trace;
+
+/**
+ * Diagnostic output for the geometry pipeline. Off (no sink) by default.
+ *
+ * Building a message costs far more than the geometry it describes, so callers check
+ * first and only build the message when someone is listening:
+ *
+ *     if (Trace.enabled()) Trace.record(Trace.CONVEX, "new vertex " + v);
+ */
+public class Trace {
+
+	public static final String CONVEX = "convex";
+	public static final String MESH = "mesh";
+	public static final String BRUSH = "brush";
+	public static final String RENDER = "render";
+	public static final String LOAD = "load";
+	public static final String SAVE = "save";
+
+	private static volatile TraceSink sink = null;
+
+	/**
+	 * Start sending trace events to the given sink, or stop tracing with null.
+	 * The previous sink (if any) is flushed.
+	 */
+	public static void setSink(TraceSink sink) {
+		TraceSink previous = Trace.sink;
+		Trace.sink = sink;
+		if (previous != null) {
+			previous.flush();
+		}
+	}
+
+	public static TraceSink getSink() {
+		return sink;
+	}
+
+	public static boolean enabled() {
+		return sink != null;
+	}
+
+	public static void record(String category, String message) {
+		TraceSink s = sink;
+		if (s != null) {
+			s.record(System.nanoTime(), category, message);
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.sastraxi.chisel.trace;
+
+/**
+ * Somewhere for trace events to go. Sinks may be called from many threads at once.
+ *
+ * @see Trace
+ */
+public interface TraceSink {
+
+	/**
+	 * @param time System.nanoTime() when the event happened.
+	 * @param category one of the Trace.* categories.
+	 * @param message human-readable details.
+	 */
+	void record(long time, String category, String message);
+
+	void flush();
+
+}